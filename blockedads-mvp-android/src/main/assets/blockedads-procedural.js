@@ -0,0 +1,408 @@
+/*
+ * BlockedAds procedural cosmetic filter runtime
+ * Installed once per document by BlockedAdsCosmeticFilters. Each selector is compiled once
+ * into a CSS prefix and a chain of tasks; the document gets one full pass, then only the
+ * subtrees that mutations add (and their ancestors matching a prefix) are evaluated, in
+ * slices of at most BUDGET_MS per frame.
+ *
+ * Supported: :has-text(text|/regex/), :has(selector), :upward(n|selector),
+ * :matches-css[-before|-after](property: value|/regex/), the Adblock Plus aliases
+ * :-abp-contains() and :-abp-has(), and CSS after an operator (' a', '> a', '+ a', '.class').
+ */
+(function() {
+    'use strict';
+    if (window.__blockedAdsProcedural) {
+        return;
+    }
+
+    const BUDGET_MS = 4;
+    const MAX_PENDING = 512; // More added subtrees than this: one pass over the document is cheaper
+    const MAX_UPWARD = 256;
+    const HIDDEN_ATTRIBUTE = 'data-blockedads-hidden';
+    const OPERATOR = /^:(-abp-contains|-abp-has|has-text|has|upward|matches-css-before|matches-css-after|matches-css)\(/;
+
+    const filters = [];
+    const compiled = new Set();
+    let pending = [];
+    let queued = new Set();
+    let head = 0;
+    let filterIndex = 0; // Next filter to apply to pending[head]
+    let scheduled = false;
+    let dropped = false; // Work was dropped while blocking was off
+
+    /* Parsing */
+
+    function checkCss(css) {
+        document.createDocumentFragment().querySelector(css); // Throws on an invalid selector
+        return css;
+    }
+
+    // Find the next procedural operator outside brackets, parentheses and strings
+    function nextOperator(selector, from) {
+        let depth = 0;
+        let quote = null;
+        for (let i = from; i < selector.length; i++) {
+            const c = selector[i];
+            if (c === '\\') {
+                i++;
+            } else if (quote) {
+                if (c === quote) {
+                    quote = null;
+                }
+            } else if (c === '"' || c === '\'') {
+                quote = c;
+            } else if (c === '(' || c === '[') {
+                depth++;
+            } else if (c === ')' || c === ']') {
+                depth--;
+            } else if (c === ':' && depth === 0) {
+                const match = OPERATOR.exec(selector.slice(i));
+                if (match) {
+                    return { index: i, name: match[1], argumentStart: i + match[0].length };
+                }
+            }
+        }
+        return null;
+    }
+
+    // Find the parenthesis closing an argument; text arguments have no strings, so quotes are literal
+    function argumentEnd(selector, from, isCss) {
+        let depth = 1;
+        let quote = null;
+        for (let i = from; i < selector.length; i++) {
+            const c = selector[i];
+            if (c === '\\') {
+                i++;
+            } else if (quote) {
+                if (c === quote) {
+                    quote = null;
+                }
+            } else if (isCss && (c === '"' || c === '\'')) {
+                quote = c;
+            } else if (c === '(') {
+                depth++;
+            } else if (c === ')' && --depth === 0) {
+                return i;
+            }
+        }
+        throw new SyntaxError('Unbalanced ' + selector);
+    }
+
+    function textMatcher(argument) {
+        let text = argument.trim();
+        const regex = /^\/(.+)\/([imsu]*)$/.exec(text);
+        if (regex) {
+            const pattern = new RegExp(regex[1], regex[2]);
+            return function(value) { return pattern.test(value); };
+        }
+        if (text.length > 1 && (text[0] === '"' || text[0] === '\'') && text[text.length - 1] === text[0]) {
+            text = text.slice(1, -1);
+        }
+        return function(value) { return value.indexOf(text) !== -1; };
+    }
+
+    // A selector relative to the element it is evaluated from, as in :has(> .ad)
+    function compileRelative(selector) {
+        const filter = compile(selector.trim(), true);
+        if (filter.prefix === '') {
+            filter.prefix = ':scope *';
+        } else if (/^[>+~]/.test(filter.prefix)) {
+            filter.prefix = ':scope ' + filter.prefix;
+        }
+        checkCss(filter.prefix);
+        return filter;
+    }
+
+    function compile(selector, relative) {
+        const filter = { selector: selector, prefix: '', tasks: [] };
+        let position = 0;
+        for (;;) {
+            const operator = nextOperator(selector, position);
+            const css = selector.slice(position, operator ? operator.index : selector.length);
+            if (position === 0) {
+                filter.prefix = css.trim();
+                if (!relative) {
+                    checkCss(filter.prefix);
+                }
+            } else if (css.trim() !== '') {
+                filter.tasks.push(cssTask(css));
+            }
+            if (!operator) {
+                return filter;
+            }
+            const name = operator.name;
+            const isCss = name === 'has' || name === '-abp-has' || name === 'upward';
+            const end = argumentEnd(selector, operator.argumentStart, isCss);
+            filter.tasks.push(operatorTask(name, selector.slice(operator.argumentStart, end)));
+            position = end + 1;
+        }
+    }
+
+    function cssTask(css) {
+        if (/^\s*[+~]/.test(css)) {
+            // Siblings: select from the parent, anchored at the element's position
+            checkCss(':scope > *' + css);
+            return function(nodes, output) {
+                for (const node of nodes) {
+                    const parent = node.parentElement;
+                    if (parent) {
+                        const position = Array.prototype.indexOf.call(parent.children, node) + 1;
+                        output.push.apply(output, parent.querySelectorAll(':scope > :nth-child(' + position + ')' + css));
+                    }
+                }
+            };
+        }
+        if (/^\s/.test(css) || /^>/.test(css)) {
+            checkCss(':scope' + css);
+            return function(nodes, output) {
+                for (const node of nodes) {
+                    output.push.apply(output, node.querySelectorAll(':scope' + css));
+                }
+            };
+        }
+        checkCss('*' + css);
+        return function(nodes, output) {
+            for (const node of nodes) {
+                if (node.matches('*' + css)) {
+                    output.push(node);
+                }
+            }
+        };
+    }
+
+    function operatorTask(name, argument) {
+        switch (name) {
+            case 'has-text':
+            case '-abp-contains': {
+                const matches = textMatcher(argument);
+                return function(nodes, output) {
+                    for (const node of nodes) {
+                        if (matches(node.textContent)) {
+                            output.push(node);
+                        }
+                    }
+                };
+            }
+            case 'has':
+            case '-abp-has': {
+                const inner = compileRelative(argument);
+                return function(nodes, output) {
+                    for (const node of nodes) {
+                        if (inner.tasks.length === 0 ? node.querySelector(inner.prefix) !== null
+                                : evaluate(inner, node.querySelectorAll(inner.prefix)).length > 0) {
+                            output.push(node);
+                        }
+                    }
+                };
+            }
+            case 'upward': {
+                const count = /^\s*\d+\s*$/.test(argument) ? parseInt(argument, 10) : 0;
+                if (count > MAX_UPWARD) {
+                    throw new SyntaxError(':upward(' + argument + ')');
+                }
+                const ancestor = count > 0 ? null : checkCss(argument.trim());
+                return function(nodes, output) {
+                    for (const node of nodes) {
+                        let target = node.parentElement;
+                        if (ancestor !== null) {
+                            target = target && target.closest(ancestor);
+                        } else {
+                            for (let i = 1; i < count && target; i++) {
+                                target = target.parentElement;
+                            }
+                        }
+                        if (target && output.indexOf(target) === -1) {
+                            output.push(target);
+                        }
+                    }
+                };
+            }
+            default: {
+                const pseudo = name === 'matches-css-before' ? '::before' : name === 'matches-css-after' ? '::after' : null;
+                const colon = argument.indexOf(':');
+                if (colon <= 0) {
+                    throw new SyntaxError(':' + name + '(' + argument + ')');
+                }
+                const property = argument.slice(0, colon).trim();
+                const value = argument.slice(colon + 1).trim();
+                const regex = /^\/(.+)\/([imsu]*)$/.exec(value);
+                const pattern = regex ? new RegExp(regex[1], regex[2]) : null;
+                return function(nodes, output) {
+                    for (const node of nodes) {
+                        const actual = window.getComputedStyle(node, pseudo).getPropertyValue(property);
+                        if (pattern ? pattern.test(actual) : actual === value) {
+                            output.push(node);
+                        }
+                    }
+                };
+            }
+        }
+    }
+
+    /* Evaluation */
+
+    function evaluate(filter, candidates) {
+        let nodes = Array.prototype.slice.call(candidates);
+        for (const task of filter.tasks) {
+            if (nodes.length === 0) {
+                break;
+            }
+            const output = [];
+            task(nodes, output);
+            nodes = output;
+        }
+        return nodes;
+    }
+
+    // Elements a filter can select from under root: its prefix matches inside it, plus the closest
+    // ancestor matching, whose text or children the added subtree may have just completed
+    function candidates(filter, root) {
+        const nodes = Array.prototype.slice.call(root.querySelectorAll(filter.prefix));
+        if (root !== document) {
+            const ancestor = root.closest(filter.prefix);
+            if (ancestor) {
+                nodes.unshift(ancestor);
+            }
+        }
+        return nodes;
+    }
+
+    function hide(nodes) {
+        let hidden = 0;
+        for (const node of nodes) {
+            if (node.nodeType === 1 && !node.hasAttribute(HIDDEN_ATTRIBUTE)) {
+                node.style.setProperty('display', 'none', 'important');
+                node.setAttribute(HIDDEN_ATTRIBUTE, 'true');
+                hidden++;
+            }
+        }
+        return hidden;
+    }
+
+    function run(deadline) {
+        scheduled = false;
+        if (window.__blockedAdsEnabled === false) {
+            // Dropped; resume() evaluates the whole document once blocking is back on
+            dropped = true;
+            pending = [];
+            queued = new Set();
+            head = 0;
+            filterIndex = 0;
+            return;
+        }
+        const start = performance.now();
+        let hidden = 0;
+        let steps = 0;
+        while (head < pending.length) {
+            const root = pending[head];
+            if (root === document || root.isConnected) {
+                while (filterIndex < filters.length) {
+                    const overBudget = performance.now() - start >= BUDGET_MS
+                        || (deadline && !deadline.didTimeout && deadline.timeRemaining() <= 0);
+                    if (steps > 0 && overBudget) {
+                        report(hidden);
+                        schedule();
+                        return;
+                    }
+                    const filter = filters[filterIndex++];
+                    steps++;
+                    try {
+                        hidden += hide(evaluate(filter, candidates(filter, root)));
+                    } catch (e) {
+                        // A selector can still fail at run time, such as :scope on an old engine
+                    }
+                }
+            }
+            queued.delete(root);
+            head++;
+            filterIndex = 0;
+        }
+        pending = [];
+        head = 0;
+        report(hidden);
+    }
+
+    // Hiding an element saves no data, so hides are counted apart from blocked ads
+    function report(hidden) {
+        if (hidden > 0 && window.AdBlocker && window.AdBlocker.recordHiddenElements) {
+            window.AdBlocker.recordHiddenElements(hidden);
+        }
+    }
+
+    function schedule() {
+        if (scheduled || filters.length === 0) {
+            return;
+        }
+        scheduled = true;
+        if (window.requestIdleCallback) {
+            window.requestIdleCallback(run, { timeout: 500 });
+        } else {
+            window.requestAnimationFrame(function() { run(null); });
+        }
+    }
+
+    function enqueue(node) {
+        if (!node || queued.has(node) || queued.has(document)) {
+            return;
+        }
+        if (pending.length - head >= MAX_PENDING) {
+            rescan();
+            return;
+        }
+        queued.add(node);
+        pending.push(node);
+    }
+
+    function rescan() {
+        pending = [document];
+        queued = new Set(pending);
+        head = 0;
+        filterIndex = 0;
+        schedule();
+    }
+
+    new MutationObserver(function(mutations) {
+        for (const mutation of mutations) {
+            if (mutation.type === 'characterData') {
+                enqueue(mutation.target.parentElement);
+                continue;
+            }
+            for (const node of mutation.addedNodes) {
+                enqueue(node.nodeType === 1 ? node : node.parentElement);
+            }
+        }
+        schedule();
+    }).observe(document.documentElement, { childList: true, characterData: true, subtree: true });
+
+    window.__blockedAdsProcedural = {
+        // Compile selectors not seen yet in this document; invalid ones are skipped
+        start: function(selectors) {
+            let added = 0;
+            for (const selector of selectors) {
+                if (compiled.has(selector)) {
+                    continue;
+                }
+                compiled.add(selector);
+                try {
+                    const filter = compile(selector, false);
+                    if (filter.prefix !== '' && filter.tasks.length > 0) {
+                        filters.push(filter);
+                        added++;
+                    }
+                } catch (e) {
+                    // Unsupported or invalid: like an invalid CSS selector, it hides nothing
+                }
+            }
+            if (added > 0) {
+                rescan();
+            }
+        },
+        // Called with the blocking state: catch up on what changed while blocking was off
+        resume: function() {
+            if (dropped) {
+                dropped = false;
+                rescan();
+            }
+        }
+    };
+})();
@@ -0,0 +1,65 @@
+/*
+ * BlockedAds surrogate for analytics.js / ga.js
+ * Accepts every command, sends nothing and still runs hitCallback so pages never wait on it
+ */
+(function() {
+    'use strict';
+    const noopfn = function() {};
+    const w = window;
+
+    const Tracker = function() {};
+    Tracker.prototype.get = noopfn;
+    Tracker.prototype.set = noopfn;
+    Tracker.prototype.send = noopfn;
+
+    const runCallback = function(fn) {
+        try { fn(); } catch (e) { /* ignore page errors */ }
+    };
+
+    const gaName = w.GoogleAnalyticsObject || 'ga';
+    const gaQueue = w[gaName];
+    const ga = function() {
+        const len = arguments.length;
+        if (len === 0) { return; }
+        const last = arguments[len - 1];
+        if (typeof last === 'function') {
+            const tracker = new Tracker();
+            setTimeout(function() { last(tracker); }, 1);
+            return;
+        }
+        for (let i = 0; i < len; i++) {
+            const arg = arguments[i];
+            if (arg instanceof Object && typeof arg.hitCallback === 'function') {
+                runCallback(arg.hitCallback);
+            } else if (arg === 'hitCallback' && typeof arguments[i + 1] === 'function') {
+                runCallback(arguments[i + 1]);
+            }
+        }
+    };
+    ga.create = function() { return new Tracker(); };
+    ga.getByName = function() { return new Tracker(); };
+    ga.getAll = function() { return [new Tracker()]; };
+    ga.remove = noopfn;
+    ga.loaded = true;
+    w[gaName] = ga;
+
+    // Replay commands queued before the script "loaded" so their callbacks run
+    if (gaQueue instanceof Function && Array.isArray(gaQueue.q)) {
+        gaQueue.q.forEach(function(args) { ga.apply(w, args); });
+    }
+
+    // Legacy ga.js API
+    const legacyTracker = {
+        _addIgnoredOrganic: noopfn, _addIgnoredRef: noopfn, _addItem: noopfn,
+        _addTrans: noopfn, _setAccount: noopfn, _setAllowLinker: noopfn,
+        _setCustomVar: noopfn, _setDomainName: noopfn, _trackEvent: noopfn,
+        _trackPageview: noopfn, _trackTrans: noopfn, _getLinkerUrl: function(url) { return url; }
+    };
+    w._gat = {
+        _createTracker: function() { return legacyTracker; },
+        _getTracker: function() { return legacyTracker; },
+        _getTrackerByName: function() { return legacyTracker; },
+        _anonymizeIp: noopfn
+    };
+    w._gaq = { push: function(cmd) { if (typeof cmd === 'function') { runCallback(cmd); } } };
+})();
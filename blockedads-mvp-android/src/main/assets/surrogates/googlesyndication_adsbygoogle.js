@@ -0,0 +1,24 @@
+/*
+ * BlockedAds surrogate for adsbygoogle.js (AdSense)
+ * Marks AdSense as loaded and collapses its slots so pages do not retry or leave blank boxes
+ */
+(function() {
+    'use strict';
+    const w = window;
+    const collapseSlots = function() {
+        const slots = document.querySelectorAll('ins.adsbygoogle');
+        for (let i = 0; i < slots.length; i++) {
+            slots[i].style.setProperty('display', 'none', 'important');
+            slots[i].setAttribute('data-adsbygoogle-status', 'done');
+        }
+    };
+    w.adsbygoogle = {
+        loaded: true,
+        push: function() { collapseSlots(); }
+    };
+    if (document.readyState === 'loading') {
+        document.addEventListener('DOMContentLoaded', collapseSlots, { once: true });
+    } else {
+        collapseSlots();
+    }
+})();
@@ -0,0 +1,35 @@
+/*
+ * BlockedAds surrogate for gtm.js / gtag.js
+ * Ends anti-flicker page hiding and fires dataLayer eventCallbacks instead of waiting for timeouts
+ */
+(function() {
+    'use strict';
+    const noopfn = function() {};
+    const w = window;
+    w.ga = w.ga || noopfn;
+
+    const dl = w.dataLayer;
+    if (dl instanceof Object === false) { return; }
+
+    // Anti-flicker snippet: reveal the page now rather than after its timeout
+    if (dl.hide instanceof Object && typeof dl.hide.end === 'function') {
+        dl.hide.end();
+        dl.hide.end = noopfn;
+    }
+
+    if (typeof dl.push !== 'function') { return; }
+    const runEventCallback = function(item) {
+        if (item instanceof Object === false || typeof item.eventCallback !== 'function') { return; }
+        const callback = item.eventCallback;
+        item.eventCallback = noopfn;
+        setTimeout(callback, 1);
+    };
+    const push = dl.push;
+    dl.push = function(item) {
+        runEventCallback(item);
+        return push.apply(this, arguments);
+    };
+    if (Array.isArray(dl)) {
+        dl.slice().forEach(runEventCallback);
+    }
+})();
@@ -0,0 +1,71 @@
+/*
+ * BlockedAds surrogate for gpt.js (Google Publisher Tag)
+ * Runs queued googletag.cmd functions against an API that never requests ads
+ */
+(function() {
+    'use strict';
+    const noopfn = function() {};
+    const w = window;
+
+    const slot = {};
+    const returnSlot = function() { return slot; };
+    [
+        'addService', 'clearCategoryExclusions', 'clearTargeting', 'defineSizeMapping',
+        'set', 'setCategoryExclusion', 'setClickUrl', 'setCollapseEmptyDiv',
+        'setForceSafeFrame', 'setSafeFrameConfig', 'setTargeting', 'updateTargetingFromMap'
+    ].forEach(function(name) { slot[name] = returnSlot; });
+    slot.get = function() { return null; };
+    slot.getAdUnitPath = function() { return ''; };
+    slot.getAttributeKeys = function() { return []; };
+    slot.getSlotElementId = function() { return ''; };
+    slot.getTargeting = function() { return []; };
+    slot.getTargetingKeys = function() { return []; };
+
+    const pubads = {};
+    const returnPubads = function() { return pubads; };
+    [
+        'addEventListener', 'clear', 'clearCategoryExclusions', 'clearTagForChildDirectedTreatment',
+        'clearTargeting', 'collapseEmptyDivs', 'disableInitialLoad', 'enableAsyncRendering',
+        'enableLazyLoad', 'enableSingleRequest', 'enableVideoAds', 'refresh', 'removeEventListener',
+        'set', 'setCategoryExclusion', 'setCentering', 'setCookieOptions', 'setForceSafeFrame',
+        'setLocation', 'setPrivacySettings', 'setPublisherProvidedId', 'setRequestNonPersonalizedAds',
+        'setSafeFrameConfig', 'setTagForChildDirectedTreatment', 'setTargeting', 'setVideoContent',
+        'updateCorrelator'
+    ].forEach(function(name) { pubads[name] = returnPubads; });
+    pubads.get = function() { return null; };
+    pubads.getSlots = function() { return []; };
+    pubads.getTargeting = function() { return []; };
+    pubads.getTargetingKeys = function() { return []; };
+    pubads.isInitialLoadDisabled = function() { return true; };
+
+    const companionAds = { addEventListener: function() { return companionAds; }, setRefreshUnfilledSlots: noopfn };
+    const content = { addEventListener: function() { return content; }, setContent: noopfn };
+
+    const runCommand = function(fn) {
+        try { fn(); } catch (e) { /* ignore page errors */ }
+    };
+    const queued = w.googletag instanceof Object && Array.isArray(w.googletag.cmd) ? w.googletag.cmd : [];
+
+    const googletag = w.googletag instanceof Object ? w.googletag : {};
+    googletag.apiReady = true;
+    googletag.pubadsReady = true;
+    googletag.cmd = { push: function(fn) { if (typeof fn === 'function') { runCommand(fn); } return 1; } };
+    googletag.companionAds = function() { return companionAds; };
+    googletag.content = function() { return content; };
+    googletag.defineOutOfPageSlot = returnSlot;
+    googletag.defineSlot = returnSlot;
+    googletag.destroySlots = noopfn;
+    googletag.disablePublisherConsole = noopfn;
+    googletag.display = noopfn;
+    googletag.enableServices = noopfn;
+    googletag.getVersion = function() { return ''; };
+    googletag.pubads = returnPubads;
+    googletag.setAdIframeTitle = noopfn;
+    googletag.sizeMapping = function() {
+        const builder = { addSize: function() { return builder; }, build: function() { return []; } };
+        return builder;
+    };
+    w.googletag = googletag;
+
+    queued.forEach(function(fn) { if (typeof fn === 'function') { runCommand(fn); } });
+})();
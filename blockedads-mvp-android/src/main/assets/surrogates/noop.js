@@ -0,0 +1,4 @@
+/*
+ * BlockedAds surrogate: empty script served for blocked scripts without a dedicated surrogate
+ */
+(function() {})();
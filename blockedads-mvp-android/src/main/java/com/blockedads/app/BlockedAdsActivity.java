@@ -16,9 +16,11 @@ public class BlockedAdsActivity extends AppCompatActivity {
     private TextView statsText;
     private Button openYouTubeBrowserBtn;
     private Button enableAdBlockingBtn;
+    private Button playerResponsesBtn;
+    private Button requestLogBtn;
     private Button settingsBtn;
     private BlockedAdsStats stats;
-    private boolean isAdBlockingEnabled = false;
+    private boolean isAdBlockingEnabled = BlockedAdsBlockingState.isEnabled();
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -39,6 +41,8 @@ public class BlockedAdsActivity extends AppCompatActivity {
         statsText = findViewById(R.id.statsText);
         openYouTubeBrowserBtn = findViewById(R.id.openYouTubeBrowserBtn);
         enableAdBlockingBtn = findViewById(R.id.enableAdBlockingBtn);
+        playerResponsesBtn = findViewById(R.id.playerResponsesBtn);
+        requestLogBtn = findViewById(R.id.requestLogBtn);
         settingsBtn = findViewById(R.id.settingsBtn);
     }
     
@@ -67,12 +71,46 @@ public class BlockedAdsActivity extends AppCompatActivity {
             }
         });
         
+        playerResponsesBtn.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                togglePlayerResponses();
+            }
+        });
+        
+        requestLogBtn.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                startActivity(new android.content.Intent(BlockedAdsActivity.this, BlockedAdsRequestLogActivity.class));
+            }
+        });
+        
         settingsBtn.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 openSettings();
             }
         });
+        
+        statsText.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                exportTelemetry();
+                return true;
+            }
+        });
+    }
+    
+    /**
+     * Write the page-load telemetry JSON to app storage
+     */
+    private void exportTelemetry() {
+        try {
+            java.io.File file = BlockedAdsTelemetry.export(this);
+            Toast.makeText(this, "Telemetry exported to " + file.getPath(), Toast.LENGTH_SHORT).show();
+        } catch (java.io.IOException e) {
+            Toast.makeText(this, "Failed to export telemetry: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
     }
     
     /**
@@ -82,6 +120,7 @@ public class BlockedAdsActivity extends AppCompatActivity {
         try {
             // Launch YouTube browser activity
             android.content.Intent intent = new android.content.Intent(this, YouTubeBrowserActivity.class);
+            intent.putExtra(YouTubeBrowserActivity.EXTRA_LAUNCH_TIME, android.os.SystemClock.elapsedRealtime());
             startActivity(intent);
         } catch (Exception e) {
             Toast.makeText(this, "Failed to open YouTube browser: " + e.getMessage(), Toast.LENGTH_SHORT).show();
@@ -93,6 +132,7 @@ public class BlockedAdsActivity extends AppCompatActivity {
      */
     private void toggleAdBlocking() {
         isAdBlockingEnabled = !isAdBlockingEnabled;
+        BlockedAdsBlockingState.setEnabled(this, isAdBlockingEnabled);
         
         if (isAdBlockingEnabled) {
             enableAdBlockingBtn.setText("🔴 Disable Ad Blocking");
@@ -105,6 +145,17 @@ public class BlockedAdsActivity extends AppCompatActivity {
         updateUI();
     }
     
+    /**
+     * Toggle stripping ads from YouTube player responses (BlockedAdsPlayerResponses)
+     */
+    private void togglePlayerResponses() {
+        boolean enabled = !BlockedAdsPlayerResponses.isEnabled();
+        BlockedAdsPlayerResponses.setEnabled(this, enabled);
+        Toast.makeText(this, enabled ? "Player response rewriting enabled" : "Player response rewriting disabled",
+            Toast.LENGTH_SHORT).show();
+        updateUI();
+    }
+    
     /**
      * Open settings (placeholder for MVP)
      */
@@ -139,6 +190,8 @@ public class BlockedAdsActivity extends AppCompatActivity {
             enableAdBlockingBtn.setText("🔴 Enable Ad Blocking");
             enableAdBlockingBtn.setBackgroundColor(getResources().getColor(android.R.color.holo_green_light));
         }
+        playerResponsesBtn.setText(BlockedAdsPlayerResponses.isEnabled()
+            ? "🎬 Strip Ads From Player Responses: On" : "🎬 Strip Ads From Player Responses: Off");
         
         updateStatsDisplay();
     }
@@ -146,6 +199,7 @@ public class BlockedAdsActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
+        isAdBlockingEnabled = BlockedAdsBlockingState.isEnabled();
         updateStatsDisplay();
         updateUI();
     }
@@ -0,0 +1,42 @@
+package com.blockedads.app;
+
+import android.app.Application;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * BlockedAds Application
+ * Starts filter list compilation and loads the allowlist, surrogates and stats off the main
+ * thread at process start, then fills the WebView pool once the main thread goes idle
+ */
+public class BlockedAdsApplication extends Application {
+    
+    private final ExecutorService prewarmExecutor = Executors.newSingleThreadExecutor();
+    
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        
+        // Read before any WebView can issue a request; the suffix index is mapped, not parsed
+        BlockedAdsBlockingState.load(this);
+        BlockedAdsPlayerResponses.load(this);
+        BlockedAdsPublicSuffixes.load(this);
+        BlockedAdsSiteAllowlist.init(this);
+        BlockedAdsFilterLoader.loadAsync(this);
+        
+        prewarmExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                BlockedAdsSiteAllowlist.preload();
+                BlockedAdsSurrogates.preload(BlockedAdsApplication.this);
+                BlockedAdsProceduralRuntime.preload(BlockedAdsApplication.this);
+                BlockedAdsStats.preload(BlockedAdsApplication.this);
+            }
+        });
+        prewarmExecutor.shutdown();
+        
+        BlockedAdsWebViewPool.schedulePrewarm(this);
+        BlockedAdsListUpdater.updateIfStale(this);
+        registerComponentCallbacks(new BlockedAdsMemoryTrimmer());
+    }
+}
@@ -0,0 +1,102 @@
+package com.blockedads.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.webkit.WebView;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * App-wide Blocking State
+ * One volatile flag read by every request interceptor and navigation policy, persisted
+ * across launches. Live WebViews are switched in place: network blocking follows the flag
+ * on the next request and page scripts are told through window.__blockedAdsEnabled.
+ */
+public final class BlockedAdsBlockingState {
+    
+    private static final String PREFS_NAME = "BlockedAdsSettings";
+    private static final String KEY_BLOCKING_ENABLED = "blocking_enabled";
+    
+    private static volatile boolean enabled = true;
+    
+    // Only touched on the main thread, like the WebViews themselves
+    private static final List<WebView> attachedWebViews = new ArrayList<>();
+    
+    private BlockedAdsBlockingState() {
+    }
+    
+    /**
+     * Read the persisted state; called once from Application.onCreate before any WebView exists
+     */
+    public static void load(Context context) {
+        enabled = prefs(context).getBoolean(KEY_BLOCKING_ENABLED, true);
+    }
+    
+    /**
+     * Check if blocking is on; a single volatile read, safe on every request
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Turn blocking on or off everywhere without reloading pages (main thread)
+     */
+    public static void setEnabled(Context context, boolean value) {
+        if (enabled == value) {
+            return;
+        }
+        enabled = value;
+        prefs(context).edit().putBoolean(KEY_BLOCKING_ENABLED, value).apply();
+        
+        String script = stateScript();
+        for (WebView webView : attachedWebViews) {
+            webView.evaluateJavascript(script, null);
+        }
+    }
+    
+    /**
+     * Keep a live WebView in sync with the state until it is detached (main thread)
+     */
+    public static void attach(WebView webView) {
+        if (!attachedWebViews.contains(webView)) {
+            attachedWebViews.add(webView);
+        }
+    }
+    
+    public static void detach(WebView webView) {
+        attachedWebViews.remove(webView);
+    }
+    
+    /**
+     * The live WebViews (main thread)
+     */
+    static List<WebView> getAttachedWebViews() {
+        return attachedWebViews;
+    }
+    
+    /**
+     * Script publishing the state to the page: toggles the injected stylesheets and
+     * restores elements hidden by the page scripts when blocking is turned off
+     */
+    static String stateScript() {
+        boolean on = enabled;
+        return "(function() {" +
+            "  window.__blockedAdsEnabled = " + on + ";" +
+            "  ['blockedads-style', '" + BlockedAdsCosmeticFilters.STYLE_ID + "'].forEach(function(id) {" +
+            "    var style = document.getElementById(id);" +
+            "    if (style) { style.disabled = " + !on + "; }" +
+            "  });" +
+            (on ?
+            "  if (window.__blockedAdsProcedural) { window.__blockedAdsProcedural.resume(); }" :
+            "  document.querySelectorAll('[data-blockedads-hidden]').forEach(function(element) {" +
+            "    element.style.display = '';" +
+            "    element.removeAttribute('data-blockedads-hidden');" +
+            "  });") +
+            "})();";
+    }
+    
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,54 @@
+package com.blockedads.app;
+
+import java.util.Arrays;
+
+/**
+ * Growable Byte Queue
+ * Bytes written at the end and drained from the front; emptied storage is reused
+ */
+final class BlockedAdsByteQueue {
+    
+    private byte[] bytes;
+    private int position;
+    private int limit;
+    
+    BlockedAdsByteQueue(int capacity) {
+        bytes = new byte[capacity];
+    }
+    
+    /**
+     * Number of bytes not yet drained
+     */
+    int size() {
+        return limit - position;
+    }
+    
+    void write(byte b) {
+        if (limit == bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        bytes[limit++] = b;
+    }
+    
+    void write(byte[] source, int offset, int length) {
+        if (limit + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, limit + length));
+        }
+        System.arraycopy(source, offset, bytes, limit, length);
+        limit += length;
+    }
+    
+    /**
+     * Move up to length bytes into the buffer
+     */
+    int drain(byte[] buffer, int offset, int length) {
+        int count = Math.min(length, limit - position);
+        System.arraycopy(bytes, position, buffer, offset, count);
+        position += count;
+        if (position == limit) {
+            position = 0;
+            limit = 0;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,64 @@
+package com.blockedads.app;
+
+/**
+ * ASCII Character Sets for BlockedAdsRegexParser
+ * A set is two longs: bits for characters 0-63, then for 64-127
+ */
+final class BlockedAdsCharSet {
+    
+    static final long[] DIGITS = range('0', '9');
+    static final long[] WORD = union(union(range('a', 'z'), range('A', 'Z')), union(DIGITS, range('_', '_')));
+    static final long[] SPACE = union(range(' ', ' '), range('\t', '\r'));
+    static final long[] LINE_BREAKS = union(range('\n', '\n'), range('\r', '\r'));
+    
+    private BlockedAdsCharSet() {
+    }
+    
+    /**
+     * The only character in a set, or 0xFFFF if it holds several (\d, a folded letter, ...)
+     */
+    static char single(long[] set) {
+        if (Long.bitCount(set[0]) + Long.bitCount(set[1]) != 1) {
+            return 0xFFFF;
+        }
+        return (char) (set[0] != 0 ? Long.numberOfTrailingZeros(set[0]) : 64 + Long.numberOfTrailingZeros(set[1]));
+    }
+    
+    static boolean has(long[] set, char c) {
+        return c < 64 ? (set[0] & (1L << c)) != 0 : (set[1] & (1L << (c - 64))) != 0;
+    }
+    
+    static long[] range(char from, char to) {
+        long[] set = new long[2];
+        for (char c = from; c <= to; c++) {
+            if (c < 64) {
+                set[0] |= 1L << c;
+            } else {
+                set[1] |= 1L << (c - 64);
+            }
+        }
+        return set;
+    }
+    
+    static long[] union(long[] a, long[] b) {
+        return new long[] {a[0] | b[0], a[1] | b[1]};
+    }
+    
+    static long[] complement(long[] set) {
+        return new long[] {~set[0], ~set[1]};
+    }
+    
+    /**
+     * Add the other case of every ASCII letter in a set, like Pattern.CASE_INSENSITIVE
+     */
+    static long[] foldCase(long[] set) {
+        long[] folded = set.clone();
+        for (char c = 'a'; c <= 'z'; c++) {
+            char upper = (char) (c - 32);
+            if (has(set, c) || has(set, upper)) {
+                folded = union(folded, union(range(c, c), range(upper, upper)));
+            }
+        }
+        return folded;
+    }
+}
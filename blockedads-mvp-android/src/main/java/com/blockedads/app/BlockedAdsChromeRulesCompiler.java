@@ -0,0 +1,295 @@
+package com.blockedads.app;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Chrome declarativeNetRequest Rule Compiler
+ * Turns the same lists the Android engine compiles into the extension's static rules.json.
+ * Plain ||host^ rules with the same options are merged into one requestDomains rule, rules a
+ * broader host rule already covers are dropped, and the output stays within Chrome's limits.
+ * Host-anchored block rules also cover top-level navigations (main_frame) to the host, as the
+ * hand-written rules did, so ad click-throughs are cut like on Android.
+ */
+public final class BlockedAdsChromeRulesCompiler {
+    
+    // Chrome guarantees this many enabled static rules per extension, and caps regexFilter rules
+    static final int MAX_STATIC_RULES = 30000;
+    static final int MAX_REGEX_RULES = 1000;
+    
+    private BlockedAdsChromeRulesCompiler() {
+    }
+    
+    /**
+     * The compiled ruleset and what was folded away
+     */
+    public static final class Ruleset {
+        
+        final List<BlockedAdsDnrRule> rules = new ArrayList<>();
+        int mergedDomains;
+        int redundant;
+        int unsupported;
+        int overLimit;
+        
+        public int getRuleCount() {
+            return rules.size();
+        }
+        
+        /**
+         * Host rules folded into another rule's requestDomains
+         */
+        public int getMergedDomains() {
+            return mergedDomains;
+        }
+        
+        /**
+         * Duplicates and rules a broader host rule with the same action already covers
+         */
+        public int getRedundant() {
+            return redundant;
+        }
+        
+        /**
+         * Rules declarativeNetRequest cannot express
+         */
+        public int getUnsupported() {
+            return unsupported;
+        }
+        
+        /**
+         * Rules left out to stay within Chrome's static and regex rule limits
+         */
+        public int getOverLimit() {
+            return overLimit;
+        }
+        
+        /**
+         * Format as rules.json, numbering rules from 1
+         */
+        public String toJson() {
+            StringBuilder json = new StringBuilder(rules.size() * 200);
+            json.append("[\n");
+            for (int i = 0; i < rules.size(); i++) {
+                BlockedAdsDnrRule rule = rules.get(i);
+                json.append("  {\n")
+                    .append("    \"id\": ").append(i + 1).append(",\n")
+                    .append("    \"priority\": 1,\n")
+                    .append("    \"action\": {\n")
+                    .append("      \"type\": \"").append(rule.action).append("\"\n")
+                    .append("    },\n")
+                    .append("    \"condition\": {");
+                String separator = "\n";
+                if (rule.urlFilter != null) {
+                    json.append(separator).append("      \"urlFilter\": ");
+                    appendString(json, rule.urlFilter);
+                    separator = ",\n";
+                }
+                if (rule.regexFilter != null) {
+                    json.append(separator).append("      \"regexFilter\": ");
+                    appendString(json, rule.regexFilter);
+                    separator = ",\n";
+                }
+                if (rule.caseSensitive) {
+                    json.append(separator).append("      \"isUrlFilterCaseSensitive\": true");
+                    separator = ",\n";
+                }
+                separator = appendArray(json, separator, "requestDomains", rule.requestDomains);
+                separator = appendArray(json, separator, "initiatorDomains", rule.initiatorDomains);
+                separator = appendArray(json, separator, "excludedInitiatorDomains", rule.excludedInitiatorDomains);
+                if (rule.domainType != null) {
+                    json.append(separator).append("      \"domainType\": \"").append(rule.domainType).append('"');
+                    separator = ",\n";
+                }
+                separator = appendArray(json, separator, "resourceTypes", rule.resourceTypes);
+                appendArray(json, separator, "excludedResourceTypes", rule.excludedResourceTypes);
+                json.append("\n    }\n  }").append(i < rules.size() - 1 ? ",\n" : "\n");
+            }
+            return json.append("]\n").toString();
+        }
+    }
+    
+    /**
+     * Compile list lines, as they would be fed to BlockedAdsListCompiler
+     */
+    public static Ruleset compile(List<String> lines) {
+        return compile(BlockedAdsListCompiler.compile(lines));
+    }
+    
+    /**
+     * Convert a compiled filter index to declarativeNetRequest rules
+     * Allow rules come first so a rule limit never drops an exception while keeping what it excepts
+     */
+    public static Ruleset compile(BlockedAdsCompiledFilters filters) {
+        List<BlockedAdsFilterRule> rules = new ArrayList<>(filters.getExceptionRules());
+        rules.addAll(filters.getDomainRules());
+        rules.addAll(filters.getGenericRules());
+        
+        // Hosts blocked or allowed outright, keyed by action
+        Set<String> plainHosts = new HashSet<>();
+        for (BlockedAdsFilterRule rule : rules) {
+            if (isPlainHostRule(rule) && hasNoOptions(rule)) {
+                plainHosts.add(BlockedAdsDnrRule.actionFor(rule) + ' ' + rule.anchorHost);
+            }
+        }
+        
+        Ruleset ruleset = new Ruleset();
+        Map<String, BlockedAdsDnrRule> domainGroups = new LinkedHashMap<>();
+        List<BlockedAdsDnrRule> urlRules = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (BlockedAdsFilterRule rule : rules) {
+            // Options only narrow a rule, so a plain rule on the host or a parent domain covers it
+            boolean plain = isPlainHostRule(rule);
+            if (rule.anchorHost != null && (rule.typeMask & ~BlockedAdsFilterRule.DEFAULT_TYPES) == 0
+                    && isCovered(plainHosts, BlockedAdsDnrRule.actionFor(rule),
+                        plain && hasNoOptions(rule) ? parentDomain(rule.anchorHost) : rule.anchorHost)) {
+                ruleset.redundant++;
+                continue;
+            }
+            
+            List<BlockedAdsDnrRule> converted = BlockedAdsDnrRule.convert(rule, plain);
+            if (converted == null) {
+                ruleset.unsupported++;
+                continue;
+            }
+            for (BlockedAdsDnrRule dnr : converted) {
+                String key = dnr.groupKey();
+                if (!seen.add(plain ? key + '|' + rule.anchorHost : key)) {
+                    ruleset.redundant++;
+                } else if (!plain) {
+                    urlRules.add(dnr);
+                } else if (domainGroups.containsKey(key)) {
+                    domainGroups.get(key).requestDomains.add(rule.anchorHost);
+                    ruleset.mergedDomains++;
+                } else {
+                    dnr.requestDomains.add(rule.anchorHost);
+                    domainGroups.put(key, dnr);
+                }
+            }
+        }
+        
+        List<BlockedAdsDnrRule> ordered = new ArrayList<>(domainGroups.values());
+        ordered.addAll(urlRules);
+        int regexRules = 0;
+        String[] actionOrder = {BlockedAdsDnrRule.ACTION_ALLOW_ALL, BlockedAdsDnrRule.ACTION_ALLOW, BlockedAdsDnrRule.ACTION_BLOCK};
+        for (String action : actionOrder) {
+            for (BlockedAdsDnrRule dnr : ordered) {
+                if (!dnr.action.equals(action)) {
+                    continue;
+                }
+                if (ruleset.rules.size() == MAX_STATIC_RULES
+                        || (dnr.regexFilter != null && regexRules == MAX_REGEX_RULES)) {
+                    ruleset.overLimit++;
+                    continue;
+                }
+                if (dnr.regexFilter != null) {
+                    regexRules++;
+                }
+                ruleset.rules.add(dnr);
+            }
+        }
+        return ruleset;
+    }
+    
+    /**
+     * A ||host^ rule without a path, which maps exactly onto requestDomains (host and subdomains)
+     */
+    private static boolean isPlainHostRule(BlockedAdsFilterRule rule) {
+        return rule.anchorHost != null && rule.body.length() == rule.anchorHost.length() + 3
+            && rule.body.endsWith("^") && BlockedAdsDnrRule.isAscii(rule.anchorHost);
+    }
+    
+    private static boolean hasNoOptions(BlockedAdsFilterRule rule) {
+        return rule.typeMask == BlockedAdsFilterRule.DEFAULT_TYPES && rule.partyMask == BlockedAdsFilterRule.PARTY_ANY
+            && rule.includeDomains == null && rule.excludeDomains == null;
+    }
+    
+    private static boolean isCovered(Set<String> plainHosts, String action, String host) {
+        for (String domain = host; domain != null; domain = parentDomain(domain)) {
+            if (plainHosts.contains(action + ' ' + domain)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static String parentDomain(String host) {
+        int dot = host.indexOf('.');
+        return dot < 0 || dot == host.length() - 1 ? null : host.substring(dot + 1);
+    }
+    
+    private static String appendArray(StringBuilder json, String separator, String name, List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return separator;
+        }
+        json.append(separator).append("      \"").append(name).append("\": [");
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            appendString(json, values.get(i));
+        }
+        json.append(']');
+        return ",\n";
+    }
+    
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\');
+            }
+            json.append(c);
+        }
+        json.append('"');
+    }
+    
+    /**
+     * Write rules.json for the built-in rules plus the given lists
+     * Usage: BlockedAdsChromeRulesCompiler --out rules.json list.txt...
+     */
+    public static void main(String[] args) throws IOException {
+        File out = null;
+        List<File> lists = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--out")) {
+                out = new File(args[++i]);
+            } else {
+                lists.add(new File(args[i]));
+            }
+        }
+        if (out == null) {
+            System.err.println("Usage: BlockedAdsChromeRulesCompiler --out rules.json [list.txt]...");
+            System.exit(2);
+        }
+        
+        BlockedAdsListCompiler.Session session = BlockedAdsListCompiler.newSession(null);
+        for (String rule : BlockedAdsFilterEngine.builtInRules()) {
+            session.onRule(rule);
+        }
+        for (File list : lists) {
+            try (InputStream in = new FileInputStream(list)) {
+                session.addList(in);
+            }
+        }
+        Ruleset ruleset = compile(session.finish());
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(out), StandardCharsets.UTF_8)) {
+            writer.write(ruleset.toJson());
+        }
+        System.out.println("Wrote " + ruleset.getRuleCount() + " rules to " + out + " (" + ruleset.getMergedDomains()
+            + " domains merged, " + ruleset.getRedundant() + " redundant, " + ruleset.getUnsupported()
+            + " unsupported, " + ruleset.getOverLimit() + " over Chrome's limits)");
+    }
+}
@@ -0,0 +1,179 @@
+package com.blockedads.app;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compiled Filter Index
+ * Output of BlockedAdsListCompiler: rules classified into domain-anchored, generic,
+ * exception, cosmetic and URL rewrite buckets, deduplicated and kept in list order
+ */
+public final class BlockedAdsCompiledFilters {
+    
+    private static final int FORMAT_VERSION = 2;
+    
+    private final List<BlockedAdsFilterRule> domainRules;
+    private final List<BlockedAdsFilterRule> genericRules;
+    private final List<BlockedAdsFilterRule> exceptionRules;
+    private final List<String> cosmeticRules;
+    private final List<String> rewriteRules;
+    
+    private BlockedAdsCompiledFilters(Builder builder) {
+        Set<String> seen = new HashSet<>();
+        domainRules = dedupe(builder.domainRules, seen);
+        genericRules = dedupe(builder.genericRules, seen);
+        exceptionRules = dedupe(builder.exceptionRules, seen);
+        
+        cosmeticRules = dedupeLines(builder.cosmeticRules, seen);
+        rewriteRules = dedupeLines(builder.rewriteRules, seen);
+    }
+    
+    /**
+     * ||host^ rules, indexed by anchor host in the engine
+     */
+    public List<BlockedAdsFilterRule> getDomainRules() {
+        return domainRules;
+    }
+    
+    /**
+     * Blocking rules without a single anchor host
+     */
+    public List<BlockedAdsFilterRule> getGenericRules() {
+        return genericRules;
+    }
+    
+    /**
+     * @@ exception rules
+     */
+    public List<BlockedAdsFilterRule> getExceptionRules() {
+        return exceptionRules;
+    }
+    
+    /**
+     * Element hiding rules (##, #@#, #?#), as written in the list
+     */
+    public List<String> getCosmeticRules() {
+        return cosmeticRules;
+    }
+    
+    /**
+     * Navigation rewrite rules ($removeparam, $urlskip), as written in the list
+     */
+    public List<String> getRewriteRules() {
+        return rewriteRules;
+    }
+    
+    public int getNetworkRuleCount() {
+        return domainRules.size() + genericRules.size() + exceptionRules.size();
+    }
+    
+    /**
+     * Serialize the index; equal inputs always produce identical bytes
+     */
+    public byte[] serialize() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT_VERSION);
+            writeRules(out, domainRules);
+            writeRules(out, genericRules);
+            writeRules(out, exceptionRules);
+            writeLines(out, cosmeticRules);
+            writeLines(out, rewriteRules);
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory serialization failed", e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    private static void writeRules(DataOutputStream out, List<BlockedAdsFilterRule> rules) throws IOException {
+        out.writeInt(rules.size());
+        for (BlockedAdsFilterRule rule : rules) {
+            out.writeUTF(rule.getSource());
+        }
+    }
+    
+    private static void writeLines(DataOutputStream out, List<String> rules) throws IOException {
+        out.writeInt(rules.size());
+        for (String rule : rules) {
+            out.writeUTF(rule);
+        }
+    }
+    
+    private static List<BlockedAdsFilterRule> dedupe(List<BlockedAdsFilterRule> rules, Set<String> seen) {
+        List<BlockedAdsFilterRule> unique = new ArrayList<>(rules.size());
+        for (BlockedAdsFilterRule rule : rules) {
+            if (seen.add(rule.getSource())) {
+                unique.add(rule);
+            }
+        }
+        return Collections.unmodifiableList(unique);
+    }
+    
+    private static List<String> dedupeLines(List<String> rules, Set<String> seen) {
+        List<String> unique = new ArrayList<>(rules.size());
+        for (String rule : rules) {
+            if (seen.add(rule)) {
+                unique.add(rule);
+            }
+        }
+        return Collections.unmodifiableList(unique);
+    }
+    
+    /**
+     * Accumulates classified rules for one chunk of a list; chunks are appended in list order
+     */
+    static final class Builder {
+        
+        final List<BlockedAdsFilterRule> domainRules = new ArrayList<>();
+        final List<BlockedAdsFilterRule> genericRules = new ArrayList<>();
+        final List<BlockedAdsFilterRule> exceptionRules = new ArrayList<>();
+        final List<String> cosmeticRules = new ArrayList<>();
+        final List<String> rewriteRules = new ArrayList<>();
+        
+        void add(String line) {
+            String rule = line.trim();
+            if (rule.isEmpty() || rule.charAt(0) == '!' || rule.charAt(0) == '[') {
+                return;
+            }
+            if (BlockedAdsFilterRule.isCosmetic(rule)) {
+                cosmeticRules.add(rule);
+                return;
+            }
+            if (BlockedAdsRewriteRule.isRewriteRule(rule)) {
+                rewriteRules.add(rule);
+                return;
+            }
+            
+            BlockedAdsFilterRule parsed = BlockedAdsFilterRule.parse(rule);
+            if (parsed == null) {
+                return;
+            }
+            if (parsed.isException()) {
+                exceptionRules.add(parsed);
+            } else if (parsed.getAnchorHost() != null) {
+                domainRules.add(parsed);
+            } else {
+                genericRules.add(parsed);
+            }
+        }
+        
+        Builder append(Builder next) {
+            domainRules.addAll(next.domainRules);
+            genericRules.addAll(next.genericRules);
+            exceptionRules.addAll(next.exceptionRules);
+            cosmeticRules.addAll(next.cosmeticRules);
+            rewriteRules.addAll(next.rewriteRules);
+            return this;
+        }
+        
+        BlockedAdsCompiledFilters build() {
+            return new BlockedAdsCompiledFilters(this);
+        }
+    }
+}
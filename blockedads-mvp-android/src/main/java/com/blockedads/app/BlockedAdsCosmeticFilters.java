@@ -0,0 +1,275 @@
+package com.blockedads.app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cosmetic Filters
+ * Element hiding rules (##, #?#, #@#) selected per page. Plain selectors become one
+ * stylesheet that the browser applies natively; the generic part no exclusion or exception
+ * can drop is built once per engine, so a page only adds its host's selectors. Procedural
+ * ones (:has-text(), :has(), :upward(), :matches-css()) go to BlockedAdsProceduralRuntime.
+ */
+public final class BlockedAdsCosmeticFilters {
+    
+    static final String STYLE_ID = "blockedads-cosmetic";
+    
+    /**
+     * Operators only the runtime can evaluate; the -abp- forms are Adblock Plus aliases
+     */
+    private static final String[] PROCEDURAL_OPERATORS = {
+        ":has-text(", ":has(", ":upward(", ":matches-css(", ":matches-css-before(", ":matches-css-after(",
+        ":-abp-contains(", ":-abp-has("
+    };
+    
+    // ##, #@#, #?#, #@?# and the #$# forms, between the domains and the selector
+    private static final Pattern SEPARATOR = Pattern.compile("#(@?\\$?\\??)#");
+    
+    private final List<Rule> genericRules = new ArrayList<>();
+    private final Map<String, List<Rule>> domainRules = new HashMap<>();
+    private final Map<String, List<String>> exceptions = new HashMap<>(); // Selector to its domains; "" for all
+    private final List<Rule> conditionalRules = new ArrayList<>(); // Generic rules checked per page
+    private final Set<String> genericStyled = new HashSet<>();
+    private final String genericStyle; // The stylesheet of the other generic rules, as a JS literal
+    
+    /**
+     * A hiding rule: its selector and the domains it is excluded from
+     */
+    private static final class Rule {
+        final String selector;
+        final boolean procedural;
+        final String[] excludeDomains;
+        
+        Rule(String selector, boolean procedural, String[] excludeDomains) {
+            this.selector = selector;
+            this.procedural = procedural;
+            this.excludeDomains = excludeDomains;
+        }
+    }
+    
+    /**
+     * Index cosmetic rules as written in the lists; #$# rules and malformed selectors are skipped
+     */
+    BlockedAdsCosmeticFilters(List<String> rules) {
+        for (String rule : rules) {
+            add(rule);
+        }
+        
+        StringBuilder css = new StringBuilder();
+        for (Rule rule : genericRules) {
+            if (rule.procedural || rule.excludeDomains != null || exceptions.containsKey(rule.selector)) {
+                conditionalRules.add(rule);
+            } else if (genericStyled.add(rule.selector)) {
+                appendRule(css, rule.selector);
+            }
+        }
+        genericStyle = jsString(css.toString());
+    }
+    
+    private void add(String rule) {
+        Matcher separator = SEPARATOR.matcher(rule);
+        if (!separator.find()) {
+            return;
+        }
+        String domains = rule.substring(0, separator.start());
+        String marker = separator.group(1);
+        String selector = rule.substring(separator.end()).trim();
+        if (selector.isEmpty() || marker.contains("$") || selector.indexOf('{') >= 0 || selector.indexOf('}') >= 0) {
+            return; // CSS injection is not supported, and braces could escape the stylesheet rule
+        }
+        
+        List<String> include = new ArrayList<>();
+        List<String> exclude = new ArrayList<>();
+        for (String domain : domains.split(",")) {
+            domain = domain.trim();
+            if (domain.startsWith("~")) {
+                exclude.add(domain.substring(1));
+            } else if (!domain.isEmpty()) {
+                include.add(domain);
+            }
+        }
+        
+        if (marker.contains("@")) {
+            List<String> excepted = exceptions.get(selector);
+            if (excepted == null) {
+                excepted = new ArrayList<>(1);
+                exceptions.put(selector, excepted);
+            }
+            excepted.addAll(include.isEmpty() ? Collections.singletonList("") : include);
+            return;
+        }
+        
+        Rule parsed = new Rule(selector, isProcedural(selector),
+            exclude.isEmpty() ? null : exclude.toArray(new String[0]));
+        if (include.isEmpty()) {
+            genericRules.add(parsed);
+            return;
+        }
+        for (String domain : include) {
+            List<Rule> forDomain = domainRules.get(domain);
+            if (forDomain == null) {
+                forDomain = new ArrayList<>(1);
+                domainRules.put(domain, forDomain);
+            }
+            forDomain.add(parsed);
+        }
+    }
+    
+    static boolean isProcedural(String selector) {
+        for (String operator : PROCEDURAL_OPERATORS) {
+            if (selector.contains(operator)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Get the plain or procedural selectors hiding elements on a host: generic rules plus those
+     * for the host and its parent domains, minus exclusions and #@# exceptions
+     */
+    List<String> selectorsFor(String host, boolean procedural) {
+        return new ArrayList<>(collectFor(genericRules, host, procedural));
+    }
+    
+    private Set<String> collectFor(List<Rule> generic, String host, boolean procedural) {
+        Set<String> selectors = new LinkedHashSet<>();
+        collect(generic, host, procedural, selectors);
+        for (int from = 0; from >= 0 && from < host.length(); from = nextLabel(host, from)) {
+            List<Rule> forDomain = domainRules.get(host.substring(from));
+            if (forDomain != null) {
+                collect(forDomain, host, procedural, selectors);
+            }
+        }
+        return selectors;
+    }
+    
+    private void collect(List<Rule> rules, String host, boolean procedural, Set<String> selectors) {
+        for (Rule rule : rules) {
+            if (rule.procedural == procedural && !isExcluded(rule, host) && !isExcepted(rule.selector, host)) {
+                selectors.add(rule.selector);
+            }
+        }
+    }
+    
+    private static boolean isExcluded(Rule rule, String host) {
+        if (rule.excludeDomains != null) {
+            for (String domain : rule.excludeDomains) {
+                if (isSubdomainOf(host, domain)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private boolean isExcepted(String selector, String host) {
+        List<String> domains = exceptions.get(selector);
+        if (domains != null) {
+            for (String domain : domains) {
+                if (domain.isEmpty() || isSubdomainOf(host, domain)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Get the selectors a page adds to the generic stylesheet: conditional generic rules and
+     * those for the host and its parent domains
+     */
+    private List<String> pageSelectorsFor(String host, boolean procedural) {
+        Set<String> selectors = collectFor(conditionalRules, host, procedural);
+        List<String> added = new ArrayList<>(selectors.size());
+        for (String selector : selectors) {
+            if (procedural || !genericStyled.contains(selector)) {
+                added.add(selector);
+            }
+        }
+        return added;
+    }
+    
+    // One rule per selector: an invalid selector then drops only itself
+    private static void appendRule(StringBuilder css, String selector) {
+        css.append(selector).append("{display:none!important}\n");
+    }
+    
+    /**
+     * Build the script that hides a page's elements, or null if no rule applies to its host
+     * The stylesheet is replaced on every call; the runtime installs once per document
+     */
+    String scriptFor(String host) {
+        if (host == null) {
+            return null;
+        }
+        List<String> plain = pageSelectorsFor(host, false);
+        List<String> procedural = BlockedAdsProceduralRuntime.get() != null
+            ? pageSelectorsFor(host, true) : Collections.<String>emptyList();
+        if (genericStyled.isEmpty() && plain.isEmpty() && procedural.isEmpty()) {
+            return null;
+        }
+        
+        StringBuilder css = new StringBuilder();
+        for (String selector : plain) {
+            appendRule(css, selector);
+        }
+        StringBuilder script = new StringBuilder(genericStyle.length() + css.length() + 256)
+            .append("(function() {")
+            .append("  var style = document.getElementById('").append(STYLE_ID).append("');")
+            .append("  if (!style) {")
+            .append("    style = document.createElement('style');")
+            .append("    style.id = '").append(STYLE_ID).append("';")
+            .append("    (document.head || document.documentElement).appendChild(style);")
+            .append("  }")
+            .append("  style.textContent = ").append(genericStyle)
+            .append(css.length() > 0 ? " + " + jsString(css.toString()) : "").append(';')
+            .append("})();");
+        String loaded = BlockedAdsProceduralRuntime.get();
+        if (!procedural.isEmpty() && loaded != null) {
+            script.append(loaded).append("\nwindow.__blockedAdsProcedural.start([");
+            for (int i = 0; i < procedural.size(); i++) {
+                script.append(i > 0 ? "," : "").append(jsString(procedural.get(i)));
+            }
+            script.append("]);");
+        }
+        return script.toString();
+    }
+    
+    /**
+     * Quote a string as a JavaScript literal
+     */
+    static String jsString(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029' || c == '<') {
+                // < keeps a </script> in a selector inert
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+    
+    private static boolean isSubdomainOf(String host, String domain) {
+        return host.endsWith(domain)
+            && (host.length() == domain.length() || host.charAt(host.length() - domain.length() - 1) == '.');
+    }
+    
+    private static int nextLabel(String host, int from) {
+        int dot = host.indexOf('.', from);
+        return dot >= 0 ? dot + 1 : -1;
+    }
+}
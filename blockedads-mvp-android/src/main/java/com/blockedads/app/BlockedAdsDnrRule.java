@@ -0,0 +1,201 @@
+package com.blockedads.app;
+
+import java.net.IDN;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * declarativeNetRequest Rule
+ * One rule of the extension's rules.json, without its id, and its translation from a
+ * filter rule: options map onto conditions, regexes are kept to what RE2 accepts, and
+ * literal regexes become urlFilter substrings.
+ */
+final class BlockedAdsDnrRule {
+    
+    static final String ACTION_BLOCK = "block";
+    static final String ACTION_ALLOW = "allow";
+    static final String ACTION_ALLOW_ALL = "allowAllRequests";
+    private static final int FRAME_TYPES = BlockedAdsRequestContext.TYPE_DOCUMENT | BlockedAdsRequestContext.TYPE_SUBDOCUMENT;
+    
+    // Indexed by the bit position of the BlockedAdsRequestContext.TYPE_* constants
+    private static final String[] RESOURCE_TYPES = {
+        "main_frame", "sub_frame", "script", "stylesheet", "image", "media",
+        "font", "xmlhttprequest", "ping", "object", "other"
+    };
+    
+    final String action;
+    String urlFilter;
+    String regexFilter;
+    boolean caseSensitive;
+    final List<String> requestDomains = new ArrayList<>();
+    List<String> initiatorDomains;
+    List<String> excludedInitiatorDomains;
+    String domainType;
+    List<String> resourceTypes;
+    List<String> excludedResourceTypes;
+    
+    BlockedAdsDnrRule(String action) {
+        this.action = action;
+    }
+    
+    /**
+     * Everything but the request domains; rules with the same key can share one requestDomains list
+     */
+    String groupKey() {
+        return action + '|' + urlFilter + '|' + regexFilter + '|' + caseSensitive + '|' + initiatorDomains
+            + '|' + excludedInitiatorDomains + '|' + domainType + '|' + resourceTypes + '|' + excludedResourceTypes;
+    }
+    
+    /**
+     * Translate one filter rule, or return null if declarativeNetRequest cannot express it
+     * A $document exception becomes an allowAllRequests rule for the frames it covers
+     */
+    static List<BlockedAdsDnrRule> convert(BlockedAdsFilterRule rule, boolean plain) {
+        List<BlockedAdsDnrRule> converted = new ArrayList<>(2);
+        int typeMask = rule.typeMask;
+        if (rule.exception && (typeMask & BlockedAdsRequestContext.TYPE_DOCUMENT) != 0) {
+            BlockedAdsDnrRule allowAll = newRule(rule, ACTION_ALLOW_ALL, plain);
+            if (allowAll == null) {
+                return null;
+            }
+            allowAll.resourceTypes = typeNames(typeMask & FRAME_TYPES);
+            converted.add(allowAll);
+            typeMask &= ~FRAME_TYPES;
+            if (typeMask == 0) {
+                return converted;
+            }
+        }
+        
+        BlockedAdsDnrRule dnr = newRule(rule, actionFor(rule), plain);
+        if (dnr == null) {
+            return null;
+        }
+        if (typeMask == BlockedAdsFilterRule.DEFAULT_TYPES && !rule.exception && rule.anchorHost != null) {
+            dnr.resourceTypes = typeNames(BlockedAdsRequestContext.TYPE_ALL);
+        } else if (typeMask != BlockedAdsFilterRule.DEFAULT_TYPES) {
+            // Whichever list is shorter; declarativeNetRequest's default also leaves out main_frame
+            int excluded = BlockedAdsRequestContext.TYPE_ALL & ~typeMask;
+            if (Integer.bitCount(excluded) < Integer.bitCount(typeMask)) {
+                dnr.excludedResourceTypes = typeNames(excluded);
+            } else {
+                dnr.resourceTypes = typeNames(typeMask);
+            }
+        }
+        converted.add(dnr);
+        return converted;
+    }
+    
+    private static BlockedAdsDnrRule newRule(BlockedAdsFilterRule rule, String action, boolean plain) {
+        BlockedAdsDnrRule dnr = new BlockedAdsDnrRule(action);
+        if (rule.regex && isLiteral(rule.body.substring(1, rule.body.length() - 1))) {
+            // Such as /adframe/: a substring match, which needs no slot in the regex rule budget
+            dnr.urlFilter = rule.body.substring(1, rule.body.length() - 1);
+            dnr.caseSensitive = rule.matchCase;
+        } else if (rule.regex) {
+            dnr.regexFilter = rule.body.substring(1, rule.body.length() - 1);
+            if (!isRe2Compatible(dnr.regexFilter)) {
+                return null;
+            }
+            dnr.caseSensitive = rule.matchCase;
+        } else if (!plain && !rule.body.equals("*")) {
+            if (!isValidUrlFilter(rule.body)) {
+                return null;
+            }
+            dnr.urlFilter = rule.body;
+            dnr.caseSensitive = rule.matchCase;
+        }
+        
+        if (rule.partyMask == BlockedAdsFilterRule.PARTY_THIRD) {
+            dnr.domainType = "thirdParty";
+        } else if (rule.partyMask == BlockedAdsFilterRule.PARTY_FIRST) {
+            dnr.domainType = "firstParty";
+        }
+        try {
+            dnr.initiatorDomains = asciiDomains(rule.includeDomains);
+            dnr.excludedInitiatorDomains = asciiDomains(rule.excludeDomains);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return dnr;
+    }
+    
+    static String actionFor(BlockedAdsFilterRule rule) {
+        return rule.exception ? ACTION_ALLOW : ACTION_BLOCK;
+    }
+    
+    /**
+     * urlFilter takes the same ||, |, * and ^ syntax, but only ASCII, | at either end, and no ||*
+     */
+    private static boolean isValidUrlFilter(String body) {
+        if (!isAscii(body) || body.startsWith("||*")) {
+            return false;
+        }
+        int start = body.startsWith("||") ? 2 : body.startsWith("|") ? 1 : 0;
+        int bar = body.indexOf('|', start);
+        return bar < 0 || bar == body.length() - 1;
+    }
+    
+    /**
+     * A regex without metacharacters, which urlFilter matches as the same substring
+     */
+    private static boolean isLiteral(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+                return false;
+            }
+        }
+        return !regex.isEmpty() && isAscii(regex);
+    }
+    
+    /**
+     * Chrome compiles regexFilter with RE2, which has no lookaround, backreferences or possessive quantifiers
+     */
+    private static boolean isRe2Compatible(String regex) {
+        if (!isAscii(regex) || regex.contains("(?=") || regex.contains("(?!") || regex.contains("(?<")
+                || regex.contains("*+") || regex.contains("++") || regex.contains("?+")) {
+            return false;
+        }
+        for (int i = 0; i < regex.length() - 1; i++) {
+            if (regex.charAt(i) == '\\') {
+                if (Character.isDigit(regex.charAt(i + 1)) && regex.charAt(i + 1) != '0') {
+                    return false;
+                }
+                i++;
+            }
+        }
+        return true;
+    }
+    
+    static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c > 0x7e) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static List<String> asciiDomains(String[] domains) {
+        if (domains == null) {
+            return null;
+        }
+        List<String> ascii = new ArrayList<>(domains.length);
+        for (String domain : domains) {
+            ascii.add(IDN.toASCII(domain).toLowerCase(Locale.ROOT));
+        }
+        return ascii;
+    }
+    
+    private static List<String> typeNames(int typeMask) {
+        List<String> names = new ArrayList<>();
+        for (int bit = 0; bit < RESOURCE_TYPES.length; bit++) {
+            if ((typeMask & (1 << bit)) != 0) {
+                names.add(RESOURCE_TYPES[bit]);
+            }
+        }
+        return names;
+    }
+}
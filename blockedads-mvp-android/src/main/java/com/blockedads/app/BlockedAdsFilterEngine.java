@@ -0,0 +1,257 @@
+package com.blockedads.app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Simple Filter Engine for Ad Blocking
+ * Shared by every WebView in the app so rules are compiled once per process.
+ * An engine is immutable once built; BlockedAdsFilterLoader swaps in a new one when lists load.
+ */
+public class BlockedAdsFilterEngine {
+    
+    /**
+     * Basic ad blocking rules
+     */
+    private static final String[] BASIC_RULES = {
+        "||googleadservices.com^",
+        "||googlesyndication.com^",
+        "||doubleclick.net^",
+        "||googletagmanager.com^",
+        "||googletagservices.com^",
+        "||google-analytics.com^",
+        "||facebook.com/tr^",
+        "||facebook.net^",
+        "||connect.facebook.net^",
+        "||fbcdn.net^",
+        "||amazon-adsystem.com^",
+        "||adsystem.amazon.com^",
+        "||aaxads.com^",
+        "||ads.yahoo.com^",
+        "||adsystem.yahoo.com^",
+        "||ads-twitter.com^",
+        "||twitter.com/i/adsct^",
+        "||ads-api.twitter.com^"
+    };
+    
+    /**
+     * YouTube ad endpoint rules (ad slots, ad tracking pings, ad stats)
+     */
+    private static final String[] YOUTUBE_RULES = {
+        "/pagead/*", // A path segment; "/pagead/" alone would be the regex pagead
+        "||youtube.com/ptracking^",
+        "||youtube.com/api/stats/ads^",
+        "||youtube.com/get_midroll_info^",
+        "||youtube.com/pcs/activeview^"
+    };
+    
+    /**
+     * YouTube ad containers, hidden by the cosmetic filters; :has() also hides the grid cell
+     * left around an ad slot
+     */
+    private static final String[] YOUTUBE_COSMETIC_RULES = {
+        "youtube.com##.ytd-promoted-sparkles-web-renderer",
+        "youtube.com##.ytd-ad-slot-renderer",
+        "youtube.com##.ytd-promoted-video-renderer",
+        "youtube.com##.ytd-video-masthead-ad-v3-renderer",
+        "youtube.com##.ytd-compact-promoted-video-renderer",
+        "youtube.com##ytd-rich-item-renderer:has(> #content > ytd-ad-slot-renderer)",
+        "m.youtube.com##ytm-rich-item-renderer:has(> ad-slot-renderer)"
+    };
+    
+    /**
+     * Click-tracker redirectors unwrapped to their destination, and tracking parameters
+     * stripped from navigations
+     */
+    private static final String[] URL_REWRITE_RULES = {
+        "/^https?:\\/\\/(?:www\\.)?google\\.[a-z.]+\\/url\\?/$urlskip=?url",
+        "/^https?:\\/\\/(?:www\\.)?google\\.[a-z.]+\\/url\\?/$urlskip=?q",
+        "||l.facebook.com/l.php?$urlskip=?u",
+        "||lm.facebook.com/l.php?$urlskip=?u",
+        "||l.instagram.com/?$urlskip=?u",
+        "||youtube.com/redirect?$urlskip=?q",
+        "||out.reddit.com/$urlskip=?url",
+        "$removeparam=/^utm_/",
+        "$removeparam=fbclid",
+        "$removeparam=gclid"
+    };
+    
+    /**
+     * matchRule() result when no rule decided the request
+     */
+    static final int NO_RULE = Integer.MIN_VALUE;
+    
+    // Starts as the built-in bootstrap rule set until the full lists are compiled
+    private static volatile BlockedAdsFilterEngine sharedInstance = new BlockedAdsFilterEngine();
+    
+    // ||host^ rules are indexed by their anchor host, so only rules for the request's host are tried
+    private final BlockedAdsRuleStore blockingRules;
+    private final BlockedAdsRuleStore exceptionRules;
+    private final BlockedAdsCosmeticFilters cosmeticFilters;
+    private final BlockedAdsUrlRewriter urlRewriter;
+    
+    /**
+     * Create an engine with only the built-in bootstrap rules
+     */
+    public BlockedAdsFilterEngine() {
+        this(BlockedAdsListCompiler.compile(builtInRules()));
+    }
+    
+    /**
+     * Create an engine with the built-in rules plus filter list lines
+     */
+    public BlockedAdsFilterEngine(List<String> listRules) {
+        this(BlockedAdsListCompiler.compile(withBuiltInRules(listRules)));
+    }
+    
+    /**
+     * Create an engine from a compiled filter index
+     */
+    public BlockedAdsFilterEngine(BlockedAdsCompiledFilters filters) {
+        List<BlockedAdsFilterRule> rules = new ArrayList<>(filters.getDomainRules());
+        rules.addAll(filters.getGenericRules());
+        blockingRules = BlockedAdsRuleStore.build(rules);
+        exceptionRules = BlockedAdsRuleStore.build(filters.getExceptionRules());
+        cosmeticFilters = new BlockedAdsCosmeticFilters(filters.getCosmeticRules());
+        urlRewriter = new BlockedAdsUrlRewriter(filters.getRewriteRules());
+    }
+    
+    /**
+     * Get the built-in bootstrap rules
+     */
+    static List<String> builtInRules() {
+        return withBuiltInRules(Collections.<String>emptyList());
+    }
+    
+    /**
+     * Prepend the built-in rules to filter list lines
+     */
+    static List<String> withBuiltInRules(List<String> listRules) {
+        List<String> lines = new ArrayList<>(BASIC_RULES.length + YOUTUBE_RULES.length
+            + YOUTUBE_COSMETIC_RULES.length + URL_REWRITE_RULES.length + listRules.size());
+        lines.addAll(Arrays.asList(BASIC_RULES));
+        lines.addAll(Arrays.asList(YOUTUBE_RULES));
+        lines.addAll(Arrays.asList(YOUTUBE_COSMETIC_RULES));
+        lines.addAll(Arrays.asList(URL_REWRITE_RULES));
+        lines.addAll(listRules);
+        return lines;
+    }
+    
+    /**
+     * Get the process-wide filter engine
+     * A single volatile read, safe to call on every request
+     */
+    public static BlockedAdsFilterEngine getShared() {
+        return sharedInstance;
+    }
+    
+    /**
+     * Atomically replace the process-wide filter engine
+     */
+    static void setShared(BlockedAdsFilterEngine engine) {
+        sharedInstance = engine;
+    }
+    
+    /**
+     * Check if a request should be blocked
+     * Cheap checks run first: unparsable hosts, main-frame loads, then host-indexed rules;
+     * @@ exception rules are only tried for requests a blocking rule matched
+     */
+    public boolean shouldBlock(BlockedAdsRequestContext context) {
+        return matchRule(context) >= 0;
+    }
+    
+    /**
+     * Get the rule deciding a request: the blocking rule's id, ~id of the @@ rule that
+     * excepted it, or NO_RULE; see describeRule()
+     */
+    int matchRule(BlockedAdsRequestContext context) {
+        String host = context.getHost();
+        if (host == null) {
+            return NO_RULE;
+        }
+        
+        // Never block page navigations unless a rule explicitly targets $document
+        if (context.isMainFrame() && !blockingRules.hasDocumentRules()) {
+            return NO_RULE;
+        }
+        
+        int rule = blockingRules.match(context);
+        if (rule < 0) {
+            return NO_RULE;
+        }
+        int exception = exceptionRules.match(context);
+        return exception < 0 ? rule : ~exception;
+    }
+    
+    /**
+     * Get the text of a rule returned by matchRule(), or null
+     */
+    public String describeRule(int rule) {
+        if (rule == NO_RULE) {
+            return null;
+        }
+        if (rule >= 0) {
+            return blockingRules.describe(rule);
+        }
+        String exception = exceptionRules.describe(~rule);
+        return exception == null ? null : "@@" + exception;
+    }
+    
+    /**
+     * Check if a page is exempt from blocking by a @@...$document exception rule
+     */
+    public boolean isDocumentAllowed(String pageUrl) {
+        if (!exceptionRules.hasDocumentRules()) {
+            return false;
+        }
+        String host = BlockedAdsRequestContext.extractHost(pageUrl);
+        return host != null && exceptionRules.matches(
+            new BlockedAdsRequestContext(pageUrl, host, BlockedAdsRequestContext.TYPE_DOCUMENT, true));
+    }
+    
+    /**
+     * Get the element hiding script for a page's host, or null if no cosmetic rule applies
+     */
+    public String getCosmeticScript(String host) {
+        return cosmeticFilters.scriptFor(host);
+    }
+    
+    /**
+     * Get the URL a navigation should load instead: a redirector's destination, without
+     * tracking parameters. Returns the same instance if nothing is rewritten
+     */
+    public String rewriteNavigation(String url) {
+        return urlRewriter.rewrite(url);
+    }
+    
+    /**
+     * Get the number of blocking rules
+     */
+    public int getRuleCount() {
+        return blockingRules.getRuleCount();
+    }
+    
+    /**
+     * Approximate heap used by the blocking rules
+     */
+    long getRuleHeapBytes() {
+        return blockingRules.getHeapBytes();
+    }
+    
+    /**
+     * Release matching caches under memory pressure; returns the approximate bytes released
+     */
+    long trimCaches() {
+        return blockingRules.trimCaches() + exceptionRules.trimCaches();
+    }
+    
+    /**
+     * Check if URL should be blocked, without page or type context
+     */
+    public boolean shouldBlockUrl(String url) {
+        return shouldBlock(new BlockedAdsRequestContext(url, null, BlockedAdsRequestContext.TYPE_OTHER, false));
+    }
+}
@@ -0,0 +1,185 @@
+package com.blockedads.app;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Filter List Loader
+ * Reads and compiles the bundled filter lists, then any downloaded by BlockedAdsListUpdater,
+ * on a background thread. Until it finishes, requests are matched by the built-in bootstrap
+ * rules; the compiled engine is then swapped in atomically, so the UI thread never waits on
+ * list parsing.
+ */
+public final class BlockedAdsFilterLoader {
+    
+    private static final String TAG = "BlockedAdsFilterLoader";
+    
+    /**
+     * Filter lists bundled as assets (shared with the Chrome extension)
+     */
+    static final String[] FILTER_LISTS = {
+        "blockedads-easylist.txt"
+    };
+    
+    public enum State {
+        /** Only the built-in bootstrap rules are active */
+        BOOTSTRAP,
+        /** Lists are being read and compiled in the background */
+        LOADING,
+        /** The full engine is active */
+        READY,
+        /** Loading failed; the bootstrap rules stay active */
+        FAILED
+    }
+    
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "blockedads-filter-loader");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+    
+    private static volatile State state = State.BOOTSTRAP;
+    private static Context loadContext; // Kept to load the lists again after unload()
+    
+    private BlockedAdsFilterLoader() {
+    }
+    
+    /**
+     * Get the readiness state of the shared engine
+     */
+    public static State getState() {
+        return state;
+    }
+    
+    /**
+     * Check if the full engine is active
+     */
+    public static boolean isReady() {
+        return state == State.READY;
+    }
+    
+    /**
+     * Load and compile the filter lists in the background (once per process)
+     */
+    public static synchronized void loadAsync(Context context) {
+        if (state == State.LOADING || state == State.READY) {
+            return;
+        }
+        state = State.LOADING;
+        
+        final Context appContext = context.getApplicationContext();
+        loadContext = appContext;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtime();
+                try {
+                    BlockedAdsFilterEngine engine = new BlockedAdsFilterEngine(compileLists(appContext));
+                    BlockedAdsFilterEngine.setShared(engine);
+                    state = State.READY;
+                    Log.i(TAG, "Filter lists ready in " + (SystemClock.elapsedRealtime() - start) + " ms");
+                } catch (IOException e) {
+                    state = State.FAILED;
+                    Log.w(TAG, "Failed to load filter lists, keeping bootstrap rules", e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Recompile after downloaded lists changed; the current engine serves until the new one is swapped in
+     */
+    public static synchronized void reloadAsync(Context context) {
+        if (state == State.BOOTSTRAP || state == State.FAILED) {
+            // Not loaded, or dropped under memory pressure: the next load picks the new lists up
+            loadAsync(context);
+            return;
+        }
+        // The executor is serial, so a reload queued behind a running load follows it
+        final Context appContext = context.getApplicationContext();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtime();
+                try {
+                    BlockedAdsFilterEngine engine = new BlockedAdsFilterEngine(compileLists(appContext));
+                    synchronized (BlockedAdsFilterLoader.class) {
+                        if (state == State.READY) {
+                            BlockedAdsFilterEngine.setShared(engine);
+                        }
+                    }
+                    Log.i(TAG, "Filter lists recompiled in " + (SystemClock.elapsedRealtime() - start) + " ms");
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to recompile filter lists, keeping the current engine", e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Go back to the bootstrap rules under critical memory pressure; returns the approximate
+     * heap released. The lists are compiled again by the next ensureLoaded()
+     */
+    static synchronized long unload() {
+        if (state != State.READY) {
+            return 0;
+        }
+        BlockedAdsFilterEngine full = BlockedAdsFilterEngine.getShared();
+        BlockedAdsFilterEngine bootstrap = new BlockedAdsFilterEngine();
+        BlockedAdsFilterEngine.setShared(bootstrap);
+        state = State.BOOTSTRAP;
+        return Math.max(0, full.getRuleHeapBytes() - bootstrap.getRuleHeapBytes());
+    }
+    
+    /**
+     * Load the lists again if unload() dropped them; a volatile read otherwise
+     */
+    public static void ensureLoaded() {
+        if (state == State.BOOTSTRAP) {
+            synchronized (BlockedAdsFilterLoader.class) {
+                if (state == State.BOOTSTRAP && loadContext != null) {
+                    loadAsync(loadContext);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Stream the built-in rules and every bundled list into a parallel compilation
+     */
+    private static BlockedAdsCompiledFilters compileLists(Context context) throws IOException {
+        BlockedAdsListCompiler.Session session = BlockedAdsListCompiler.newSession(ForkJoinPool.commonPool());
+        for (String rule : BlockedAdsFilterEngine.builtInRules()) {
+            session.onRule(rule);
+        }
+        File downloads = BlockedAdsListStorage.directory(context);
+        for (String list : FILTER_LISTS) {
+            if (BlockedAdsListStorage.isSuperseded(downloads, list)) {
+                continue;
+            }
+            try (InputStream in = context.getAssets().open(list)) {
+                session.addList(in);
+            }
+        }
+        for (File list : BlockedAdsListStorage.storedLists(downloads)) {
+            try (InputStream in = BlockedAdsListStorage.open(list)) {
+                session.addList(in);
+            } catch (IOException e) {
+                // A corrupt download must not cost the bundled lists
+                Log.w(TAG, "Skipping unreadable list " + list.getName(), e);
+            }
+        }
+        return session.finish();
+    }
+}
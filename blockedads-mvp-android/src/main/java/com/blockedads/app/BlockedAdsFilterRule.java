@@ -0,0 +1,300 @@
+package com.blockedads.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Network Filter Rule in EasyList / uBlock Origin syntax
+ * Supports ||host^ anchors, | anchors, * and ^ wildcards, /regex/ rules, @@ exceptions
+ * and the type, $third-party / $first-party and $domain= options
+ */
+public class BlockedAdsFilterRule {
+    
+    public static final int PARTY_FIRST = 1;
+    public static final int PARTY_THIRD = 2;
+    public static final int PARTY_ANY = PARTY_FIRST | PARTY_THIRD;
+    
+    // Rules without type options apply to everything except top-level documents
+    static final int DEFAULT_TYPES = BlockedAdsRequestContext.TYPE_ALL & ~BlockedAdsRequestContext.TYPE_DOCUMENT;
+    
+    final String source;
+    final boolean exception;
+    final String anchorHost;
+    final int typeMask;
+    final int partyMask;
+    final String[] includeDomains;
+    final String[] excludeDomains;
+    final String body;
+    final boolean matchCase;
+    final boolean regex;
+    private volatile Pattern pattern; // Compiled on first use, except for /regex/ rules
+    
+    private BlockedAdsFilterRule(String source, boolean exception, String anchorHost, int typeMask, int partyMask,
+                                 String[] includeDomains, String[] excludeDomains, String body, boolean matchCase,
+                                 Pattern pattern) {
+        this.source = source;
+        this.exception = exception;
+        this.anchorHost = anchorHost;
+        this.typeMask = typeMask;
+        this.partyMask = partyMask;
+        this.includeDomains = includeDomains;
+        this.excludeDomains = excludeDomains;
+        this.body = body;
+        this.matchCase = matchCase;
+        this.regex = pattern != null;
+        this.pattern = pattern;
+    }
+    
+    /**
+     * Parse a network filter line
+     * Returns null for comments, cosmetic rules and rules using unsupported options
+     */
+    public static BlockedAdsFilterRule parse(String line) {
+        String rule = line.trim();
+        if (rule.isEmpty() || rule.charAt(0) == '!' || rule.charAt(0) == '[' || isCosmetic(rule)) {
+            return null;
+        }
+        
+        boolean exception = rule.startsWith("@@");
+        String filter = exception ? rule.substring(2) : rule;
+        String body = filter;
+        int typeMask = DEFAULT_TYPES;
+        int partyMask = PARTY_ANY;
+        boolean matchCase = false;
+        List<String> include = new ArrayList<>();
+        List<String> exclude = new ArrayList<>();
+        
+        // A $ inside a /regex/ rule without options is part of the regex
+        int dollar = filter.lastIndexOf('$');
+        boolean bareRegex = filter.length() > 2 && filter.charAt(0) == '/' && filter.charAt(filter.length() - 1) == '/';
+        if (dollar > 0 && !bareRegex) {
+            body = filter.substring(0, dollar);
+            int includedTypes = 0;
+            int excludedTypes = 0;
+            for (String option : filter.substring(dollar + 1).split(",")) {
+                boolean negated = option.startsWith("~");
+                String name = negated ? option.substring(1) : option;
+                int type = typeForOption(name);
+                if (type != 0) {
+                    if (negated) {
+                        excludedTypes |= type;
+                    } else {
+                        includedTypes |= type;
+                    }
+                } else if (name.equals("third-party") || name.equals("3p")) {
+                    partyMask = negated ? PARTY_FIRST : PARTY_THIRD;
+                } else if (name.equals("first-party") || name.equals("1p")) {
+                    partyMask = negated ? PARTY_THIRD : PARTY_FIRST;
+                } else if (name.startsWith("domain=") && !negated) {
+                    for (String domain : name.substring(7).split("\\|")) {
+                        if (domain.startsWith("~")) {
+                            exclude.add(domain.substring(1).toLowerCase(Locale.ROOT));
+                        } else if (!domain.isEmpty()) {
+                            include.add(domain.toLowerCase(Locale.ROOT));
+                        }
+                    }
+                } else if (name.equals("match-case") && !negated) {
+                    matchCase = true;
+                } else {
+                    return null;
+                }
+            }
+            if (includedTypes != 0) {
+                typeMask = includedTypes;
+            }
+            typeMask &= ~excludedTypes;
+        }
+        
+        if (body.isEmpty() || typeMask == 0) {
+            return null;
+        }
+        
+        // ABP patterns always translate to a valid regex, so only /regex/ rules are compiled here
+        Pattern pattern = null;
+        if (body.length() > 2 && body.charAt(0) == '/' && body.charAt(body.length() - 1) == '/') {
+            try {
+                pattern = Pattern.compile(body.substring(1, body.length() - 1), matchCase ? 0 : Pattern.CASE_INSENSITIVE);
+            } catch (PatternSyntaxException e) {
+                return null;
+            }
+        }
+        
+        return new BlockedAdsFilterRule(rule, exception, anchorHost(body), typeMask, partyMask,
+            toArray(include), toArray(exclude), body, matchCase, pattern);
+    }
+    
+    /**
+     * Check the request against this rule
+     * Option bits are compared first so the pattern only runs for candidate requests
+     */
+    public boolean matches(BlockedAdsRequestContext context) {
+        if ((typeMask & context.getType()) == 0) {
+            return false;
+        }
+        if (partyMask != PARTY_ANY
+                && (partyMask == PARTY_THIRD) != context.isThirdParty()) {
+            return false;
+        }
+        if ((includeDomains != null || excludeDomains != null) && !matchesDomain(context.getDocumentHost())) {
+            return false;
+        }
+        return pattern().matcher(context.getUrl()).find();
+    }
+    
+    /**
+     * Get the rule as a regular expression (reference matcher; the engine uses BlockedAdsRuleStore)
+     */
+    Pattern pattern() {
+        Pattern compiled = pattern;
+        if (compiled == null) {
+            compiled = Pattern.compile(toRegex(body), matchCase ? 0 : Pattern.CASE_INSENSITIVE);
+            pattern = compiled;
+        }
+        return compiled;
+    }
+    
+    public String getSource() {
+        return source;
+    }
+    
+    /**
+     * Check if this is an @@ exception (allowlist) rule
+     */
+    public boolean isException() {
+        return exception;
+    }
+    
+    /**
+     * Host the rule is anchored to (||host^), or null for generic rules
+     */
+    public String getAnchorHost() {
+        return anchorHost;
+    }
+    
+    private boolean matchesDomain(String documentHost) {
+        if (documentHost == null) {
+            return includeDomains == null;
+        }
+        if (excludeDomains != null && isSubdomainOfAny(documentHost, excludeDomains)) {
+            return false;
+        }
+        return includeDomains == null || isSubdomainOfAny(documentHost, includeDomains);
+    }
+    
+    static boolean isSubdomainOfAny(String host, String[] domains) {
+        for (String domain : domains) {
+            if (isSubdomainOf(host, domain)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    static boolean isSubdomainOf(String host, String domain) {
+        return host.endsWith(domain) && (host.length() == domain.length()
+            || host.charAt(host.length() - domain.length() - 1) == '.');
+    }
+    
+    /**
+     * Convert an ABP pattern to an equivalent regular expression
+     */
+    static String toRegex(String body) {
+        StringBuilder regex = new StringBuilder(body.length() + 32);
+        int start = 0;
+        int end = body.length();
+        
+        if (body.startsWith("||")) {
+            regex.append("^[a-z][a-z0-9+.-]*://(?:[^/?#]*\\.)?");
+            start = 2;
+        } else if (body.startsWith("|")) {
+            regex.append('^');
+            start = 1;
+        }
+        boolean anchoredEnd = end > start && body.charAt(end - 1) == '|';
+        if (anchoredEnd) {
+            end--;
+        }
+        
+        for (int i = start; i < end; i++) {
+            char c = body.charAt(i);
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '^') {
+                regex.append("(?:[^a-z0-9_.%-]|$)");
+            } else if ("\\.+?()[]{}|$".indexOf(c) >= 0) {
+                regex.append('\\').append(c);
+            } else {
+                regex.append(c);
+            }
+        }
+        
+        if (anchoredEnd) {
+            regex.append('$');
+        }
+        return regex.toString();
+    }
+    
+    private static String anchorHost(String body) {
+        if (!body.startsWith("||")) {
+            return null;
+        }
+        int end = 2;
+        while (end < body.length()) {
+            char c = body.charAt(end);
+            if (!(Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_')) {
+                break;
+            }
+            end++;
+        }
+        // The host must end at a separator; ||ads*.example.com^ or ||example.co prefixes have no single anchor host
+        if (end == 2 || end == body.length() || "^/:".indexOf(body.charAt(end)) < 0 || body.charAt(end - 1) == '.') {
+            return null;
+        }
+        return body.substring(2, end).toLowerCase(Locale.ROOT);
+    }
+    
+    private static int typeForOption(String name) {
+        switch (name) {
+            case "document":
+            case "doc":
+                return BlockedAdsRequestContext.TYPE_DOCUMENT;
+            case "subdocument":
+            case "frame":
+                return BlockedAdsRequestContext.TYPE_SUBDOCUMENT;
+            case "script":
+                return BlockedAdsRequestContext.TYPE_SCRIPT;
+            case "stylesheet":
+            case "css":
+                return BlockedAdsRequestContext.TYPE_STYLESHEET;
+            case "image":
+                return BlockedAdsRequestContext.TYPE_IMAGE;
+            case "media":
+                return BlockedAdsRequestContext.TYPE_MEDIA;
+            case "font":
+                return BlockedAdsRequestContext.TYPE_FONT;
+            case "xmlhttprequest":
+            case "xhr":
+                return BlockedAdsRequestContext.TYPE_XHR;
+            case "ping":
+            case "beacon":
+                return BlockedAdsRequestContext.TYPE_PING;
+            case "object":
+                return BlockedAdsRequestContext.TYPE_OBJECT;
+            case "other":
+                return BlockedAdsRequestContext.TYPE_OTHER;
+            default:
+                return 0;
+        }
+    }
+    
+    static boolean isCosmetic(String rule) {
+        return rule.contains("##") || rule.contains("#@#") || rule.contains("#?#") || rule.contains("#$#");
+    }
+    
+    private static String[] toArray(List<String> list) {
+        return list.isEmpty() ? null : list.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,96 @@
+package com.blockedads.app;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming JSON Member Stripper
+ * Removes object members with the given keys, values included, while the JSON streams
+ * through: each read tokenizes one upstream chunk and holds back at most a short key, so a
+ * response is never buffered whole. Text around the top-level value (the )]}' prefix of
+ * YouTube responses) passes through. After maxStripped members, or on input it does not
+ * understand, the rest of the stream is copied unchanged.
+ */
+final class BlockedAdsJsonKeyStripper extends FilterInputStream {
+    
+    private static final int CHUNK_SIZE = 8 * 1024;
+    
+    private final BlockedAdsByteQueue output = new BlockedAdsByteQueue(CHUNK_SIZE + 64);
+    private final BlockedAdsJsonTokenizer tokenizer;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private final byte[] single = new byte[1];
+    
+    BlockedAdsJsonKeyStripper(InputStream in, int maxStripped, String... keys) {
+        super(in);
+        tokenizer = new BlockedAdsJsonTokenizer(output, maxStripped, keys);
+    }
+    
+    /**
+     * Number of members removed so far
+     */
+    int getStrippedCount() {
+        return tokenizer.getStrippedCount();
+    }
+    
+    @Override
+    public int read() throws IOException {
+        int read = read(single, 0, 1);
+        return read < 0 ? -1 : single[0] & 0xff;
+    }
+    
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (output.size() == 0) {
+            if (tokenizer.isPassThrough()) {
+                return in.read(buffer, offset, length);
+            }
+            int read = in.read(chunk, 0, chunk.length);
+            if (read < 0) {
+                tokenizer.finish();
+                if (output.size() == 0) {
+                    return -1;
+                }
+                break;
+            }
+            tokenizer.feed(chunk, 0, read);
+        }
+        return output.drain(buffer, offset, length);
+    }
+    
+    @Override
+    public int available() throws IOException {
+        return output.size();
+    }
+    
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] discard = new byte[(int) Math.max(1, Math.min(CHUNK_SIZE, n))];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(discard, 0, (int) Math.min(discard.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+    
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+    
+    @Override
+    public synchronized void mark(int readLimit) {
+    }
+    
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
@@ -0,0 +1,147 @@
+package com.blockedads.app;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON Parser
+ * Objects, arrays, strings, numbers, booleans and null, for reading HAR captures on a plain
+ * JVM; objects keep their key order and numbers are read as doubles.
+ */
+final class BlockedAdsJsonParser {
+    
+    private final CharSequence text;
+    private int pos;
+    
+    BlockedAdsJsonParser(CharSequence text) {
+        this.text = text;
+    }
+    
+    @SuppressWarnings("unchecked")
+    Map<String, Object> object() throws IOException {
+        Object value = value();
+        if (!(value instanceof Map)) {
+            throw new IOException("Expected a JSON object");
+        }
+        return (Map<String, Object>) value;
+    }
+    
+    private Object value() throws IOException {
+        skipWhitespace();
+        if (pos >= text.length()) {
+            throw new IOException("Unexpected end of JSON");
+        }
+        char c = text.charAt(pos);
+        if (c == '{') {
+            Map<String, Object> map = new LinkedHashMap<>();
+            pos++;
+            if (!consume('}')) {
+                do {
+                    skipWhitespace();
+                    String key = string();
+                    expect(':');
+                    map.put(key, value());
+                } while (consume(','));
+                expect('}');
+            }
+            return map;
+        }
+        if (c == '[') {
+            List<Object> list = new ArrayList<>();
+            pos++;
+            if (!consume(']')) {
+                do {
+                    list.add(value());
+                } while (consume(','));
+                expect(']');
+            }
+            return list;
+        }
+        if (c == '"') {
+            return string();
+        }
+        int start = pos;
+        while (pos < text.length() && ",}] \t\r\n".indexOf(text.charAt(pos)) < 0) {
+            pos++;
+        }
+        String literal = text.subSequence(start, pos).toString();
+        switch (literal) {
+            case "true":
+                return Boolean.TRUE;
+            case "false":
+                return Boolean.FALSE;
+            case "null":
+                return null;
+            default:
+                try {
+                    return Double.parseDouble(literal);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Bad JSON literal at " + start + ": " + literal);
+                }
+        }
+    }
+    
+    private String string() throws IOException {
+        expect('"');
+        StringBuilder out = new StringBuilder();
+        while (pos < text.length()) {
+            char c = text.charAt(pos++);
+            if (c == '"') {
+                return out.toString();
+            }
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            char escaped = text.charAt(pos++);
+            switch (escaped) {
+                case 'n':
+                    out.append('\n');
+                    break;
+                case 't':
+                    out.append('\t');
+                    break;
+                case 'r':
+                    out.append('\r');
+                    break;
+                case 'b':
+                    out.append('\b');
+                    break;
+                case 'f':
+                    out.append('\f');
+                    break;
+                case 'u':
+                    out.append((char) Integer.parseInt(text.subSequence(pos, pos + 4).toString(), 16));
+                    pos += 4;
+                    break;
+                default:
+                    out.append(escaped);
+            }
+        }
+        throw new IOException("Unterminated JSON string");
+    }
+    
+    private boolean consume(char c) {
+        skipWhitespace();
+        if (pos < text.length() && text.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+    
+    private void expect(char c) throws IOException {
+        if (!consume(c)) {
+            throw new IOException("Expected '" + c + "' at " + pos);
+        }
+    }
+    
+    private void skipWhitespace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.blockedads.app;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * JSON Member Stripping Tokenizer
+ * The state machine behind BlockedAdsJsonKeyStripper: fed the JSON a chunk at a time, it
+ * writes everything but the stripped members to the stripper's output queue, holding back at most a
+ * short key. Once it passes through, fed bytes are copied unchanged.
+ */
+final class BlockedAdsJsonTokenizer {
+    
+    private static final int MAX_DEPTH = 256;
+    
+    // Position within the current object or array
+    private static final int VALUE = 0; // Before a value: top level, array element or member value
+    private static final int KEY = 1; // Before a member key or the closing brace
+    private static final int COLON = 2; // After a member key
+    private static final int AFTER_VALUE = 3; // Before a comma or the closing bracket
+    
+    private final byte[][] keys;
+    private final int maxStripped;
+    private final BlockedAdsByteQueue out;
+    
+    private int state = VALUE;
+    private final boolean[] inObject = new boolean[MAX_DEPTH];
+    private final boolean[] hasMembers = new boolean[MAX_DEPTH]; // A member of the object at this depth was written
+    private int depth;
+    private boolean inString;
+    private boolean stringIsKey; // A long key being copied as it arrives
+    private boolean escaped;
+    private boolean passThrough;
+    
+    // A member key is held back until it is known to be kept
+    private final byte[] key;
+    private int keyLength;
+    private boolean readingKey;
+    
+    // Skipping the value of a stripped member
+    private final BlockedAdsJsonValueSkipper skipper = new BlockedAdsJsonValueSkipper();
+    private boolean skipping;
+    private int stripped;
+    
+    BlockedAdsJsonTokenizer(BlockedAdsByteQueue out, int maxStripped, String... keys) {
+        this.keys = new byte[keys.length][];
+        int longest = 0;
+        for (int i = 0; i < keys.length; i++) {
+            this.keys[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+            longest = Math.max(longest, this.keys[i].length);
+        }
+        this.key = new byte[longest + 1];
+        this.maxStripped = maxStripped;
+        this.out = out;
+    }
+    
+    /**
+     * Number of members removed so far
+     */
+    int getStrippedCount() {
+        return stripped;
+    }
+    
+    /**
+     * Check if the rest of the input is copied unchanged
+     */
+    boolean isPassThrough() {
+        return passThrough;
+    }
+    
+    /**
+     * Tokenize a chunk of input, appending what is kept to the output
+     */
+    void feed(byte[] chunk, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (passThrough) {
+                out.write(chunk, i, offset + length - i);
+                return;
+            }
+            process(chunk[i]);
+        }
+    }
+    
+    /**
+     * End of input: write out a key still held back, since the input was truncated
+     */
+    void finish() {
+        if (readingKey) {
+            flushKey();
+        }
+    }
+    
+    private void process(byte b) {
+        if (skipping) {
+            int skipped = skipper.skip(b);
+            if (skipped != BlockedAdsJsonValueSkipper.MORE) {
+                skipping = false;
+                state = AFTER_VALUE;
+                if (skipped == BlockedAdsJsonValueSkipper.DONE_BEFORE) {
+                    process(b); // The comma or bracket after a number or literal
+                }
+            }
+            return;
+        }
+        if (readingKey) {
+            readKey(b);
+            return;
+        }
+        if (inString) {
+            out.write(b);
+            if (escaped) {
+                escaped = false;
+            } else if (b == '\\') {
+                escaped = true;
+            } else if (b == '"') {
+                inString = false;
+                state = stringIsKey ? COLON : AFTER_VALUE;
+            }
+            return;
+        }
+        if (isWhitespace(b)) {
+            out.write(b);
+            return;
+        }
+        
+        switch (state) {
+            case KEY:
+                if (b == '"') {
+                    readingKey = true;
+                    keyLength = 0;
+                    escaped = false;
+                    return;
+                }
+                if (b == '}') {
+                    close(b);
+                    return;
+                }
+                break;
+            case COLON:
+                if (b == ':') {
+                    out.write(b);
+                    state = VALUE;
+                    return;
+                }
+                break;
+            case AFTER_VALUE:
+                if (isLiteral(b)) {
+                    out.write(b); // The rest of a number or literal
+                    return;
+                }
+                if (b == ',' && depth > 0) {
+                    if (stripped >= maxStripped) {
+                        // Nothing left to strip; a comma is only needed after a written member
+                        if (!inObject[depth - 1] || hasMembers[depth - 1]) {
+                            out.write(b);
+                        }
+                        passThrough = true;
+                    } else if (inObject[depth - 1]) {
+                        state = KEY; // Written before the next kept member
+                    } else {
+                        out.write(b);
+                        state = VALUE;
+                    }
+                    return;
+                }
+                if (depth > 0 && b == (inObject[depth - 1] ? '}' : ']')) {
+                    close(b);
+                    return;
+                }
+                break;
+            default:
+                if (b == '{' || b == '[') {
+                    out.write(b);
+                    if (depth == MAX_DEPTH) {
+                        passThrough = true;
+                        return;
+                    }
+                    inObject[depth] = b == '{';
+                    hasMembers[depth] = false;
+                    depth++;
+                    state = b == '{' ? KEY : VALUE;
+                    return;
+                }
+                if (depth == 0) {
+                    out.write(b); // Text before the top-level value
+                    return;
+                }
+                if (b == ']' && !inObject[depth - 1]) {
+                    close(b); // Empty array
+                    return;
+                }
+                if (b == '"') {
+                    out.write(b);
+                    inString = true;
+                    stringIsKey = false;
+                    return;
+                }
+                if (isLiteral(b)) {
+                    out.write(b);
+                    state = AFTER_VALUE;
+                    return;
+                }
+                break;
+        }
+        
+        // Not the JSON expected here; copy the rest as is
+        out.write(b);
+        passThrough = true;
+    }
+    
+    private void close(byte b) {
+        out.write(b);
+        depth--;
+        state = AFTER_VALUE;
+        if (depth == 0 || stripped >= maxStripped) {
+            // Past the top-level value, or nothing left to strip with this object's commas settled
+            passThrough = true;
+        }
+    }
+    
+    /**
+     * Collect a member key; one longer than every stripped key is written out and copied on
+     */
+    private void readKey(byte b) {
+        if (b == '"' && !escaped) {
+            readingKey = false;
+            state = COLON;
+            if (isStripped()) {
+                stripped++;
+                skipping = true;
+                skipper.start();
+                return;
+            }
+            flushKey();
+            out.write(b);
+            return;
+        }
+        escaped = !escaped && b == '\\';
+        key[keyLength++] = b;
+        if (keyLength == key.length) {
+            flushKey();
+            readingKey = false;
+            inString = true;
+            stringIsKey = true;
+        }
+    }
+    
+    private boolean isStripped() {
+        if (stripped >= maxStripped) {
+            return false;
+        }
+        for (byte[] candidate : keys) {
+            if (candidate.length == keyLength && Arrays.equals(candidate, Arrays.copyOf(key, keyLength))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Write a held-back key, after the comma separating it from the previous written member
+     */
+    private void flushKey() {
+        if (hasMembers[depth - 1]) {
+            out.write((byte) ',');
+        }
+        hasMembers[depth - 1] = true;
+        out.write((byte) '"');
+        out.write(key, 0, keyLength);
+        keyLength = 0;
+    }
+    
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+    
+    private static boolean isLiteral(byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'z') || b == '-' || b == '+' || b == '.' || b == 'E';
+    }
+}
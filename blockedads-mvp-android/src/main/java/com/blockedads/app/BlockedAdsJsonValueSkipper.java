@@ -0,0 +1,64 @@
+package com.blockedads.app;
+
+/**
+ * JSON Value Skipper
+ * Drops the colon and value of a member BlockedAdsJsonTokenizer strips, a byte at a time,
+ * tracking strings and nesting to find where the value ends
+ */
+final class BlockedAdsJsonValueSkipper {
+    
+    static final int MORE = 0; // Still inside the value
+    static final int DONE = 1; // The byte ended the value
+    static final int DONE_BEFORE = 2; // The value ended before the byte, which is not skipped
+    
+    private boolean started;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    
+    /**
+     * Start skipping after a member key's closing quote
+     */
+    void start() {
+        started = false;
+        depth = 0;
+        inString = false;
+        escaped = false;
+    }
+    
+    int skip(byte b) {
+        if (inString) {
+            if (escaped) {
+                escaped = false;
+            } else if (b == '\\') {
+                escaped = true;
+            } else if (b == '"') {
+                inString = false;
+                if (depth == 0) {
+                    return DONE;
+                }
+            }
+            return MORE;
+        }
+        if (!started) {
+            if (b == ':' || BlockedAdsJsonTokenizer.isWhitespace(b)) {
+                return MORE;
+            }
+            started = true;
+        }
+        if (b == '"') {
+            inString = true;
+            escaped = false;
+        } else if (b == '{' || b == '[') {
+            depth++;
+        } else if (b == '}' || b == ']' || b == ',') {
+            if (depth == 0) {
+                return DONE_BEFORE; // The end of a number or literal value
+            }
+            if (b != ',' && --depth == 0) {
+                return DONE;
+            }
+        }
+        return MORE;
+    }
+}
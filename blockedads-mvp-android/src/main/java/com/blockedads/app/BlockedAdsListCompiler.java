@@ -0,0 +1,149 @@
+package com.blockedads.app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Filter List Compiler
+ * Splits list lines into chunks and parses/classifies them on a fork-join pool. Chunk
+ * results are merged in list order, so the compiled index is identical to a
+ * single-threaded build. Sessions compile streamed lists with only a few chunks in flight.
+ */
+public final class BlockedAdsListCompiler {
+
+    // Large enough that task overhead is negligible next to parsing and classifying the lines
+    static final int CHUNK_SIZE = 2048;
+
+    private BlockedAdsListCompiler() {
+    }
+
+    /**
+     * Compile on the calling thread
+     */
+    public static BlockedAdsCompiledFilters compile(List<String> lines) {
+        return new CompileTask(lines, 0, lines.size()).parseRange().build();
+    }
+
+    /**
+     * Compile in parallel on the given pool
+     */
+    public static BlockedAdsCompiledFilters compile(List<String> lines, ForkJoinPool pool) {
+        if (lines.size() <= CHUNK_SIZE) {
+            return compile(lines);
+        }
+        return pool.invoke(new CompileTask(lines, 0, lines.size())).build();
+    }
+
+    /**
+     * Start a streaming compilation; a null pool compiles on the calling thread
+     */
+    public static Session newSession(ForkJoinPool pool) {
+        return new Session(pool);
+    }
+
+    /**
+     * Streaming compilation: rules are fed in list order and compiled a chunk at a time
+     */
+    public static final class Session implements BlockedAdsRuleParser.RuleSink {
+
+        private final ForkJoinPool pool;
+        private final int maxInFlight;
+        private final ArrayDeque<ForkJoinTask<BlockedAdsCompiledFilters.Builder>> inFlight = new ArrayDeque<>();
+        private final BlockedAdsCompiledFilters.Builder result = new BlockedAdsCompiledFilters.Builder();
+        private List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+
+        private Session(ForkJoinPool pool) {
+            this.pool = pool;
+            this.maxInFlight = pool != null ? 2 * pool.getParallelism() : 0;
+        }
+
+        @Override
+        public void onRule(String line) {
+            chunk.add(line);
+            if (chunk.size() == CHUNK_SIZE) {
+                flushChunk();
+            }
+        }
+
+        /**
+         * Stream a whole list into the session
+         */
+        public void addList(InputStream in) throws IOException {
+            BlockedAdsRuleParser.parse(in, this);
+        }
+
+        /**
+         * Wait for all chunks and build the index
+         */
+        public BlockedAdsCompiledFilters finish() {
+            flushChunk();
+            while (!inFlight.isEmpty()) {
+                result.append(inFlight.poll().join());
+            }
+            return result.build();
+        }
+
+        private void flushChunk() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            CompileTask task = new CompileTask(chunk, 0, chunk.size());
+            chunk = new ArrayList<>(CHUNK_SIZE);
+
+            if (pool == null) {
+                result.append(task.parseRange());
+                return;
+            }
+
+            // Bound the lines held in memory: merge the oldest chunk before queueing more
+            inFlight.add(pool.submit(task));
+            while (inFlight.size() > maxInFlight) {
+                result.append(inFlight.poll().join());
+            }
+        }
+    }
+
+    private static final class CompileTask extends RecursiveTask<BlockedAdsCompiledFilters.Builder> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> lines;
+        private final int from;
+        private final int to;
+
+        CompileTask(List<String> lines, int from, int to) {
+            this.lines = lines;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected BlockedAdsCompiledFilters.Builder compute() {
+            if (to - from <= CHUNK_SIZE) {
+                return parseRange();
+            }
+
+            int middle = (from + to) >>> 1;
+            CompileTask left = new CompileTask(lines, from, middle);
+            CompileTask right = new CompileTask(lines, middle, to);
+            left.fork();
+            BlockedAdsCompiledFilters.Builder rightResult = right.compute();
+            // Left chunk first keeps list order regardless of which task finished first
+            return left.join().append(rightResult);
+        }
+
+        BlockedAdsCompiledFilters.Builder parseRange() {
+            BlockedAdsCompiledFilters.Builder builder = new BlockedAdsCompiledFilters.Builder();
+            for (int i = from; i < to; i++) {
+                builder.add(lines.get(i));
+            }
+            return builder;
+        }
+    }
+}
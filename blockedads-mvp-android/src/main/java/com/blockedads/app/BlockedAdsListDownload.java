@@ -0,0 +1,92 @@
+package com.blockedads.app;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Filter List Download
+ * A response body BlockedAdsListUpdater received in full: stored gzip-compressed in a
+ * temporary file while its decompressed content is hashed, for the updater to rename over
+ * the stored list if it changed.
+ */
+final class BlockedAdsListDownload {
+    
+    final String sha256;
+    final long bytesReceived; // Body bytes as received, before decompression
+    
+    private BlockedAdsListDownload(String sha256, long bytesReceived) {
+        this.sha256 = sha256;
+        this.bytesReceived = bytesReceived;
+    }
+    
+    /**
+     * Read a 200 response's body into temp; throws IOException if it arrived truncated
+     */
+    static BlockedAdsListDownload save(HttpURLConnection connection, File temp) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        CountingInputStream received = new CountingInputStream(connection.getInputStream());
+        InputStream body = "gzip".equalsIgnoreCase(connection.getContentEncoding())
+            ? new GZIPInputStream(received) : received;
+        // A truncated gzip body fails in GZIPInputStream; a truncated plain one by its length
+        try (InputStream in = new DigestInputStream(body, digest);
+             OutputStream out = new GZIPOutputStream(new FileOutputStream(temp))) {
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        long expected = connection.getContentLengthLong();
+        if (expected >= 0 && received.count != expected) {
+            throw new IOException("Truncated: " + received.count + " of " + expected + " bytes");
+        }
+        return new BlockedAdsListDownload(toHex(digest.digest()), received.count);
+    }
+    
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+    
+    /**
+     * Counts the bytes read off the network
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+        
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.blockedads.app;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Downloaded Filter List Storage
+ * BlockedAdsListUpdater's files: each subscription is stored as name.gz next to name.meta,
+ * which holds its validators and SHA-256. Both are written to a temporary file and renamed
+ * into place, so a reader sees either the old or the new copy.
+ */
+final class BlockedAdsListStorage {
+    
+    private static final String TAG = "BlockedAdsListStorage";
+    static final String DIRECTORY_NAME = "filter-lists";
+    static final int MIN_RULES = 100; // Fewer parsable rules: an error page or a truncated list
+    
+    private BlockedAdsListStorage() {
+    }
+    
+    static File directory(Context context) {
+        return new File(context.getFilesDir(), DIRECTORY_NAME);
+    }
+    
+    /**
+     * Stored lists of a directory, in subscription order, for compilation
+     */
+    static List<File> storedLists(File directory) {
+        List<File> lists = new ArrayList<>();
+        for (String[] subscription : BlockedAdsListUpdater.SUBSCRIPTIONS) {
+            File list = new File(directory, subscription[0] + ".gz");
+            if (list.isFile()) {
+                lists.add(list);
+            }
+        }
+        return lists;
+    }
+    
+    /**
+     * Check if a bundled list has a downloaded copy in the directory, so only the newer is compiled
+     */
+    static boolean isSuperseded(File directory, String asset) {
+        for (String[] subscription : BlockedAdsListUpdater.SUBSCRIPTIONS) {
+            if (asset.equals(subscription[2])) {
+                return new File(directory, subscription[0] + ".gz").isFile();
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Open a stored list, decompressing it
+     */
+    static InputStream open(File list) throws IOException {
+        return new GZIPInputStream(new FileInputStream(list), 16 * 1024);
+    }
+    
+    /**
+     * Check that a stored list reads as a filter list: an [Adblock header first, then at least
+     * MIN_RULES rules the engine parses (a captive portal's HTML page has neither)
+     */
+    static boolean isFilterList(File list) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(open(list), StandardCharsets.UTF_8))) {
+            String line;
+            boolean header = false;
+            int rules = 0;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (!header) {
+                    if (!line.regionMatches(true, 0, "[Adblock", 0, 8)) {
+                        return false;
+                    }
+                    header = true;
+                } else if (BlockedAdsFilterRule.isCosmetic(line) || BlockedAdsFilterRule.parse(line) != null) {
+                    rules++;
+                }
+            }
+            return rules >= MIN_RULES;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    static Properties readMeta(File metaFile) {
+        Properties meta = new Properties();
+        if (metaFile != null && metaFile.isFile()) {
+            try (InputStream in = new FileInputStream(metaFile)) {
+                meta.load(in);
+            } catch (IOException e) {
+                Log.w(TAG, "Unreadable " + metaFile + ", fetching unconditionally", e);
+                meta.clear();
+            }
+        }
+        return meta;
+    }
+    
+    /**
+     * Write to a temporary file and rename it, so a crash never pairs a list with stale validators
+     */
+    static void writeMeta(File metaFile, Properties meta) throws IOException {
+        File temp = new File(metaFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            meta.store(out, null);
+        }
+        if (!temp.renameTo(metaFile)) {
+            throw new IOException("Failed to replace " + metaFile);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.blockedads.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Filter List Updater
+ * Downloads the subscribed lists in parallel with conditional requests (If-None-Match /
+ * If-Modified-Since), so an unchanged list costs one 304 and no body. Lists are stored
+ * gzip-compressed next to their validators and a SHA-256 of the content; the engine is
+ * recompiled only when some list's content actually changed. A download replaces the
+ * stored list only if it arrived complete and reads as a filter list, since a stored list
+ * supersedes the bundled one. BlockedAdsListStorage keeps the downloaded lists, which
+ * BlockedAdsFilterLoader compiles after the bundled ones.
+ */
+public final class BlockedAdsListUpdater {
+    
+    private static final String TAG = "BlockedAdsListUpdater";
+    private static final String PREFS_NAME = "BlockedAdsSettings";
+    private static final String KEY_LAST_CHECK = "lists_last_check";
+    
+    /**
+     * Subscribed lists: stored file name, download URL and the bundled asset a download supersedes
+     */
+    static final String[][] SUBSCRIPTIONS = {
+        {"easylist.txt", "https://easylist.to/easylist/easylist.txt", "blockedads-easylist.txt"},
+        {"easyprivacy.txt", "https://easylist.to/easylist/easyprivacy.txt", null}
+    };
+    
+    static final long UPDATE_INTERVAL_MS = 24 * 60 * 60 * 1000L;
+    private static final int MAX_PARALLEL_FETCHES = 4;
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    
+    public enum Status {
+        /** The server answered 304, or sent the content already stored */
+        UNCHANGED,
+        /** New content was stored */
+        UPDATED,
+        /** The fetch failed; the stored copy, if any, is kept */
+        FAILED
+    }
+    
+    /**
+     * Outcome of one list's fetch
+     */
+    public static final class Result {
+        final String name;
+        final Status status;
+        final long bytesDownloaded; // Body bytes as received, before decompression
+        
+        Result(String name, Status status, long bytesDownloaded) {
+            this.name = name;
+            this.status = status;
+            this.bytesDownloaded = bytesDownloaded;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public Status getStatus() {
+            return status;
+        }
+        
+        public long getBytesDownloaded() {
+            return bytesDownloaded;
+        }
+    }
+    
+    private final File directory;
+    private final Map<String, String> subscriptions;
+    
+    BlockedAdsListUpdater(File directory, Map<String, String> subscriptions) {
+        this.directory = directory;
+        this.subscriptions = subscriptions;
+    }
+    
+    /**
+     * Check the subscriptions in the background if the last successful check is older than
+     * a day; the engine is recompiled only if a list changed. A failed check is retried on
+     * the next start
+     */
+    public static void updateIfStale(Context context) {
+        final Context appContext = context.getApplicationContext();
+        final SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        final long now = System.currentTimeMillis();
+        if (now - prefs.getLong(KEY_LAST_CHECK, 0) < UPDATE_INTERVAL_MS) {
+            return;
+        }
+        
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                BlockedAdsListUpdater updater = new BlockedAdsListUpdater(BlockedAdsListStorage.directory(appContext), subscriptions());
+                ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_PARALLEL_FETCHES, SUBSCRIPTIONS.length));
+                try {
+                    List<Result> results = updater.update(executor);
+                    if (updater.isComplete(results)) {
+                        prefs.edit().putLong(KEY_LAST_CHECK, now).apply();
+                    }
+                    if (hasUpdates(results)) {
+                        BlockedAdsFilterLoader.reloadAsync(appContext);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    executor.shutdown();
+                }
+            }
+        }, "blockedads-list-updater");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+    
+    static Map<String, String> subscriptions() {
+        Map<String, String> subscriptions = new LinkedHashMap<>();
+        for (String[] subscription : SUBSCRIPTIONS) {
+            subscriptions.put(subscription[0], subscription[1]);
+        }
+        return subscriptions;
+    }
+    
+    /**
+     * Check if every subscription was checked: updated, or confirmed unchanged
+     */
+    boolean isComplete(List<Result> results) {
+        if (results.size() != subscriptions.size()) {
+            return false;
+        }
+        for (Result result : results) {
+            if (result.status == Status.FAILED) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    static boolean hasUpdates(List<Result> results) {
+        for (Result result : results) {
+            if (result.status == Status.UPDATED) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Fetch every subscription, up to the executor's parallelism at once, and wait for all
+     */
+    List<Result> update(ExecutorService executor) throws InterruptedException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Cannot create " + directory);
+            return Collections.emptyList();
+        }
+        List<Callable<Result>> fetches = new ArrayList<>();
+        for (final Map.Entry<String, String> subscription : subscriptions.entrySet()) {
+            fetches.add(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return fetch(subscription.getKey(), subscription.getValue());
+                }
+            });
+        }
+        List<Result> results = new ArrayList<>();
+        for (Future<Result> future : executor.invokeAll(fetches)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                Log.w(TAG, "List fetch failed", e.getCause());
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Fetch one list conditionally and store it if its content changed
+     */
+    Result fetch(String name, String url) {
+        File list = new File(directory, name + ".gz");
+        File metaFile = new File(directory, name + ".meta");
+        Properties meta = BlockedAdsListStorage.readMeta(list.isFile() ? metaFile : null);
+        
+        HttpURLConnection connection = null;
+        File temp = new File(directory, name + ".gz.tmp");
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            // Asked for explicitly, so the body arrives compressed and is inflated here
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            String etag = meta.getProperty("etag");
+            if (etag != null) {
+                connection.setRequestProperty("If-None-Match", etag);
+            }
+            String lastModified = meta.getProperty("last-modified");
+            if (lastModified != null) {
+                connection.setRequestProperty("If-Modified-Since", lastModified);
+            }
+            
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return new Result(name, Status.UNCHANGED, 0);
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                Log.w(TAG, name + ": HTTP " + status);
+                return new Result(name, Status.FAILED, 0);
+            }
+            
+            BlockedAdsListDownload download = BlockedAdsListDownload.save(connection, temp);
+            
+            Properties updated = new Properties();
+            setIfPresent(updated, "etag", connection.getHeaderField("ETag"));
+            setIfPresent(updated, "last-modified", connection.getHeaderField("Last-Modified"));
+            updated.setProperty("sha256", download.sha256);
+            
+            boolean changed = !download.sha256.equals(meta.getProperty("sha256"));
+            if (changed && !BlockedAdsListStorage.isFilterList(temp)) {
+                Log.w(TAG, name + ": download is not a filter list, keeping the stored copy");
+                return new Result(name, Status.FAILED, download.bytesReceived);
+            }
+            if (changed && !temp.renameTo(list)) {
+                throw new IOException("Failed to replace " + list);
+            }
+            BlockedAdsListStorage.writeMeta(metaFile, updated);
+            return new Result(name, changed ? Status.UPDATED : Status.UNCHANGED, download.bytesReceived);
+        } catch (IOException | NoSuchAlgorithmException | RuntimeException e) {
+            Log.w(TAG, name + ": update failed", e);
+            return new Result(name, Status.FAILED, 0);
+        } finally {
+            temp.delete();
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+    
+    private static void setIfPresent(Properties properties, String key, String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        }
+    }
+}
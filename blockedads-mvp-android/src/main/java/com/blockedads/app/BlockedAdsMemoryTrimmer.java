@@ -0,0 +1,128 @@
+package com.blockedads.app;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.os.Debug;
+import android.util.Log;
+import android.view.View;
+import android.webkit.WebView;
+
+/**
+ * Memory Pressure Trimming
+ * Sheds memory in tiers as onTrimMemory() levels rise, cheapest to rebuild first, so
+ * low-end devices reclaim our caches before they kill the process. Each tier logs and
+ * accumulates the bytes it released; WebView memory is native, so that tier reports the
+ * change in the native heap. Registered once by the Application; callbacks arrive on the
+ * main thread.
+ */
+public final class BlockedAdsMemoryTrimmer implements ComponentCallbacks2 {
+    
+    private static final String TAG = "BlockedAdsMemoryTrimmer";
+    
+    public enum Tier {
+        /** Regex DFA states, rebuilt as requests are matched */
+        CACHES,
+        /** Surrogate scripts and the procedural filter runtime, reloaded when a browser opens */
+        PAYLOADS,
+        /** The warm pooled WebView, and timers of WebViews that are not on screen */
+        WEBVIEWS,
+        /** The compiled lists: the bootstrap rules serve until the next page load reloads them */
+        ENGINE
+    }
+    
+    private static final long[] freedBytes = new long[Tier.values().length];
+    
+    /**
+     * Get the highest tier to shed at an onTrimMemory() level, or null for none
+     * In the background the process is a kill candidate, so tiers follow the LRU position
+     */
+    static Tier tierFor(int level) {
+        if (level >= TRIM_MEMORY_COMPLETE) {
+            return Tier.ENGINE;
+        }
+        if (level >= TRIM_MEMORY_MODERATE) {
+            return Tier.WEBVIEWS;
+        }
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            return Tier.PAYLOADS;
+        }
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            return Tier.CACHES;
+        }
+        // Running levels: the app is in use, so the engine always stays
+        if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            return Tier.WEBVIEWS;
+        }
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            return Tier.PAYLOADS;
+        }
+        if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            return Tier.CACHES;
+        }
+        return null;
+    }
+    
+    /**
+     * Get the bytes a tier has released since the process started
+     */
+    public static synchronized long getFreedBytes(Tier tier) {
+        return freedBytes[tier.ordinal()];
+    }
+    
+    @Override
+    public void onTrimMemory(int level) {
+        Tier highest = tierFor(level);
+        if (highest != null) {
+            trim(highest, level);
+        }
+    }
+    
+    @Override
+    public void onLowMemory() {
+        // Can arrive while a page is in use, so short of dropping the engine
+        trim(Tier.WEBVIEWS, TRIM_MEMORY_RUNNING_CRITICAL);
+    }
+    
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+    
+    /**
+     * Shed every tier up to and including the given one (main thread)
+     */
+    static void trim(Tier highest, int level) {
+        StringBuilder report = new StringBuilder("Trim level ").append(level).append(':');
+        for (Tier tier : Tier.values()) {
+            if (tier.ordinal() > highest.ordinal()) {
+                break;
+            }
+            long bytes = shed(tier);
+            synchronized (BlockedAdsMemoryTrimmer.class) {
+                freedBytes[tier.ordinal()] += bytes;
+            }
+            report.append(' ').append(tier.name()).append('=').append(bytes);
+        }
+        Log.i(TAG, report.append(" bytes").toString());
+    }
+    
+    private static long shed(Tier tier) {
+        switch (tier) {
+            case CACHES:
+                return BlockedAdsFilterEngine.getShared().trimCaches();
+            case PAYLOADS:
+                return BlockedAdsSurrogates.release() + BlockedAdsProceduralRuntime.release();
+            case WEBVIEWS: {
+                long before = Debug.getNativeHeapAllocatedSize();
+                BlockedAdsWebViewPool.release();
+                for (WebView webView : BlockedAdsBlockingState.getAttachedWebViews()) {
+                    if (webView.getWindowVisibility() != View.VISIBLE) {
+                        webView.onPause(); // Resumed by its activity's onResume()
+                    }
+                }
+                return Math.max(0, before - Debug.getNativeHeapAllocatedSize());
+            }
+            default:
+                return BlockedAdsFilterLoader.unload();
+        }
+    }
+}
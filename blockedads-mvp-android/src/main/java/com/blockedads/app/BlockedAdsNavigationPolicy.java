@@ -0,0 +1,128 @@
+package com.blockedads.app;
+
+import android.content.ActivityNotFoundException;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import java.net.URISyntaxException;
+
+/**
+ * Navigation Policy for top-level page loads
+ * Decides once per navigation whether the WebView should continue, cancel, or hand off
+ * the URL, so allowed navigations are never cancelled and re-issued with loadUrl(); only
+ * navigations whose URL is rewritten (click-tracker redirectors, tracking parameters) are
+ */
+public class BlockedAdsNavigationPolicy {
+    
+    public enum Decision {
+        /** Let the WebView continue its own navigation */
+        ALLOW,
+        /** Cancel the navigation (ad click-through or ad redirect hop) */
+        BLOCK,
+        /** Hand the URL to another app (intent:, market:, mailto:, tel:, ...) */
+        OPEN_EXTERNALLY,
+        /** Cancel the navigation and load getRewrittenUrl() instead */
+        REWRITE
+    }
+    
+    private final BlockedAdsFilterEngine filterEngine; // null: follow the shared engine
+    private String rewrittenUrl; // Last URL loaded by REWRITE
+    
+    public BlockedAdsNavigationPolicy() {
+        this(null);
+    }
+    
+    public BlockedAdsNavigationPolicy(BlockedAdsFilterEngine filterEngine) {
+        this.filterEngine = filterEngine;
+    }
+    
+    /**
+     * Decide what to do with a navigation
+     * Sub-frame navigations are always allowed here; their requests go through shouldInterceptRequest
+     */
+    public Decision decide(String url, boolean isForMainFrame) {
+        return decide(url, isForMainFrame, false);
+    }
+    
+    /**
+     * Decide what to do with a navigation, knowing if it is a server redirect
+     */
+    public Decision decide(String url, boolean isForMainFrame, boolean isRedirect) {
+        if (url == null || url.isEmpty() || !isForMainFrame) {
+            return Decision.ALLOW;
+        }
+        
+        if (!isWebUrl(url)) {
+            return isInternalScheme(url) ? Decision.ALLOW : Decision.OPEN_EXTERNALLY;
+        }
+        
+        if (!BlockedAdsBlockingState.isEnabled()) {
+            return Decision.ALLOW;
+        }
+        
+        // Ad click-throughs (googleadservices.com/pagead/aclk, doubleclick.net/...) and redirect hops
+        BlockedAdsFilterEngine engine = filterEngine != null ? filterEngine : BlockedAdsFilterEngine.getShared();
+        if (engine.shouldBlockUrl(url)) {
+            return Decision.BLOCK;
+        }
+        
+        if (BlockedAdsSiteAllowlist.isAllowed(BlockedAdsRequestContext.extractHost(url))) {
+            return Decision.ALLOW;
+        }
+        String rewritten = engine.rewriteNavigation(url);
+        if (rewritten == url) {
+            return Decision.ALLOW;
+        }
+        // A site that needs a parameter redirects the rewritten URL back to one with it: let it load
+        if (isRedirect && rewritten.equals(rewrittenUrl)) {
+            rewrittenUrl = null;
+            return Decision.ALLOW;
+        }
+        if (engine.shouldBlockUrl(rewritten)) {
+            return Decision.BLOCK;
+        }
+        rewrittenUrl = rewritten;
+        return Decision.REWRITE;
+    }
+    
+    /**
+     * Get the URL to load after decide() returned REWRITE
+     */
+    public String getRewrittenUrl() {
+        return rewrittenUrl;
+    }
+    
+    /**
+     * Open a non-web URL in the app that handles it
+     * Returns false if no app can handle it
+     */
+    public static boolean openExternally(Context context, String url) {
+        try {
+            Intent intent;
+            if (url.regionMatches(true, 0, "intent:", 0, 7)) {
+                intent = Intent.parseUri(url, Intent.URI_INTENT_SCHEME);
+                // Only allow intents a browser could launch
+                intent.addCategory(Intent.CATEGORY_BROWSABLE);
+                intent.setComponent(null);
+                intent.setSelector(null);
+            } else {
+                intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
+            }
+            context.startActivity(intent);
+            return true;
+        } catch (URISyntaxException | ActivityNotFoundException e) {
+            return false;
+        }
+    }
+    
+    private static boolean isWebUrl(String url) {
+        return url.regionMatches(true, 0, "https:", 0, 6) || url.regionMatches(true, 0, "http:", 0, 5);
+    }
+    
+    private static boolean isInternalScheme(String url) {
+        return url.regionMatches(true, 0, "about:", 0, 6)
+            || url.regionMatches(true, 0, "data:", 0, 5)
+            || url.regionMatches(true, 0, "blob:", 0, 5)
+            || url.regionMatches(true, 0, "javascript:", 0, 11);
+    }
+}
@@ -0,0 +1,111 @@
+package com.blockedads.app;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Page Load Metrics for one navigation
+ * Request counters are updated from WebView IO threads; the start and finish marks come
+ * from the UI thread. Recorded into BlockedAdsTelemetry when the page finishes.
+ */
+public final class BlockedAdsPageMetrics {
+    
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger blocked = new AtomicInteger();
+    private final AtomicLong interceptNanos = new AtomicLong();
+    private final AtomicLong bytesAvoided = new AtomicLong();
+    
+    private volatile String host;
+    private volatile long startedAtMillis;
+    private volatile long startNanos;
+    private volatile long loadNanos = -1;
+    private volatile boolean blockingEnabled;
+    private volatile String filterState;
+    private volatile int ruleCount;
+    
+    /**
+     * Mark the navigation start and snapshot the blocking configuration it loads with
+     */
+    void start(String host, boolean blockingEnabled, String filterState, int ruleCount) {
+        this.host = host;
+        this.blockingEnabled = blockingEnabled;
+        this.filterState = filterState;
+        this.ruleCount = ruleCount;
+        this.startedAtMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+    
+    void finish() {
+        loadNanos = System.nanoTime() - startNanos;
+    }
+    
+    boolean isStarted() {
+        return startNanos != 0;
+    }
+    
+    /**
+     * Count one request and the time spent deciding it
+     */
+    void onRequest(boolean wasBlocked, long decisionNanos, long estimatedBytes) {
+        requests.incrementAndGet();
+        interceptNanos.addAndGet(decisionNanos);
+        if (wasBlocked) {
+            blocked.incrementAndGet();
+            bytesAvoided.addAndGet(estimatedBytes);
+        }
+    }
+    
+    public String getHost() {
+        return host;
+    }
+    
+    public long getStartedAtMillis() {
+        return startedAtMillis;
+    }
+    
+    /**
+     * Time from onPageStarted to onPageFinished, or -1 if the page hasn't finished
+     */
+    public long getLoadMillis() {
+        long nanos = loadNanos;
+        return nanos < 0 ? -1 : nanos / 1000000;
+    }
+    
+    public int getRequests() {
+        return requests.get();
+    }
+    
+    public int getBlocked() {
+        return blocked.get();
+    }
+    
+    public int getAllowed() {
+        return requests.get() - blocked.get();
+    }
+    
+    /**
+     * Estimated bytes not downloaded because of blocked requests
+     */
+    public long getBytesAvoided() {
+        return bytesAvoided.get();
+    }
+    
+    /**
+     * Total time spent inside shouldInterceptRequest for this page
+     */
+    public long getInterceptMicros() {
+        return interceptNanos.get() / 1000;
+    }
+    
+    public boolean isBlockingEnabled() {
+        return blockingEnabled;
+    }
+    
+    public String getFilterState() {
+        return filterState;
+    }
+    
+    public int getRuleCount() {
+        return ruleCount;
+    }
+}
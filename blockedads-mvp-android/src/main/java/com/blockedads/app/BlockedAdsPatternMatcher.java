@@ -0,0 +1,134 @@
+package com.blockedads.app;
+
+/**
+ * ABP Pattern Matcher
+ * Matches ||, | and trailing | anchors with * and ^ wildcards directly against the URL,
+ * with the same semantics as BlockedAdsFilterRule.toRegex() but without a Pattern per rule
+ */
+final class BlockedAdsPatternMatcher {
+    
+    static final int FLAG_MATCH_CASE = 1 << 13;
+    static final int FLAG_HOST_ANCHOR = 1 << 14;
+    static final int FLAG_START_ANCHOR = 1 << 15;
+    static final int FLAG_END_ANCHOR = 1 << 16;
+    static final int ANCHOR_FLAGS = FLAG_HOST_ANCHOR | FLAG_START_ANCHOR | FLAG_END_ANCHOR;
+    
+    private BlockedAdsPatternMatcher() {
+    }
+    
+    /**
+     * Match the ASCII pattern in pattern[start .. end), anchors already stripped into flags
+     */
+    static boolean matches(byte[] pattern, int start, int end, int flags, String url) {
+        boolean matchCase = (flags & FLAG_MATCH_CASE) != 0;
+        boolean endAnchor = (flags & FLAG_END_ANCHOR) != 0;
+        
+        if ((flags & FLAG_HOST_ANCHOR) != 0) {
+            // The pattern starts at the host or at any of its labels
+            int hostStart = schemeEnd(url, matchCase);
+            if (hostStart < 0) {
+                return false;
+            }
+            if (glob(pattern, start, end, url, hostStart, matchCase, endAnchor)) {
+                return true;
+            }
+            for (int i = hostStart; i < url.length(); i++) {
+                char c = url.charAt(i);
+                if (c == '/' || c == '?' || c == '#') {
+                    break;
+                }
+                if (c == '.' && glob(pattern, start, end, url, i + 1, matchCase, endAnchor)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if ((flags & FLAG_START_ANCHOR) != 0 || (start < end && pattern[start] == '*')) {
+            return glob(pattern, start, end, url, 0, matchCase, endAnchor);
+        }
+        
+        byte first = start < end ? pattern[start] : 0;
+        for (int i = 0; i <= url.length(); i++) {
+            // Skip start positions where a leading literal can't match
+            if (first != 0 && first != '^' && (i == url.length() || !sameChar(first, url.charAt(i), matchCase))) {
+                continue;
+            }
+            if (glob(pattern, start, end, url, i, matchCase, endAnchor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Wildcard match of pattern[p .. end) at url[u ...], backtracking to the last * on a mismatch
+     */
+    private static boolean glob(byte[] pattern, int p, int end, String url, int u, boolean matchCase,
+                                boolean endAnchor) {
+        int starP = -1;
+        int starU = 0;
+        int length = url.length();
+        while (true) {
+            if (p < end && pattern[p] == '*') {
+                starP = ++p;
+                starU = u;
+                continue;
+            }
+            if (p == end) {
+                if (!endAnchor || u == length) {
+                    return true;
+                }
+            } else if (u < length && tokenMatches(pattern[p], url.charAt(u), matchCase)) {
+                p++;
+                u++;
+                continue;
+            } else if (u == length && pattern[p] == '^') {
+                p++; // ^ also matches the end of the URL
+                continue;
+            }
+            if (starP < 0 || starU >= length) {
+                return false;
+            }
+            p = starP;
+            u = ++starU;
+        }
+    }
+    
+    private static boolean tokenMatches(byte token, char c, boolean matchCase) {
+        return token == '^' ? isSeparator(c, matchCase) : sameChar(token, c, matchCase);
+    }
+    
+    private static boolean sameChar(byte token, char c, boolean matchCase) {
+        return token == c || (!matchCase && c < 128 && toLower(c) == toLower((char) token));
+    }
+    
+    // Same class as the regex translation: anything but a-z 0-9 _ . % -
+    private static boolean isSeparator(char c, boolean matchCase) {
+        char lower = matchCase ? c : toLower(c);
+        return !((lower >= 'a' && lower <= 'z') || (c >= '0' && c <= '9') || c == '_' || c == '.' || c == '%' || c == '-');
+    }
+    
+    private static char toLower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+    
+    /**
+     * Index just past "scheme://", or -1 if the URL doesn't start with a valid scheme
+     */
+    private static int schemeEnd(String url, boolean matchCase) {
+        int colon = url.indexOf("://");
+        if (colon <= 0) {
+            return -1;
+        }
+        for (int i = 0; i < colon; i++) {
+            char c = matchCase ? url.charAt(i) : toLower(url.charAt(i));
+            if (i == 0 && !(c >= 'a' && c <= 'z')) {
+                return -1;
+            }
+            if (!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '+' || c == '.' || c == '-')) {
+                return -1;
+            }
+        }
+        return colon + 3;
+    }
+}
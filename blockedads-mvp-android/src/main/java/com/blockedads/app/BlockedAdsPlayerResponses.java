@@ -0,0 +1,196 @@
+package com.blockedads.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * YouTube Player Response Rewriting
+ * Optional mode that fetches YouTube's player JSON itself and strips the adPlacements and
+ * playerAds members on the way to the WebView, so the player never schedules ads and their
+ * media is never downloaded. The body is filtered as it streams (BlockedAdsJsonKeyStripper);
+ * the only wait added is for the response headers, bounded by HEADERS_TIMEOUT_MS, after
+ * which the request is left to the WebView. WebView does not expose POST bodies, so only
+ * GET player requests can be replayed; the rest still go to the page script.
+ */
+public final class BlockedAdsPlayerResponses {
+    
+    private static final String TAG = "BlockedAdsPlayerResp";
+    private static final String PREFS_NAME = "BlockedAdsSettings";
+    private static final String KEY_REWRITING_ENABLED = "youtube_response_rewriting";
+    
+    static final String[] AD_KEYS = {"adPlacements", "playerAds"};
+    // A player response has each key once at its root; filtering stops after both
+    private static final int MAX_STRIPPED = AD_KEYS.length;
+    static final int HEADERS_TIMEOUT_MS = 1500;
+    private static final int READ_TIMEOUT_MS = 15000;
+    
+    private static volatile boolean enabled;
+    
+    private BlockedAdsPlayerResponses() {
+    }
+    
+    /**
+     * Read the persisted mode; off unless turned on
+     */
+    public static void load(Context context) {
+        enabled = prefs(context).getBoolean(KEY_REWRITING_ENABLED, false);
+    }
+    
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
+    public static void setEnabled(Context context, boolean value) {
+        enabled = value;
+        prefs(context).edit().putBoolean(KEY_REWRITING_ENABLED, value).apply();
+    }
+    
+    /**
+     * Check if a request returns a player response: youtubei/v1/player, or a watch page as JSON
+     */
+    static boolean isPlayerRequest(String method, String url) {
+        if (method != null && !method.equals("GET")) {
+            return false;
+        }
+        String host = BlockedAdsRequestContext.extractHost(url);
+        if (host == null || (!host.equals("youtube.com") && !host.endsWith(".youtube.com") && !host.equals("youtubei.googleapis.com"))) {
+            return false;
+        }
+        int pathStart = url.indexOf('/', url.indexOf("//") + 2);
+        if (pathStart < 0) {
+            return false;
+        }
+        if (url.startsWith("/youtubei/v1/player", pathStart)) {
+            return true;
+        }
+        return (url.startsWith("/watch", pathStart) || url.startsWith("/get_watch", pathStart))
+            && (url.contains("?pbj=1") || url.contains("&pbj=1"));
+    }
+    
+    /**
+     * Fetch a player response with its ads stripped, or return null to let the WebView load it
+     */
+    public static WebResourceResponse rewrite(WebResourceRequest request) {
+        Uri uri = request.getUrl();
+        if (request.isForMainFrame() || uri == null || !isPlayerRequest(request.getMethod(), uri.toString())) {
+            return null;
+        }
+        String url = uri.toString();
+        
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(HEADERS_TIMEOUT_MS);
+            connection.setReadTimeout(HEADERS_TIMEOUT_MS);
+            connection.setInstanceFollowRedirects(true);
+            Map<String, String> headers = request.getRequestHeaders();
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    // Let the connection negotiate and undo compression itself
+                    if (!header.getKey().equalsIgnoreCase("Accept-Encoding")) {
+                        connection.setRequestProperty(header.getKey(), header.getValue());
+                    }
+                }
+            }
+            CookieManager cookies = CookieManager.getInstance();
+            String cookie = cookies.getCookie(url);
+            if (cookie != null) {
+                connection.setRequestProperty("Cookie", cookie);
+            }
+            
+            int status = connection.getResponseCode();
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            List<String> setCookies = connection.getHeaderFields().get("Set-Cookie");
+            if (setCookies != null) {
+                for (String value : setCookies) {
+                    cookies.setCookie(url, value);
+                }
+            }
+            
+            String contentType = connection.getContentType();
+            String mimeType = mimeType(contentType);
+            InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (body != null && status == HttpURLConnection.HTTP_OK && mimeType.equals("application/json")) {
+                body = new BlockedAdsJsonKeyStripper(body, MAX_STRIPPED, AD_KEYS);
+            }
+            String reason = connection.getResponseMessage();
+            return new WebResourceResponse(mimeType, charset(contentType), status,
+                reason == null || reason.isEmpty() ? "OK" : reason, responseHeaders(connection), body);
+        } catch (IOException | RuntimeException e) {
+            // Too slow or failed: the WebView fetches it again without rewriting
+            Log.w(TAG, "Player response not rewritten: " + e);
+            if (connection != null) {
+                connection.disconnect();
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * Response headers for the WebView, minus those describing the original encoded body
+     */
+    private static Map<String, String> responseHeaders(HttpURLConnection connection) {
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            String name = header.getKey();
+            if (name == null) {
+                continue; // Status line
+            }
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (lower.equals("content-length") || lower.equals("content-encoding")
+                    || lower.equals("transfer-encoding") || lower.equals("set-cookie")) {
+                continue;
+            }
+            headers.put(name, join(header.getValue()));
+        }
+        return headers;
+    }
+    
+    private static String join(List<String> values) {
+        StringBuilder joined = new StringBuilder();
+        for (String value : values) {
+            if (joined.length() > 0) {
+                joined.append(", ");
+            }
+            joined.append(value);
+        }
+        return joined.toString();
+    }
+    
+    static String mimeType(String contentType) {
+        if (contentType == null) {
+            return "application/octet-stream";
+        }
+        int semicolon = contentType.indexOf(';');
+        return (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+    }
+    
+    static String charset(String contentType) {
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                parameter = parameter.trim();
+                if (parameter.regionMatches(true, 0, "charset=", 0, 8)) {
+                    return parameter.substring(8).replace("\"", "");
+                }
+            }
+        }
+        return "UTF-8";
+    }
+    
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,62 @@
+package com.blockedads.app;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Procedural Cosmetic Filter Runtime
+ * The asset that evaluates procedural selectors: it compiles them once per page and
+ * evaluates only subtrees added after its first pass, within a per-frame time budget.
+ * Preloaded like the surrogates and released under memory pressure.
+ */
+final class BlockedAdsProceduralRuntime {
+    
+    private static final String TAG = "BlockedAdsCosmetic";
+    private static final String RUNTIME_ASSET = "blockedads-procedural.js";
+    
+    private static volatile String runtime;
+    
+    private BlockedAdsProceduralRuntime() {
+    }
+    
+    /**
+     * Get the runtime script, or null if it isn't loaded
+     */
+    static String get() {
+        return runtime;
+    }
+    
+    /**
+     * Load the procedural runtime from assets (once per process, or after release())
+     */
+    public static synchronized void preload(Context context) {
+        if (runtime != null) {
+            return;
+        }
+        try (InputStream in = context.getAssets().open(RUNTIME_ASSET)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            runtime = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to load the procedural filter runtime", e);
+        }
+    }
+    
+    /**
+     * Drop the runtime under memory pressure; pages get only their stylesheet until the next
+     * preload(). Returns the bytes released
+     */
+    static synchronized long release() {
+        String loaded = runtime;
+        runtime = null;
+        return loaded == null ? 0 : 40 + 2L * loaded.length();
+    }
+}
@@ -0,0 +1,214 @@
+package com.blockedads.app;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.IDN;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Public Suffix List Compiler
+ * Builds the DAFSA BlockedAdsPublicSuffixes maps: a trie over each rule's characters read right
+ * to left ("co.uk" is stored as "ku.oc"), with identical subtrees merged so the many rules
+ * ending in the same labels share their nodes. Run at build time; the app only maps the result.
+ */
+public final class BlockedAdsPublicSuffixCompiler {
+    
+    private BlockedAdsPublicSuffixCompiler() {
+    }
+    
+    private static final class Node {
+        int flags;
+        final TreeMap<Character, Node> children = new TreeMap<>();
+        int offset;
+    }
+    
+    /**
+     * Compile a public_suffix_list.dat stream
+     */
+    static ByteBuffer compile(InputStream in) throws IOException {
+        List<String> rules = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            // Only the first whitespace-separated token of a line is the rule
+            line = line.trim();
+            int space = line.indexOf(' ');
+            if (space >= 0) {
+                line = line.substring(0, space);
+            }
+            if (!line.isEmpty() && !line.startsWith("//")) {
+                rules.add(line);
+            }
+        }
+        return compile(rules);
+    }
+    
+    /**
+     * Compile rules in list syntax: "co.uk", "*.ck", "!www.ck"
+     * Internationalized rules are converted to punycode, the form hosts arrive in
+     */
+    static ByteBuffer compile(List<String> rules) {
+        Node root = new Node();
+        for (String rule : rules) {
+            int flag = BlockedAdsPublicSuffixes.FLAG_RULE;
+            if (rule.startsWith("!")) {
+                flag = BlockedAdsPublicSuffixes.FLAG_EXCEPTION;
+                rule = rule.substring(1);
+            } else if (rule.startsWith("*.")) {
+                flag = BlockedAdsPublicSuffixes.FLAG_WILDCARD;
+                rule = rule.substring(2);
+            }
+            String ascii;
+            try {
+                ascii = IDN.toASCII(rule).toLowerCase(Locale.ROOT);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            
+            Node node = root;
+            for (int i = ascii.length() - 1; i >= 0; i--) {
+                Character c = ascii.charAt(i);
+                Node child = node.children.get(c);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            node.flags |= flag;
+        }
+        
+        // Merge equal subtrees bottom-up, then lay the distinct nodes out after the header
+        root = minimize(root, new HashMap<String, Node>(), new IdentityHashMap<Node, Node>());
+        List<Node> nodes = new ArrayList<>();
+        collect(root, nodes, new IdentityHashMap<Node, Boolean>());
+        
+        int size = BlockedAdsPublicSuffixes.HEADER_SIZE;
+        for (Node node : nodes) {
+            node.offset = size;
+            size += BlockedAdsPublicSuffixes.NODE_SIZE + node.children.size() * BlockedAdsPublicSuffixes.EDGE_SIZE;
+        }
+        if (size > 1 << 24) {
+            throw new IllegalStateException("Public suffix DAFSA exceeds 24-bit offsets");
+        }
+        
+        ByteBuffer dafsa = ByteBuffer.allocate(size);
+        dafsa.putInt(BlockedAdsPublicSuffixes.MAGIC);
+        dafsa.putInt(BlockedAdsPublicSuffixes.VERSION);
+        for (Node node : nodes) {
+            dafsa.putInt(node.flags << 24 | node.children.size());
+            for (Map.Entry<Character, Node> edge : node.children.entrySet()) {
+                dafsa.putInt(edge.getKey() << 24 | edge.getValue().offset);
+            }
+        }
+        dafsa.flip();
+        return dafsa;
+    }
+    
+    private static Node minimize(Node node, Map<String, Node> registry, IdentityHashMap<Node, Node> done) {
+        Node canonical = done.get(node);
+        if (canonical != null) {
+            return canonical;
+        }
+        StringBuilder signature = new StringBuilder().append(node.flags);
+        for (Map.Entry<Character, Node> edge : node.children.entrySet()) {
+            Node child = minimize(edge.getValue(), registry, done);
+            edge.setValue(child);
+            signature.append(edge.getKey()).append(System.identityHashCode(child)).append(',');
+        }
+        // identityHashCode can collide, so a registry hit must still compare children by identity
+        String key = signature.toString();
+        canonical = registry.get(key);
+        if (canonical == null || !sameNode(canonical, node)) {
+            canonical = node;
+            registry.put(key, node);
+        }
+        done.put(node, canonical);
+        return canonical;
+    }
+    
+    private static boolean sameNode(Node a, Node b) {
+        if (a.flags != b.flags || a.children.size() != b.children.size()) {
+            return false;
+        }
+        for (Map.Entry<Character, Node> edge : a.children.entrySet()) {
+            if (b.children.get(edge.getKey()) != edge.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static void collect(Node node, List<Node> nodes, IdentityHashMap<Node, Boolean> visited) {
+        if (visited.put(node, Boolean.TRUE) != null) {
+            return;
+        }
+        nodes.add(node);
+        for (Node child : node.children.values()) {
+            collect(child, nodes, visited);
+        }
+    }
+    
+    /**
+     * Usage: BlockedAdsPublicSuffixCompiler public_suffix_list.dat public_suffix.dafsa [--benchmark]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BlockedAdsPublicSuffixCompiler <public_suffix_list.dat> <out.dafsa> [--benchmark]");
+            System.exit(2);
+        }
+        ByteBuffer dafsa;
+        try (InputStream in = new FileInputStream(args[0])) {
+            dafsa = compile(in);
+        }
+        try (OutputStream out = new FileOutputStream(new File(args[1]))) {
+            out.write(dafsa.array(), 0, dafsa.limit());
+        }
+        System.out.println("Wrote " + dafsa.limit() + " bytes to " + args[1]);
+        
+        if (args.length > 2 && args[2].equals("--benchmark")) {
+            benchmark(dafsa);
+        }
+    }
+    
+    /**
+     * Measure registrableDomainStart() throughput on a direct buffer, as the app maps it
+     */
+    private static void benchmark(ByteBuffer compiled) {
+        ByteBuffer dafsa = ByteBuffer.allocateDirect(compiled.limit());
+        dafsa.put(compiled.duplicate()).flip();
+        String[] hosts = {
+            "www.google.com", "pagead2.googlesyndication.com", "news.bbc.co.uk", "a.b.c.example.com.au",
+            "user.github.io", "cdn.jsdelivr.net", "static.xx.fbcdn.net", "www.ck", "foo.bar.ck",
+            "s3.dualstack.us-east-1.amazonaws.com", "ads.example.org", "localhost", "xn--p1ai", "shop.example.xn--p1ai"
+        };
+        long sink = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            int lookups = 0;
+            for (int i = 0; i < 2000000; i++) {
+                sink += BlockedAdsPublicSuffixes.registrableDomainStart(dafsa, hosts[i % hosts.length]);
+                lookups++;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format(Locale.ROOT, "%.1f million lookups/s", lookups / seconds / 1e6));
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.blockedads.app;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+
+/**
+ * Public Suffix Index
+ * Registrable-domain (eTLD+1) lookups against the Public Suffix List, compiled by
+ * BlockedAdsPublicSuffixCompiler into a DAFSA that is memory-mapped from the APK. A lookup
+ * walks the host right to left without allocating. Until a list is loaded every TLD counts
+ * as a public suffix, so registrable domains are the last two labels.
+ */
+public final class BlockedAdsPublicSuffixes {
+    
+    private static final String TAG = "BlockedAdsPublicSuffixes";
+    static final String ASSET_NAME = "public_suffix.dafsa";
+    
+    // Layout: header, then 4-byte aligned nodes of [flags][0][0][edge count], each followed
+    // by its edges as [char][24-bit child offset], sorted by char, so every probe is one int read
+    static final int MAGIC = 0x50534c44; // "PSLD"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int NODE_SIZE = 4;
+    static final int EDGE_SIZE = 4;
+    private static final int LINEAR_SEARCH_EDGES = 4;
+    static final int FLAG_RULE = 1;
+    static final int FLAG_WILDCARD = 2;
+    static final int FLAG_EXCEPTION = 4;
+    
+    private static final ByteBuffer EMPTY = BlockedAdsPublicSuffixCompiler.compile(Collections.<String>emptyList());
+    
+    private static volatile ByteBuffer dafsa = EMPTY;
+    
+    private BlockedAdsPublicSuffixes() {
+    }
+    
+    /**
+     * Map the bundled list; the asset is stored uncompressed so this reads no list data up front
+     */
+    public static void load(Context context) {
+        try (AssetFileDescriptor descriptor = context.getAssets().openFd(ASSET_NAME);
+             FileInputStream in = descriptor.createInputStream()) {
+            use(in.getChannel().map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(), descriptor.getLength()));
+        } catch (IOException e) {
+            // A compressed asset cannot be mapped; read it instead
+            try (InputStream in = context.getAssets().open(ASSET_NAME)) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[16 * 1024];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    bytes.write(buffer, 0, read);
+                }
+                use(ByteBuffer.wrap(bytes.toByteArray()));
+            } catch (IOException | IllegalArgumentException readFailure) {
+                Log.w(TAG, "Failed to load the public suffix list, using TLDs only", readFailure);
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Invalid public suffix list, using TLDs only", e);
+        }
+    }
+    
+    /**
+     * Map a compiled list from a file (JVM tools and tests)
+     */
+    static void load(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            use(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+        }
+    }
+    
+    /**
+     * Switch to a compiled list; null goes back to TLDs only
+     */
+    static void use(ByteBuffer compiled) {
+        if (compiled == null) {
+            dafsa = EMPTY;
+            return;
+        }
+        if (compiled.limit() < HEADER_SIZE || compiled.getInt(0) != MAGIC || compiled.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a public suffix DAFSA");
+        }
+        dafsa = compiled;
+    }
+    
+    /**
+     * Get the registrable domain of a lowercase host, the host itself for IP addresses,
+     * or null if the host is itself a public suffix or its domain label is empty
+     * A trailing root dot is ignored: example.com. has the domain example.com
+     */
+    public static String registrableDomain(String host) {
+        int start = registrableDomainStart(dafsa, host);
+        return start < 0 ? null : host.substring(start, hostEnd(host));
+    }
+    
+    /**
+     * Check if two lowercase hosts belong to the same site, without allocating
+     * Hosts without a registrable domain only match themselves
+     */
+    public static boolean isSameSite(String host, String otherHost) {
+        ByteBuffer index = dafsa;
+        int start = registrableDomainStart(index, host);
+        int otherStart = registrableDomainStart(index, otherHost);
+        if (start < 0 || otherStart < 0) {
+            return host.equals(otherHost);
+        }
+        int length = hostEnd(host) - start;
+        return length == hostEnd(otherHost) - otherStart && host.regionMatches(start, otherHost, otherStart, length);
+    }
+    
+    /**
+     * Index where the host's registrable domain starts, or -1 if the host is a public suffix,
+     * starts with a dot or has an empty label before its suffix (.com, a..com)
+     */
+    static int registrableDomainStart(ByteBuffer index, String host) {
+        int end = hostEnd(host);
+        if (end == 0 || host.charAt(0) == '.') {
+            return -1;
+        }
+        char last = host.charAt(end - 1);
+        if ((last >= '0' && last <= '9') || last == ']') {
+            return 0; // IP address literal
+        }
+        
+        int suffix = publicSuffixStart(index, host, end);
+        if (suffix == 0) {
+            return -1;
+        }
+        int start = host.lastIndexOf('.', suffix - 2) + 1;
+        return start < suffix - 1 ? start : -1;
+    }
+    
+    // The host's length without a trailing root dot
+    private static int hostEnd(String host) {
+        int length = host.length();
+        return length > 1 && host.charAt(length - 1) == '.' ? length - 1 : length;
+    }
+    
+    /**
+     * Index where the host's public suffix starts, by the longest matching rule
+     * A single right-to-left pass; an exception rule wins outright, and without any match
+     * the last label is the suffix
+     */
+    private static int publicSuffixStart(ByteBuffer index, String host, int end) {
+        int node = HEADER_SIZE;
+        int suffix = -1;
+        boolean wildcard = false; // The previous label ended a *. rule, so this whole label matches
+        int labelEnd = end;
+        for (int i = labelEnd - 1; i >= -1; i--) {
+            char c = i >= 0 ? host.charAt(i) : '.';
+            if (c != '.') {
+                if (node >= 0) {
+                    node = child(index, node, c);
+                } else if (!wildcard) {
+                    break;
+                }
+                continue;
+            }
+            
+            // The label [i + 1, labelEnd) is complete
+            if (wildcard) {
+                suffix = i + 1;
+                wildcard = false;
+            }
+            if (node < 0) {
+                break;
+            }
+            int flags = index.getInt(node) >>> 24;
+            if ((flags & FLAG_EXCEPTION) != 0) {
+                return labelEnd + 1;
+            }
+            if ((flags & FLAG_RULE) != 0) {
+                suffix = i + 1;
+            }
+            wildcard = (flags & FLAG_WILDCARD) != 0;
+            if (i < 0) {
+                break;
+            }
+            node = child(index, node, '.');
+            labelEnd = i;
+        }
+        return suffix >= 0 ? suffix : host.lastIndexOf('.', end - 1) + 1;
+    }
+    
+    /**
+     * Follow the edge for a character, or return -1
+     * Most nodes have one or two edges and are scanned; wide ones (the TLD level) are binary searched
+     */
+    private static int child(ByteBuffer index, int node, char c) {
+        if (c >= 0x80) {
+            return -1;
+        }
+        int count = index.getInt(node) & 0xff;
+        int edges = node + NODE_SIZE;
+        if (count <= LINEAR_SEARCH_EDGES) {
+            for (int i = 0; i < count; i++) {
+                int edge = index.getInt(edges + i * EDGE_SIZE);
+                if (edge >>> 24 == c) {
+                    return edge & 0xffffff;
+                }
+            }
+            return -1;
+        }
+        
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int edge = index.getInt(edges + middle * EDGE_SIZE);
+            int label = edge >>> 24;
+            if (label < c) {
+                low = middle + 1;
+            } else if (label > c) {
+                high = middle - 1;
+            } else {
+                return edge & 0xffffff;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,243 @@
+package com.blockedads.app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * NFA for BlockedAdsRegexSet
+ * Thompson construction of the parsed rules into parallel arrays, and the state-set moves
+ * the lazy DFA is built from. Not thread-safe: the set calls it under its lock.
+ */
+final class BlockedAdsRegexNfa {
+    
+    private static final int SET = 0; // Consume one character in [lo, hi] bits, then out1
+    private static final int SPLIT = 1; // Epsilon to out1 and out2
+    private static final int END = 2; // End of input, then out1
+    private static final int MATCH = 3; // Rule out1 matched
+    
+    private int stateCount;
+    private int[] kinds = new int[64];
+    private long[] lows = new long[64];
+    private long[] highs = new long[64];
+    private int[] out1 = new int[64];
+    private int[] out2 = new int[64];
+    
+    // Visited marks and the set being built, sized by the first closure() once rules are added
+    private int[] marks;
+    private int generation;
+    private int[] scratch;
+    
+    int getStateCount() {
+        return stateCount;
+    }
+    
+    /**
+     * Add the top-level alternatives of a rule's regex, collecting their start states
+     * Throws UnsupportedOperationException, leaving the NFA unchanged, if the regex is outside
+     * the supported syntax or over the admission limits
+     */
+    void add(String regex, boolean ignoreCase, int rule, List<Integer> anchored, List<Integer> floating) {
+        int mark = stateCount;
+        try {
+            // ^ and $ anchor only their own top-level alternative: /^a|b/ is (^a)|(b)
+            int match = addState(MATCH, 0, 0, rule, -1);
+            int end = -1;
+            for (BlockedAdsRegexNode.Branch branch : new BlockedAdsRegexParser(regex, ignoreCase).parse()) {
+                int next = match;
+                if (branch.endAnchored) {
+                    next = end >= 0 ? end : (end = addState(END, 0, 0, match, -1));
+                }
+                int start = compile(branch.node, next, mark);
+                (branch.startAnchored ? anchored : floating).add(start);
+            }
+        } catch (UnsupportedOperationException e) {
+            stateCount = mark;
+            throw e;
+        }
+    }
+    
+    /**
+     * Split ASCII into classes every character set agrees on; fills classOf and returns one
+     * character of each class
+     */
+    char[] partition(byte[] classOf) {
+        List<Character> representatives = new ArrayList<>();
+        Map<String, Integer> signatures = new HashMap<>();
+        StringBuilder signature = new StringBuilder();
+        for (char c = 0; c < classOf.length; c++) {
+            signature.setLength(0);
+            for (int s = 0; s < stateCount; s++) {
+                if (kinds[s] == SET) {
+                    signature.append(contains(s, c) ? '1' : '0');
+                }
+            }
+            Integer cls = signatures.get(signature.toString());
+            if (cls == null) {
+                cls = representatives.size();
+                signatures.put(signature.toString(), cls);
+                representatives.add(c);
+            }
+            classOf[c] = (byte) (int) cls;
+        }
+        char[] classChar = new char[representatives.size()];
+        for (int i = 0; i < classChar.length; i++) {
+            classChar[i] = representatives.get(i);
+        }
+        return classChar;
+    }
+    
+    /**
+     * The sorted consuming, end and match states reachable from starts through epsilon moves
+     */
+    int[] closure(List<Integer> starts) {
+        if (marks == null || marks.length < stateCount) {
+            marks = new int[Math.max(1, stateCount)];
+            scratch = new int[Math.max(1, stateCount)];
+        }
+        generation++;
+        int count = 0;
+        for (int start : starts) {
+            count = addClosure(start, count);
+        }
+        return sorted(count);
+    }
+    
+    /**
+     * The sorted state set after reading c from states, or after end of input when c < 0;
+     * restart is added after a character so unanchored rules can start at every position
+     */
+    int[] next(int[] states, int c, int[] restart) {
+        int count = 0;
+        generation++;
+        if (c < 0) {
+            for (int s : states) {
+                if (kinds[s] == END) {
+                    count = addClosure(out1[s], count);
+                }
+            }
+            return sorted(count);
+        }
+        for (int s : states) {
+            if (kinds[s] == SET && contains(s, (char) c)) {
+                count = addClosure(out1[s], count);
+            }
+        }
+        for (int s : restart) {
+            if (marks[s] != generation) {
+                marks[s] = generation;
+                scratch[count++] = s;
+            }
+        }
+        return sorted(count);
+    }
+    
+    /**
+     * The rules matched by a state set, or null
+     */
+    int[] accepts(int[] states) {
+        int accepted = 0;
+        for (int s : states) {
+            if (kinds[s] == MATCH) {
+                accepted++;
+            }
+        }
+        if (accepted == 0) {
+            return null;
+        }
+        int[] rules = new int[accepted];
+        accepted = 0;
+        for (int s : states) {
+            if (kinds[s] == MATCH) {
+                rules[accepted++] = out1[s];
+            }
+        }
+        return rules;
+    }
+    
+    private int[] sorted(int count) {
+        int[] states = Arrays.copyOf(scratch, count);
+        Arrays.sort(states);
+        return states;
+    }
+    
+    private int addClosure(int s, int count) {
+        while (s >= 0 && marks[s] != generation) {
+            marks[s] = generation;
+            if (kinds[s] != SPLIT) {
+                scratch[count++] = s;
+                return count;
+            }
+            count = addClosure(out1[s], count);
+            s = out2[s];
+        }
+        return count;
+    }
+    
+    private boolean contains(int s, char c) {
+        return c < 64 ? (lows[s] & (1L << c)) != 0 : (highs[s] & (1L << (c - 64))) != 0;
+    }
+    
+    private int addState(int kind, long low, long high, int first, int second) {
+        if (stateCount == kinds.length) {
+            int capacity = stateCount * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            lows = Arrays.copyOf(lows, capacity);
+            highs = Arrays.copyOf(highs, capacity);
+            out1 = Arrays.copyOf(out1, capacity);
+            out2 = Arrays.copyOf(out2, capacity);
+        }
+        kinds[stateCount] = kind;
+        lows[stateCount] = low;
+        highs[stateCount] = high;
+        out1[stateCount] = first;
+        out2[stateCount] = second;
+        return stateCount++;
+    }
+    
+    /**
+     * Thompson construction, back to front: returns the start state of node followed by next
+     */
+    private int compile(BlockedAdsRegexNode node, int next, int mark) {
+        if (stateCount - mark > BlockedAdsRegexSet.MAX_RULE_NFA_STATES || stateCount >= BlockedAdsRegexSet.MAX_NFA_STATES) {
+            throw new UnsupportedOperationException("Over the NFA admission limit");
+        }
+        switch (node.type) {
+            case BlockedAdsRegexNode.CHARS:
+                return addState(SET, node.low, node.high, next, -1);
+            case BlockedAdsRegexNode.SEQUENCE:
+                for (int i = node.children.length - 1; i >= 0; i--) {
+                    next = compile(node.children[i], next, mark);
+                }
+                return next;
+            case BlockedAdsRegexNode.CHOICE: {
+                int start = compile(node.children[node.children.length - 1], next, mark);
+                for (int i = node.children.length - 2; i >= 0; i--) {
+                    start = addState(SPLIT, 0, 0, compile(node.children[i], next, mark), start);
+                }
+                return start;
+            }
+            default: {
+                BlockedAdsRegexNode child = node.children[0];
+                int start = next;
+                if (node.max < 0) {
+                    int loop = addState(SPLIT, 0, 0, -1, next);
+                    int body = compile(child, loop, mark); // May grow out1, so not assigned in one statement
+                    out1[loop] = body;
+                    start = loop;
+                } else {
+                    for (int i = node.min; i < node.max; i++) {
+                        start = addState(SPLIT, 0, 0, compile(child, start, mark), next);
+                        next = start;
+                    }
+                }
+                for (int i = 0; i < node.min; i++) {
+                    start = compile(child, start, mark);
+                }
+                return start;
+            }
+        }
+    }
+}
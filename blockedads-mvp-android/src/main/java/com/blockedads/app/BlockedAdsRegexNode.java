@@ -0,0 +1,47 @@
+package com.blockedads.app;
+
+/**
+ * Parsed Regex Node
+ * What BlockedAdsRegexParser produces and BlockedAdsRegexNfa compiles: a character set, a
+ * sequence, an alternation or a repetition
+ */
+final class BlockedAdsRegexNode {
+    
+    static final int CHARS = 0;
+    static final int SEQUENCE = 1;
+    static final int CHOICE = 2;
+    static final int REPEAT = 3;
+    
+    final int type;
+    long low;
+    long high;
+    BlockedAdsRegexNode[] children;
+    int min;
+    int max; // -1: unbounded
+    
+    BlockedAdsRegexNode(int type) {
+        this.type = type;
+    }
+    
+    static BlockedAdsRegexNode chars(long low, long high) {
+        BlockedAdsRegexNode node = new BlockedAdsRegexNode(CHARS);
+        node.low = low;
+        node.high = high;
+        return node;
+    }
+    
+    /**
+     * A top-level alternative and its anchors
+     */
+    static final class Branch {
+        final BlockedAdsRegexNode node;
+        final boolean startAnchored;
+        final boolean endAnchored;
+        
+        Branch(BlockedAdsRegexNode node, boolean startAnchored, boolean endAnchored) {
+            this.node = node;
+            this.startAnchored = startAnchored;
+            this.endAnchored = endAnchored;
+        }
+    }
+}
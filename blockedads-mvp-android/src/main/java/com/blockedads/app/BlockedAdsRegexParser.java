@@ -0,0 +1,278 @@
+package com.blockedads.app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Regex Parser for BlockedAdsRegexSet
+ * Parses the java.util.regex subset a DFA can run; anything else is unsupported
+ * Case-insensitive matching follows Pattern.CASE_INSENSITIVE, which folds ASCII letters only
+ */
+final class BlockedAdsRegexParser {
+    
+    private final String regex;
+    private final boolean ignoreCase;
+    private int position;
+    
+    BlockedAdsRegexParser(String regex, boolean ignoreCase) {
+        this.regex = regex;
+        this.ignoreCase = ignoreCase;
+    }
+    
+    /**
+     * Parse the top-level alternatives; ^ and $ are supported only at their edges
+     */
+    List<BlockedAdsRegexNode.Branch> parse() {
+        int end = regex.length();
+        List<BlockedAdsRegexNode.Branch> branches = new ArrayList<>();
+        while (true) {
+            boolean startAnchored = position < end && regex.charAt(position) == '^';
+            if (startAnchored) {
+                position++;
+            }
+            BlockedAdsRegexNode node = sequence(end, true);
+            boolean endAnchored = position < end && regex.charAt(position) == '$';
+            if (endAnchored) {
+                position++;
+            }
+            branches.add(new BlockedAdsRegexNode.Branch(node, startAnchored, endAnchored));
+            if (position == end) {
+                return branches;
+            }
+            if (regex.charAt(position) != '|') {
+                throw new UnsupportedOperationException(); // An unbalanced ")"
+            }
+            position++;
+        }
+    }
+    
+    private BlockedAdsRegexNode choice(int end) {
+        List<BlockedAdsRegexNode> alternatives = new ArrayList<>();
+        alternatives.add(sequence(end, false));
+        while (position < end && regex.charAt(position) == '|') {
+            position++;
+            alternatives.add(sequence(end, false));
+        }
+        if (alternatives.size() == 1) {
+            return alternatives.get(0);
+        }
+        BlockedAdsRegexNode node = new BlockedAdsRegexNode(BlockedAdsRegexNode.CHOICE);
+        node.children = alternatives.toArray(new BlockedAdsRegexNode[0]);
+        return node;
+    }
+    
+    /**
+     * Parse up to "|" or ")"; at the top level, also up to a $ ending the alternative
+     */
+    private BlockedAdsRegexNode sequence(int end, boolean topLevel) {
+        List<BlockedAdsRegexNode> items = new ArrayList<>();
+        while (position < end && regex.charAt(position) != '|' && regex.charAt(position) != ')') {
+            if (topLevel && regex.charAt(position) == '$'
+                    && (position + 1 == end || regex.charAt(position + 1) == '|')) {
+                break;
+            }
+            items.add(quantified(atom(end), end));
+        }
+        BlockedAdsRegexNode node = new BlockedAdsRegexNode(BlockedAdsRegexNode.SEQUENCE);
+        node.children = items.toArray(new BlockedAdsRegexNode[0]);
+        return node;
+    }
+    
+    private BlockedAdsRegexNode quantified(BlockedAdsRegexNode atom, int end) {
+        while (position < end) {
+            char c = regex.charAt(position);
+            int min;
+            int max;
+            if (c == '*') {
+                min = 0;
+                max = -1;
+                position++;
+            } else if (c == '+') {
+                min = 1;
+                max = -1;
+                position++;
+            } else if (c == '?') {
+                min = 0;
+                max = 1;
+                position++;
+            } else if (c == '{') {
+                int close = regex.indexOf('}', position);
+                if (close < 0 || close >= end) {
+                    throw new UnsupportedOperationException();
+                }
+                String[] bounds = regex.substring(position + 1, close).split(",", -1);
+                try {
+                    min = Integer.parseInt(bounds[0].trim());
+                    max = bounds.length == 1 ? min : bounds[1].trim().isEmpty() ? -1 : Integer.parseInt(bounds[1].trim());
+                } catch (NumberFormatException e) {
+                    throw new UnsupportedOperationException();
+                }
+                if (bounds.length > 2 || (max >= 0 && max < min) || min > BlockedAdsRegexSet.MAX_RULE_NFA_STATES) {
+                    throw new UnsupportedOperationException();
+                }
+                position = close + 1;
+            } else {
+                return atom;
+            }
+            // A lazy quantifier finds the same matches; a possessive one can reject some
+            if (position < end && regex.charAt(position) == '?') {
+                position++;
+            } else if (position < end && regex.charAt(position) == '+') {
+                throw new UnsupportedOperationException();
+            }
+            BlockedAdsRegexNode repeat = new BlockedAdsRegexNode(BlockedAdsRegexNode.REPEAT);
+            repeat.children = new BlockedAdsRegexNode[] {atom};
+            repeat.min = min;
+            repeat.max = max;
+            atom = repeat;
+        }
+        return atom;
+    }
+    
+    private BlockedAdsRegexNode atom(int end) {
+        char c = regex.charAt(position++);
+        switch (c) {
+            case '(':
+                if (regex.startsWith("?:", position)) {
+                    position += 2;
+                } else if (position < end && regex.charAt(position) == '?') {
+                    throw new UnsupportedOperationException(); // Lookaround, named groups, inline flags
+                }
+                BlockedAdsRegexNode group = choice(end);
+                if (position >= end || regex.charAt(position) != ')') {
+                    throw new UnsupportedOperationException();
+                }
+                position++;
+                return group;
+            case '[':
+                return chars(characterClass(end));
+            case '.':
+                return chars(BlockedAdsCharSet.complement(BlockedAdsCharSet.LINE_BREAKS));
+            case '\\':
+                return chars(fold(escape(end)));
+            case '^':
+            case '$':
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+            case ')':
+                throw new UnsupportedOperationException();
+            default:
+                return chars(fold(literal(c)));
+        }
+    }
+    
+    private BlockedAdsRegexNode chars(long[] set) {
+        return BlockedAdsRegexNode.chars(set[0], set[1]);
+    }
+    
+    private long[] characterClass(int end) {
+        boolean negated = position < end && regex.charAt(position) == '^';
+        if (negated) {
+            position++;
+        }
+        long[] set = new long[2];
+        boolean first = true;
+        while (true) {
+            if (position >= end) {
+                throw new UnsupportedOperationException();
+            }
+            char c = regex.charAt(position++);
+            if (c == ']' && !first) {
+                break;
+            }
+            first = false;
+            if (c == '[' || (c == '&' && position < end && regex.charAt(position) == '&')) {
+                throw new UnsupportedOperationException(); // Nested classes and intersections
+            }
+            // Range endpoints are read before case folding, which turns one letter into two
+            long[] item = c == '\\' ? escape(end) : literal(c);
+            char low = BlockedAdsCharSet.single(item);
+            item = fold(item);
+            // A range needs single characters on both sides; "-" before "]" is a literal
+            if (low != 0xFFFF && position + 1 < end && regex.charAt(position) == '-' && regex.charAt(position + 1) != ']') {
+                position++;
+                char high = regex.charAt(position++);
+                if (high == '\\') {
+                    high = BlockedAdsCharSet.single(escape(end));
+                }
+                if (high == 0xFFFF || high >= BlockedAdsRegexSet.ASCII || high < low) {
+                    throw new UnsupportedOperationException();
+                }
+                item = fold(BlockedAdsCharSet.range(low, high));
+            }
+            set = BlockedAdsCharSet.union(set, item);
+        }
+        return negated ? new long[] {~set[0], ~set[1]} : set;
+    }
+    
+    /**
+     * The set for the escape after a backslash, before case folding
+     */
+    private long[] escape(int end) {
+        if (position >= end) {
+            throw new UnsupportedOperationException();
+        }
+        char c = regex.charAt(position++);
+        switch (c) {
+            case 'd':
+                return BlockedAdsCharSet.DIGITS.clone();
+            case 'D':
+                return BlockedAdsCharSet.complement(BlockedAdsCharSet.DIGITS);
+            case 'w':
+                return BlockedAdsCharSet.WORD.clone();
+            case 'W':
+                return BlockedAdsCharSet.complement(BlockedAdsCharSet.WORD);
+            case 's':
+                return BlockedAdsCharSet.SPACE.clone();
+            case 'S':
+                return BlockedAdsCharSet.complement(BlockedAdsCharSet.SPACE);
+            case 't':
+                return BlockedAdsCharSet.range('\t', '\t');
+            case 'n':
+                return BlockedAdsCharSet.range('\n', '\n');
+            case 'r':
+                return BlockedAdsCharSet.range('\r', '\r');
+            case 'f':
+                return BlockedAdsCharSet.range('\f', '\f');
+            case 'x': {
+                if (position + 2 > end) {
+                    throw new UnsupportedOperationException();
+                }
+                return literal(hex(position, position += 2));
+            }
+            case 'u': {
+                if (position + 4 > end) {
+                    throw new UnsupportedOperationException();
+                }
+                return literal(hex(position, position += 4));
+            }
+            default:
+                // Letters and digits are classes, anchors or backreferences (\b, \1, \p{..}, \Q, ...)
+                if (Character.isLetterOrDigit(c)) {
+                    throw new UnsupportedOperationException();
+                }
+                return literal(c);
+        }
+    }
+    
+    private char hex(int from, int to) {
+        try {
+            return (char) Integer.parseInt(regex.substring(from, to), 16);
+        } catch (NumberFormatException e) {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
+    private long[] fold(long[] set) {
+        return ignoreCase ? BlockedAdsCharSet.foldCase(set) : set;
+    }
+    
+    private long[] literal(char c) {
+        if (c >= BlockedAdsRegexSet.ASCII) {
+            throw new UnsupportedOperationException();
+        }
+        return BlockedAdsCharSet.range(c, c);
+    }
+}
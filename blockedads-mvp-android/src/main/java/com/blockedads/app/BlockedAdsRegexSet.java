@@ -0,0 +1,263 @@
+package com.blockedads.app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Combined Regex Rule Matcher
+ * Compiles the /regex/ rules into one NFA (BlockedAdsRegexNfa) and runs it as a DFA built
+ * lazily while URLs are scanned, so every regex is matched in a single pass without
+ * backtracking. DFA states are cached up to a fixed count and the cache is dropped when it
+ * fills. Rules outside the supported syntax (backreferences, lookaround, \b, inline flags, ...) or over the NFA
+ * admission limit are not added and stay on Pattern; so do URLs with non-ASCII or newline
+ * characters, where Pattern's "." and "$" differ from this matcher's.
+ */
+final class BlockedAdsRegexSet {
+    
+    /**
+     * Called with the id of a rule whose regex matched; returns true if its options match too
+     */
+    interface Candidates {
+        boolean accept(int id, BlockedAdsRequestContext context);
+    }
+    
+    // Admission limits: per rule, so one {1,1000} can't crowd out the rest, and for the whole set
+    static final int MAX_RULE_NFA_STATES = 512;
+    static final int MAX_NFA_STATES = 32 * 1024;
+    static final int MAX_DFA_STATES = 1024;
+    
+    static final int ASCII = 128;
+    
+    private final BlockedAdsRegexNfa nfa = new BlockedAdsRegexNfa();
+    private final List<Integer> anchoredStarts = new ArrayList<>();
+    private final List<Integer> floatingStarts = new ArrayList<>();
+    private final List<Integer> ids = new ArrayList<>();
+    private final List<Pattern> patterns = new ArrayList<>();
+    private int typeMask;
+    
+    // Lazy DFA over character classes; the last class is end of input
+    private byte[] classOf;
+    private char[] classChar;
+    private int classCount;
+    private int[] floatingClosure;
+    private Map<Key, State> cache;
+    private volatile State initial;
+    private int cacheFlushes;
+    
+    private static final class State {
+        final int[] nfaStates;
+        final int[] accepts; // Rule ids matched on reaching this state, or null
+        final State[] next; // Filled on demand; a reader seeing null computes the transition
+        
+        State(int[] nfaStates, int[] accepts, int width) {
+            this.nfaStates = nfaStates;
+            this.accepts = accepts;
+            this.next = new State[width];
+        }
+    }
+    
+    private static final class Key {
+        final int[] states;
+        final int hash;
+        
+        Key(int[] states) {
+            this.states = states;
+            this.hash = Arrays.hashCode(states);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(states, ((Key) other).states);
+        }
+    }
+    
+    /**
+     * Try to add a rule's regex; returns false if it has to stay on Pattern
+     * typeMask is the rule's request types, so requests no admitted rule applies to skip the scan
+     */
+    boolean add(int id, String regex, boolean matchCase, Pattern pattern, int ruleTypeMask) {
+        if (initial != null) {
+            throw new IllegalStateException("Regex set already compiled");
+        }
+        List<Integer> anchored = new ArrayList<>(1);
+        List<Integer> floating = new ArrayList<>(1);
+        try {
+            nfa.add(regex, !matchCase, ids.size(), anchored, floating);
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+        anchoredStarts.addAll(anchored);
+        floatingStarts.addAll(floating);
+        ids.add(id);
+        patterns.add(pattern);
+        typeMask |= ruleTypeMask;
+        return true;
+    }
+    
+    boolean isEmpty() {
+        return ids.isEmpty();
+    }
+    
+    int size() {
+        return ids.size();
+    }
+    
+    int getNfaStateCount() {
+        return nfa.getStateCount();
+    }
+    
+    synchronized int getDfaStateCount() {
+        return cache != null ? cache.size() : 0;
+    }
+    
+    synchronized int getCacheFlushes() {
+        return cacheFlushes;
+    }
+    
+    /**
+     * Finish adding rules: split ASCII into character classes, then start the DFA
+     */
+    synchronized void compile() {
+        if (initial != null) {
+            return;
+        }
+        classOf = new byte[ASCII];
+        classChar = nfa.partition(classOf);
+        classCount = classChar.length;
+        floatingClosure = nfa.closure(floatingStarts);
+        List<Integer> allStarts = new ArrayList<>(anchoredStarts);
+        allStarts.addAll(floatingStarts);
+        cache = new HashMap<>();
+        initial = state(nfa.closure(allStarts));
+    }
+    
+    /**
+     * Check if an admitted rule matches the request's URL (Matcher.find() semantics)
+     */
+    boolean matches(BlockedAdsRequestContext context, Candidates candidates) {
+        return match(context, candidates) >= 0;
+    }
+    
+    /**
+     * Get the id of an admitted rule matching the request's URL, or -1
+     */
+    int match(BlockedAdsRequestContext context, Candidates candidates) {
+        State state = initial;
+        if (state == null || (typeMask & context.getType()) == 0) {
+            return -1;
+        }
+        int id = accepted(state, context, candidates);
+        if (id >= 0) {
+            return id;
+        }
+        
+        String url = context.getUrl();
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c >= ASCII || c == '\n' || c == '\r') {
+                return matchPatterns(context, candidates);
+            }
+            int cls = classOf[c];
+            State next = state.next[cls];
+            state = next != null ? next : step(state, cls);
+            if (state.accepts != null && (id = accepted(state, context, candidates)) >= 0) {
+                return id;
+            }
+        }
+        State end = state.next[classCount];
+        end = end != null ? end : step(state, classCount);
+        return accepted(end, context, candidates);
+    }
+    
+    private int accepted(State state, BlockedAdsRequestContext context, Candidates candidates) {
+        if (state.accepts == null) {
+            return -1;
+        }
+        for (int rule : state.accepts) {
+            if (candidates.accept(ids.get(rule), context)) {
+                return ids.get(rule);
+            }
+        }
+        return -1;
+    }
+    
+    private int matchPatterns(BlockedAdsRequestContext context, Candidates candidates) {
+        for (int rule = 0; rule < ids.size(); rule++) {
+            if (candidates.accept(ids.get(rule), context) && patterns.get(rule).matcher(context.getUrl()).find()) {
+                return ids.get(rule);
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Compute and cache a transition; cls == classCount is end of input
+     */
+    private synchronized State step(State from, int cls) {
+        State cached = from.next[cls];
+        if (cached != null) {
+            return cached;
+        }
+        // Unanchored rules can start at every position
+        State target = state(nfa.next(from.nfaStates, cls == classCount ? -1 : classChar[cls], floatingClosure));
+        from.next[cls] = target;
+        return target;
+    }
+    
+    /**
+     * Look up or create the DFA state for a set of NFA states, dropping the cache when it is full
+     */
+    private State state(int[] nfaStates) {
+        Key key = new Key(nfaStates);
+        State state = cache.get(key);
+        if (state != null) {
+            return state;
+        }
+        if (cache.size() >= MAX_DFA_STATES) {
+            cacheFlushes++;
+            resetCache();
+        }
+        
+        state = new State(nfaStates, nfa.accepts(nfaStates), classCount + 1);
+        cache.put(key, state);
+        return state;
+    }
+    
+    /**
+     * Drop the cached DFA states under memory pressure; returns the approximate bytes released
+     */
+    synchronized long trimCache() {
+        if (cache == null || cache.size() <= 1) {
+            return 0;
+        }
+        long bytes = 0;
+        for (State state : cache.values()) {
+            bytes += 3 * 16 + 4L * (state.nfaStates.length + state.next.length)
+                + (state.accepts != null ? 16 + 4L * state.accepts.length : 0) + 32; // Key and map entry
+        }
+        resetCache();
+        return bytes;
+    }
+    
+    /**
+     * Start an empty cache; scans in progress keep their states, new scans start from a fresh initial state
+     */
+    private void resetCache() {
+        cache = new HashMap<>();
+        State oldInitial = initial;
+        if (oldInitial != null) {
+            State restarted = new State(oldInitial.nfaStates, oldInitial.accepts, classCount + 1);
+            cache.put(new Key(oldInitial.nfaStates), restarted);
+            initial = restarted;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.blockedads.app;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Replay Harness for the filter engine
+ * Feeds a recorded trace (HAR or URL trace, see BlockedAdsTraceReader) through the engine
+ * at full speed or at the recorded pacing, from one or more threads, and reports throughput,
+ * p50/p99 latency, verdict counts and the requests whose verdict differs from a baseline.
+ * Runs on a plain JVM without a device:
+ *   ./gradlew replayTrace -PreplayArgs="trace.har --rules new.txt --baseline old.txt --threads 4"
+ */
+public final class BlockedAdsReplayHarness {
+    
+    private static final int MAX_DIFFS_SHOWN = 50;
+    
+    /**
+     * Result of one replay: per-request verdicts and latencies in trace order
+     */
+    static final class Report {
+        final boolean[] verdicts;
+        final long[] latencyNanos;
+        final long wallNanos;
+        private long[] sorted;
+        
+        Report(boolean[] verdicts, long[] latencyNanos, long wallNanos) {
+            this.verdicts = verdicts;
+            this.latencyNanos = latencyNanos;
+            this.wallNanos = wallNanos;
+        }
+        
+        int getRequests() {
+            return verdicts.length;
+        }
+        
+        int getBlocked() {
+            int blocked = 0;
+            for (boolean verdict : verdicts) {
+                if (verdict) {
+                    blocked++;
+                }
+            }
+            return blocked;
+        }
+        
+        double getThroughput() {
+            return wallNanos > 0 ? verdicts.length * 1e9 / wallNanos : 0;
+        }
+        
+        /**
+         * Latency of a single shouldBlock() call at the given percentile
+         */
+        long getPercentileNanos(int percentile) {
+            if (sorted == null) {
+                sorted = latencyNanos.clone();
+                Arrays.sort(sorted);
+            }
+            return sorted.length == 0 ? 0 : sorted[(int) ((sorted.length - 1) * (long) percentile / 100)];
+        }
+        
+        String format(String label) {
+            return String.format(Locale.ROOT,
+                "%s: %d requests, %d blocked, %d allowed | %.0f req/s | p50 %.1f us, p99 %.1f us",
+                label, getRequests(), getBlocked(), getRequests() - getBlocked(), getThroughput(),
+                getPercentileNanos(50) / 1e3, getPercentileNanos(99) / 1e3);
+        }
+    }
+    
+    private BlockedAdsReplayHarness() {
+    }
+    
+    /**
+     * Replay a trace; request i runs on thread i % threads, so threads share the trace evenly
+     */
+    static Report replay(final BlockedAdsFilterEngine engine, final List<BlockedAdsTraceReader.Entry> trace,
+                         final int threads, final boolean paced) throws InterruptedException {
+        final boolean[] verdicts = new boolean[trace.size()];
+        final long[] latencies = new long[trace.size()];
+        final long start = System.nanoTime();
+        
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int first = t;
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = first; i < verdicts.length; i += threads) {
+                        BlockedAdsTraceReader.Entry entry = trace.get(i);
+                        if (paced) {
+                            waitUntil(start + entry.offsetMillis * 1000000);
+                        }
+                        long before = System.nanoTime();
+                        verdicts[i] = engine.shouldBlock(entry.context);
+                        latencies[i] = System.nanoTime() - before;
+                    }
+                }
+            }, "blockedads-replay-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return new Report(verdicts, latencies, System.nanoTime() - start);
+    }
+    
+    /**
+     * Describe requests whose verdict differs: "+" blocked only by the candidate, "-" only by the baseline
+     */
+    static List<String> diff(Report baseline, Report candidate, List<BlockedAdsTraceReader.Entry> trace) {
+        List<String> diffs = new ArrayList<>();
+        for (int i = 0; i < trace.size(); i++) {
+            if (baseline.verdicts[i] != candidate.verdicts[i]) {
+                diffs.add((candidate.verdicts[i] ? "+ " : "- ") + trace.get(i).context.getUrl());
+            }
+        }
+        return diffs;
+    }
+    
+    /**
+     * Build an engine from the built-in rules plus list files, as BlockedAdsFilterLoader does
+     */
+    static BlockedAdsFilterEngine loadEngine(List<File> lists) throws IOException {
+        BlockedAdsListCompiler.Session session = BlockedAdsListCompiler.newSession(ForkJoinPool.commonPool());
+        for (String rule : BlockedAdsFilterEngine.builtInRules()) {
+            session.onRule(rule);
+        }
+        for (File list : lists) {
+            try (InputStream in = new FileInputStream(list)) {
+                session.addList(in);
+            }
+        }
+        return new BlockedAdsFilterEngine(session.finish());
+    }
+    
+    public static void main(String[] args) throws Exception {
+        File traceFile = null;
+        List<File> rules = new ArrayList<>();
+        List<File> baselineRules = new ArrayList<>();
+        boolean hasBaseline = false;
+        int threads = 1;
+        boolean paced = false;
+        
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--rules":
+                    rules.add(new File(args[++i]));
+                    break;
+                case "--baseline":
+                    hasBaseline = true;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        baselineRules.add(new File(args[++i]));
+                    }
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--paced":
+                    paced = true;
+                    break;
+                default:
+                    traceFile = new File(args[i]);
+            }
+        }
+        if (traceFile == null) {
+            System.err.println("Usage: BlockedAdsReplayHarness <trace.har|trace.txt> [--rules list.txt]... "
+                + "[--baseline [list.txt]]... [--threads N] [--paced]");
+            System.exit(2);
+        }
+        
+        List<BlockedAdsTraceReader.Entry> trace = BlockedAdsTraceReader.read(traceFile);
+        BlockedAdsFilterEngine candidate = loadEngine(rules);
+        PrintStream out = System.out;
+        out.println("Trace: " + trace.size() + " requests from " + traceFile + ", " + threads + " thread(s)"
+            + (paced ? ", recorded pacing" : ", full speed"));
+        
+        // One unmeasured pass so the comparison isn't dominated by JIT warm-up
+        replay(candidate, trace, threads, false);
+        Report candidateReport = replay(candidate, trace, threads, paced);
+        out.println(candidateReport.format("candidate (" + candidate.getRuleCount() + " rules)"));
+        
+        if (hasBaseline) {
+            // A baseline without lists is the built-in bootstrap rule set
+            BlockedAdsFilterEngine baseline = loadEngine(baselineRules);
+            replay(baseline, trace, threads, false);
+            Report baselineReport = replay(baseline, trace, threads, paced);
+            out.println(baselineReport.format("baseline (" + baseline.getRuleCount() + " rules)"));
+            
+            List<String> diffs = diff(baselineReport, candidateReport, trace);
+            out.println(diffs.size() + " verdict difference(s)");
+            for (String line : diffs.subList(0, Math.min(MAX_DIFFS_SHOWN, diffs.size()))) {
+                out.println("  " + line);
+            }
+        }
+    }
+    
+    private static void waitUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.blockedads.app;
+
+import android.net.Uri;
+import android.webkit.WebResourceRequest;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Lightweight Request Context for the filter engine
+ * Carries the request type, the first-party (page) host and the main-frame flag so rules
+ * with $script, $image, $third-party, ... options can be matched
+ */
+public class BlockedAdsRequestContext {
+    
+    // Request types (uBlock Origin / ABP resource types), one bit each
+    public static final int TYPE_DOCUMENT = 1;
+    public static final int TYPE_SUBDOCUMENT = 1 << 1;
+    public static final int TYPE_SCRIPT = 1 << 2;
+    public static final int TYPE_STYLESHEET = 1 << 3;
+    public static final int TYPE_IMAGE = 1 << 4;
+    public static final int TYPE_MEDIA = 1 << 5;
+    public static final int TYPE_FONT = 1 << 6;
+    public static final int TYPE_XHR = 1 << 7;
+    public static final int TYPE_PING = 1 << 8;
+    public static final int TYPE_OBJECT = 1 << 9;
+    public static final int TYPE_OTHER = 1 << 10;
+    public static final int TYPE_ALL = (1 << 11) - 1;
+    
+    private final String url;
+    private final String host;
+    private final String documentHost;
+    private final int type;
+    private final boolean mainFrame;
+    private int thirdParty = -1; // Lazily computed: -1 unknown, 0 first-party, 1 third-party
+    
+    public BlockedAdsRequestContext(String url, String documentHost, int type, boolean mainFrame) {
+        this.url = stripRootDot(url, hostRange(url));
+        this.host = extractHost(this.url);
+        this.documentHost = documentHost != null && documentHost.length() > 1 && documentHost.endsWith(".")
+            ? documentHost.substring(0, documentHost.length() - 1) : documentHost;
+        this.type = type;
+        this.mainFrame = mainFrame;
+    }
+    
+    /**
+     * Build a context from a WebView request
+     * The page host comes from the client (onPageStarted); the Referer header is used as a fallback
+     */
+    public static BlockedAdsRequestContext fromRequest(WebResourceRequest request, String pageHost) {
+        Uri uri = request.getUrl();
+        String url = uri != null ? uri.toString() : "";
+        boolean mainFrame = request.isForMainFrame();
+        Map<String, String> headers = request.getRequestHeaders();
+        
+        String documentHost = mainFrame ? extractHost(url) : pageHost;
+        if (documentHost == null && headers != null) {
+            String referer = header(headers, "Referer");
+            if (referer != null) {
+                documentHost = extractHost(referer);
+            }
+        }
+        
+        int type = mainFrame ? TYPE_DOCUMENT : inferType(url, headers);
+        return new BlockedAdsRequestContext(url, documentHost, type, mainFrame);
+    }
+    
+    public String getUrl() {
+        return url;
+    }
+    
+    public String getHost() {
+        return host;
+    }
+    
+    public String getDocumentHost() {
+        return documentHost;
+    }
+    
+    public int getType() {
+        return type;
+    }
+    
+    public boolean isMainFrame() {
+        return mainFrame;
+    }
+    
+    /**
+     * Check if the request goes to a different site (registrable domain) than the page
+     * Requests without a known page are treated as third-party
+     */
+    public boolean isThirdParty() {
+        if (thirdParty < 0) {
+            thirdParty = documentHost == null || host == null
+                || !BlockedAdsPublicSuffixes.isSameSite(host, documentHost) ? 1 : 0;
+        }
+        return thirdParty == 1;
+    }
+    
+    /**
+     * Infer the request type, trying the URL extension before the Accept header
+     */
+    static int inferType(String url, Map<String, String> headers) {
+        int type = typeFromExtension(url);
+        if (type != TYPE_OTHER || headers == null) {
+            return type;
+        }
+        
+        String accept = header(headers, "Accept");
+        if (accept == null) {
+            return TYPE_OTHER;
+        }
+        if (accept.startsWith("text/css")) {
+            return TYPE_STYLESHEET;
+        }
+        if (accept.startsWith("image/")) {
+            return TYPE_IMAGE;
+        }
+        if (accept.startsWith("text/html")) {
+            return TYPE_SUBDOCUMENT;
+        }
+        if (accept.startsWith("application/json")) {
+            return TYPE_XHR;
+        }
+        return TYPE_OTHER;
+    }
+    
+    static int typeFromExtension(String url) {
+        int end = url.indexOf('?');
+        int hash = url.indexOf('#');
+        if (end < 0 || (hash >= 0 && hash < end)) {
+            end = hash;
+        }
+        if (end < 0) {
+            end = url.length();
+        }
+        
+        int dot = url.lastIndexOf('.', end - 1);
+        if (dot < 0 || url.lastIndexOf('/', end - 1) > dot || end - dot > 6) {
+            return TYPE_OTHER;
+        }
+        
+        String ext = url.substring(dot + 1, end).toLowerCase(Locale.ROOT);
+        switch (ext) {
+            case "js":
+            case "mjs":
+                return TYPE_SCRIPT;
+            case "css":
+                return TYPE_STYLESHEET;
+            case "png":
+            case "jpg":
+            case "jpeg":
+            case "gif":
+            case "webp":
+            case "svg":
+            case "ico":
+                return TYPE_IMAGE;
+            case "woff":
+            case "woff2":
+            case "ttf":
+            case "otf":
+                return TYPE_FONT;
+            case "mp4":
+            case "webm":
+            case "mp3":
+            case "m3u8":
+            case "mpd":
+                return TYPE_MEDIA;
+            default:
+                return TYPE_OTHER;
+        }
+    }
+    
+    /**
+     * Extract the lowercase host from a URL without allocating a Uri
+     * A fully qualified host's root dot is dropped, so ads.example. matches ||ads.example^
+     */
+    public static String extractHost(String url) {
+        long range = hostRange(url);
+        if (range < 0) {
+            return null;
+        }
+        int start = (int) (range >>> 32);
+        int end = (int) range;
+        if (end - start > 1 && url.charAt(end - 1) == '.') {
+            end--;
+        }
+        return url.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Drop the root dot of a fully qualified host from the URL, so the patterns matched
+     * against it see the same host as extractHost()
+     */
+    private static String stripRootDot(String url, long range) {
+        int start = (int) (range >>> 32);
+        int end = (int) range;
+        if (range < 0 || end - start <= 1 || url.charAt(end - 1) != '.') {
+            return url;
+        }
+        return url.substring(0, end - 1) + url.substring(end);
+    }
+    
+    // The host's start and end index packed into a long, or -1 if the URL has no host
+    private static long hostRange(String url) {
+        if (url == null) {
+            return -1;
+        }
+        int start = url.indexOf("://");
+        if (start < 0) {
+            return -1;
+        }
+        start += 3;
+        
+        int end = url.length();
+        for (int i = start; i < end; i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        
+        int at = url.lastIndexOf('@', end - 1);
+        if (at >= start) {
+            start = at + 1;
+        }
+        int colon = url.indexOf(':', start);
+        if (colon >= 0 && colon < end && url.charAt(start) != '[') {
+            end = colon;
+        }
+        return start < end ? ((long) start << 32) | end : -1;
+    }
+    
+    private static String header(Map<String, String> headers, String name) {
+        String value = headers.get(name);
+        return value != null ? value : headers.get(name.toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,206 @@
+package com.blockedads.app;
+
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Network request interceptor shared by all WebView clients
+ * Runs the filter engine on every request so blocked resources are never fetched.
+ * Pages on paused sites, and every page while blocking is off, skip the engine entirely.
+ * Each navigation's requests, blocks and decision time are recorded in BlockedAdsTelemetry,
+ * and every decision in BlockedAdsRequestLog while a viewer has it open.
+ * Service worker requests, which frame clients never see, go through interceptServiceWorker().
+ */
+public class BlockedAdsRequestInterceptor {
+    
+    private static final double ESTIMATED_MB_PER_BLOCKED_REQUEST = 0.05; // Estimate 50KB per blocked ad
+    private static final long ESTIMATED_BYTES_PER_BLOCKED_REQUEST = 50 * 1000;
+    
+    private final BlockedAdsFilterEngine filterEngine; // null: follow the shared engine
+    private final BlockedAdsStats stats;
+    private volatile String pageHost; // Written on the UI thread, read on WebView IO threads
+    private volatile boolean pageAllowed; // Page is on a paused site or @@$document exempt
+    private final AtomicReference<BlockedAdsPageMetrics> pageMetrics = new AtomicReference<>();
+    private volatile PreparedScript preparedScript; // Built on the IO thread for the next page
+    private final int tabId = BlockedAdsRequestLog.nextTabId();
+    
+    public BlockedAdsRequestInterceptor(BlockedAdsStats stats) {
+        this(null, stats);
+    }
+    
+    public BlockedAdsRequestInterceptor(BlockedAdsFilterEngine filterEngine, BlockedAdsStats stats) {
+        this.filterEngine = filterEngine;
+        this.stats = stats;
+    }
+    
+    /**
+     * Record the page being loaded, used as the first party for its subresources
+     * The allowlist is checked here once per page rather than on every request
+     */
+    public void onPageStarted(String url) {
+        BlockedAdsFilterLoader.ensureLoaded();
+        String host = BlockedAdsRequestContext.extractHost(url);
+        pageHost = host;
+        BlockedAdsFilterEngine engine = engine();
+        pageAllowed = BlockedAdsSiteAllowlist.isAllowed(host) || engine.isDocumentAllowed(url);
+        
+        // Adopt the metrics this navigation's main-frame request already opened, unless a page
+        // is still in progress
+        BlockedAdsPageMetrics metrics = pageMetrics.get();
+        if (metrics == null || metrics.isStarted()) {
+            metrics = new BlockedAdsPageMetrics();
+            pageMetrics.set(metrics);
+        }
+        metrics.start(host, BlockedAdsBlockingState.isEnabled(), BlockedAdsFilterLoader.getState().name(),
+            engine.getRuleCount());
+    }
+    
+    /**
+     * An element hiding script built ahead for a host, valid while the engine is the same
+     */
+    private static final class PreparedScript {
+        final String host;
+        final BlockedAdsFilterEngine engine;
+        final String script;
+        
+        PreparedScript(String host, BlockedAdsFilterEngine engine, String script) {
+            this.host = host;
+            this.engine = engine;
+            this.script = script;
+        }
+    }
+    
+    /**
+     * Get the element hiding script for the current page, or null if nothing is hidden on it
+     * Called on the UI thread: the script built when the main-frame request was intercepted
+     * is used if it is for this host, so only pages that skipped intercept() build it here
+     */
+    public String getCosmeticScript() {
+        if (pageAllowed) {
+            return null;
+        }
+        BlockedAdsFilterEngine engine = engine();
+        PreparedScript prepared = preparedScript;
+        if (prepared != null && prepared.engine == engine && prepared.host.equals(pageHost)) {
+            return prepared.script;
+        }
+        return engine.getCosmeticScript(pageHost);
+    }
+    
+    /**
+     * Close the page's metrics and record them
+     */
+    public void onPageFinished(String url) {
+        BlockedAdsPageMetrics metrics = pageMetrics.getAndSet(null);
+        if (metrics != null && metrics.isStarted()) {
+            metrics.finish();
+            BlockedAdsTelemetry.record(metrics);
+        }
+    }
+    
+    /**
+     * Get the response to serve for a request, or null to let it load normally
+     */
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        long start = System.nanoTime();
+        WebResourceResponse response = blockedResponse(request);
+        BlockedAdsPageMetrics metrics = currentMetrics(request.isForMainFrame());
+        if (metrics != null) {
+            metrics.onRequest(response != null, System.nanoTime() - start, ESTIMATED_BYTES_PER_BLOCKED_REQUEST);
+        }
+        
+        // Built on this IO thread so the UI thread only injects it; outside the decision time
+        if (response == null && request.isForMainFrame() && BlockedAdsBlockingState.isEnabled()) {
+            prepareCosmeticScript(request);
+        }
+        
+        // Fetched outside the decision time above: it waits on the network
+        if (response == null && BlockedAdsPlayerResponses.isEnabled() && BlockedAdsBlockingState.isEnabled() && !pageAllowed) {
+            response = BlockedAdsPlayerResponses.rewrite(request);
+        }
+        return response;
+    }
+    
+    private void prepareCosmeticScript(WebResourceRequest request) {
+        String host = request.getUrl() != null ? BlockedAdsRequestContext.extractHost(request.getUrl().toString()) : null;
+        if (host != null) {
+            BlockedAdsFilterEngine engine = engine();
+            preparedScript = new PreparedScript(host, engine, engine.getCosmeticScript(host));
+        }
+    }
+    
+    private WebResourceResponse blockedResponse(WebResourceRequest request) {
+        BlockedAdsRequestLog log = BlockedAdsRequestLog.current();
+        if (request.getUrl() == null) {
+            return null;
+        }
+        if (!BlockedAdsBlockingState.isEnabled() || pageAllowed) {
+            if (log != null) {
+                log.record(request.getUrl().toString(), BlockedAdsRequestLog.Verdict.UNFILTERED,
+                    BlockedAdsFilterEngine.NO_RULE, null, tabId);
+            }
+            return null;
+        }
+        return filter(BlockedAdsRequestContext.fromRequest(request, pageHost), log);
+    }
+    
+    /**
+     * Get the response to serve for a service worker request, or null to let it load normally
+     * A worker serves every page of its origin, so the first party comes from the request's
+     * Referer (the worker script) and the paused-site check runs per request. Worker requests
+     * belong to no navigation: they are logged and counted in the stats, not in page telemetry.
+     */
+    public WebResourceResponse interceptServiceWorker(WebResourceRequest request) {
+        BlockedAdsRequestLog log = BlockedAdsRequestLog.current();
+        if (request.getUrl() == null) {
+            return null;
+        }
+        // Workers also fetch in the background, with no page start to reload dropped lists
+        BlockedAdsFilterLoader.ensureLoaded();
+        BlockedAdsRequestContext context = BlockedAdsRequestContext.fromRequest(request, null);
+        if (!BlockedAdsBlockingState.isEnabled() || BlockedAdsSiteAllowlist.isAllowed(context.getDocumentHost())) {
+            if (log != null) {
+                log.record(context.getUrl(), BlockedAdsRequestLog.Verdict.UNFILTERED, BlockedAdsFilterEngine.NO_RULE, null, tabId);
+            }
+            return null;
+        }
+        return filter(context, log);
+    }
+    
+    private WebResourceResponse filter(BlockedAdsRequestContext context, BlockedAdsRequestLog log) {
+        BlockedAdsFilterEngine engine = engine();
+        int rule = engine.matchRule(context);
+        if (log != null) {
+            log.record(context.getUrl(), BlockedAdsRequestLog.verdictFor(rule), rule, engine, tabId);
+        }
+        if (rule < 0) {
+            return null;
+        }
+        
+        if (stats != null) {
+            stats.incrementAdsBlocked();
+            stats.addDataSaved(ESTIMATED_MB_PER_BLOCKED_REQUEST);
+        }
+        
+        // Serve a surrogate or an empty response of the right type instead
+        return BlockedAdsSurrogates.responseFor(context);
+    }
+    
+    /**
+     * Get the metrics a request counts in; only a main-frame request opens them before
+     * onPageStarted. Requests between onPageFinished and the next navigation (late XHRs,
+     * pings) belong to no page and are not counted, or they would be charged to the next one
+     */
+    private BlockedAdsPageMetrics currentMetrics(boolean mainFrame) {
+        BlockedAdsPageMetrics metrics;
+        while ((metrics = pageMetrics.get()) == null && mainFrame) {
+            pageMetrics.compareAndSet(null, new BlockedAdsPageMetrics());
+        }
+        return metrics;
+    }
+    
+    private BlockedAdsFilterEngine engine() {
+        return filterEngine != null ? filterEngine : BlockedAdsFilterEngine.getShared();
+    }
+}
@@ -0,0 +1,208 @@
+package com.blockedads.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Network Request Log
+ * A fixed-size ring of the latest decisions for a live logger view: time, URL, verdict,
+ * deciding rule and tab. WebView IO threads write records without locks or allocation;
+ * each claims a slot with one atomic increment and copies its URL into a shared char ring.
+ * Readers take snapshots, validating every record against its slot's stamp, so a record
+ * overwritten mid-copy is dropped rather than torn. The buffers exist only while the log
+ * is open: closed, a request pays the single volatile read of current(). Each record keeps
+ * the engine that decided it, so its rule text survives a list reload.
+ */
+public final class BlockedAdsRequestLog {
+    
+    static final int CAPACITY = 4096; // Records; a power of two
+    static final int URL_CHARS = 1 << 19; // Shared by the URLs of all records; a power of two
+    static final int MAX_URL_LENGTH = 2048; // Longer URLs (data: URIs) are cut
+    
+    public enum Verdict {
+        /** No rule matched */
+        ALLOWED,
+        /** A blocking rule matched */
+        BLOCKED,
+        /** A blocking rule matched, but an @@ exception rule overrode it */
+        EXCEPTED,
+        /** Not filtered: blocking is off or the page is on a paused site */
+        UNFILTERED
+    }
+    
+    private static final Verdict[] VERDICTS = Verdict.values();
+    private static volatile BlockedAdsRequestLog current;
+    private static final AtomicInteger tabIds = new AtomicInteger();
+    
+    // Per slot: [0] time, [1] URL position << 16 | URL length, [2] rule << 32 | tab << 8 | verdict.
+    // stamps[slot] is the sequence number + 1 of the record it holds, 0 while one is written.
+    private final AtomicLongArray records = new AtomicLongArray(CAPACITY * 3);
+    private final AtomicLongArray stamps = new AtomicLongArray(CAPACITY);
+    private final AtomicReferenceArray<BlockedAdsFilterEngine> engines = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicLong sequence = new AtomicLong();
+    private final char[] urls = new char[URL_CHARS];
+    private final AtomicLong urlPosition = new AtomicLong(); // Total chars ever written
+    
+    private BlockedAdsRequestLog() {
+    }
+    
+    /**
+     * Get the open log, or null when closed; the only cost requests pay while it is closed
+     */
+    public static BlockedAdsRequestLog current() {
+        return current;
+    }
+    
+    /**
+     * Open the log for a viewer, keeping the records of an already open one
+     */
+    public static synchronized BlockedAdsRequestLog open() {
+        if (current == null) {
+            current = new BlockedAdsRequestLog();
+        }
+        return current;
+    }
+    
+    /**
+     * Close the log and release its buffers
+     */
+    public static synchronized void close() {
+        current = null;
+    }
+    
+    /**
+     * Get an id for a new tab (one per request interceptor)
+     */
+    static int nextTabId() {
+        return tabIds.incrementAndGet();
+    }
+    
+    /**
+     * Get the verdict for a BlockedAdsFilterEngine.matchRule() result
+     */
+    static Verdict verdictFor(int rule) {
+        if (rule == BlockedAdsFilterEngine.NO_RULE) {
+            return Verdict.ALLOWED;
+        }
+        return rule >= 0 ? Verdict.BLOCKED : Verdict.EXCEPTED;
+    }
+    
+    /**
+     * Append a record (any thread, no allocation); the rule is one of the engine's, or NO_RULE
+     * with a null engine
+     */
+    void record(String url, Verdict verdict, int rule, BlockedAdsFilterEngine engine, int tab) {
+        long seq = sequence.getAndIncrement();
+        int slot = (int) (seq & (CAPACITY - 1));
+        int length = Math.min(url.length(), MAX_URL_LENGTH);
+        long position = urlPosition.getAndAdd(length);
+        
+        // Invalidate the slot first: lazySet() keeps each store after the previous ones
+        stamps.set(slot, 0);
+        int start = (int) (position & (URL_CHARS - 1));
+        int first = Math.min(length, URL_CHARS - start);
+        url.getChars(0, first, urls, start);
+        url.getChars(first, length, urls, 0);
+        records.lazySet(slot * 3, System.currentTimeMillis());
+        records.lazySet(slot * 3 + 1, position << 16 | length);
+        records.lazySet(slot * 3 + 2, (long) rule << 32 | (tab & 0xFFFFFFL) << 8 | verdict.ordinal());
+        engines.lazySet(slot, engine);
+        stamps.lazySet(slot, seq + 1);
+    }
+    
+    /**
+     * Get the sequence number the next record will have
+     */
+    public long getSequence() {
+        return sequence.get();
+    }
+    
+    /**
+     * Copy the records after a sequence number, oldest first; records overwritten before
+     * they were read are skipped. Pass -1 for all, then the last entry's sequence to poll
+     */
+    public List<Entry> snapshot(long after) {
+        long end = sequence.get();
+        long from = Math.max(after + 1, Math.max(0, end - CAPACITY));
+        List<Entry> entries = new ArrayList<>((int) Math.max(0, end - from));
+        for (long seq = from; seq < end; seq++) {
+            int slot = (int) (seq & (CAPACITY - 1));
+            if (stamps.get(slot) != seq + 1) {
+                continue; // Still being written, or already overwritten
+            }
+            long time = records.get(slot * 3);
+            long url = records.get(slot * 3 + 1);
+            long decision = records.get(slot * 3 + 2);
+            BlockedAdsFilterEngine engine = engines.get(slot);
+            if (stamps.get(slot) != seq + 1) {
+                continue;
+            }
+            long position = url >>> 16;
+            int length = (int) (url & 0xFFFF);
+            char[] text = new char[length];
+            int start = (int) (position & (URL_CHARS - 1));
+            int first = Math.min(length, URL_CHARS - start);
+            System.arraycopy(urls, start, text, 0, first);
+            System.arraycopy(urls, 0, text, first, length - first);
+            if (urlPosition.get() - position > URL_CHARS) {
+                continue; // Its URL was overwritten by newer ones
+            }
+            int rule = (int) (decision >> 32);
+            entries.add(new Entry(seq, time, new String(text), VERDICTS[(int) (decision & 0xFF)],
+                (int) ((decision >>> 8) & 0xFFFFFF), engine == null ? null : engine.describeRule(rule)));
+        }
+        return entries;
+    }
+    
+    /**
+     * One logged request
+     */
+    public static final class Entry {
+        final long sequence;
+        final long timeMillis;
+        final String url;
+        final Verdict verdict;
+        final int tab;
+        final String ruleText;
+        
+        Entry(long sequence, long timeMillis, String url, Verdict verdict, int tab, String ruleText) {
+            this.sequence = sequence;
+            this.timeMillis = timeMillis;
+            this.url = url;
+            this.verdict = verdict;
+            this.tab = tab;
+            this.ruleText = ruleText;
+        }
+        
+        public long getSequence() {
+            return sequence;
+        }
+        
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+        
+        public String getUrl() {
+            return url;
+        }
+        
+        public Verdict getVerdict() {
+            return verdict;
+        }
+        
+        public int getTab() {
+            return tab;
+        }
+        
+        /**
+         * Text of the deciding rule, from the engine that decided, or null
+         */
+        public String getRule() {
+            return ruleText;
+        }
+    }
+}
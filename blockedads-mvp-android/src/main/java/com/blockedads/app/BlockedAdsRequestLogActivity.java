@@ -0,0 +1,131 @@
+package com.blockedads.app;
+
+import android.content.Intent;
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.widget.Button;
+import android.widget.LinearLayout;
+import android.widget.ScrollView;
+import android.widget.TextView;
+import androidx.appcompat.app.AppCompatActivity;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Request Log Viewer
+ * Opens the BlockedAdsRequestLog while it exists and polls its snapshots, newest first, to
+ * see what a broken site had blocked. Pages browsed from here (or from any activity while
+ * this one is in the back stack) are logged; leaving the viewer closes the log.
+ */
+public class BlockedAdsRequestLogActivity extends AppCompatActivity {
+    
+    private static final long POLL_INTERVAL_MS = 1000;
+    private static final int MAX_SHOWN = 500;
+    
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ArrayDeque<String> lines = new ArrayDeque<>();
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss", Locale.US);
+    private BlockedAdsRequestLog log;
+    private long lastSequence = -1;
+    private TextView logText;
+    
+    private final Runnable poll = new Runnable() {
+        @Override
+        public void run() {
+            refresh();
+            handler.postDelayed(this, POLL_INTERVAL_MS);
+        }
+    };
+    
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        log = BlockedAdsRequestLog.open();
+        
+        LinearLayout layout = new LinearLayout(this);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        
+        Button browseBtn = new Button(this);
+        browseBtn.setText("🌐 Browse With Logging");
+        browseBtn.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                startActivity(new Intent(BlockedAdsRequestLogActivity.this, BlockedAdsWebViewActivity.class));
+            }
+        });
+        layout.addView(browseBtn);
+        
+        logText = new TextView(this);
+        logText.setTypeface(Typeface.MONOSPACE);
+        logText.setTextSize(11);
+        logText.setText("Waiting for requests…");
+        ScrollView scroll = new ScrollView(this);
+        scroll.addView(logText);
+        layout.addView(scroll, new LinearLayout.LayoutParams(
+            LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.MATCH_PARENT));
+        setContentView(layout);
+    }
+    
+    @Override
+    protected void onResume() {
+        super.onResume();
+        handler.post(poll);
+    }
+    
+    @Override
+    protected void onPause() {
+        super.onPause();
+        handler.removeCallbacks(poll);
+    }
+    
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (isFinishing()) {
+            BlockedAdsRequestLog.close();
+        }
+    }
+    
+    /**
+     * Add the records logged since the last poll
+     */
+    private void refresh() {
+        List<BlockedAdsRequestLog.Entry> entries = log.snapshot(lastSequence);
+        if (entries.isEmpty()) {
+            return;
+        }
+        for (BlockedAdsRequestLog.Entry entry : entries) {
+            lines.addFirst(format(entry));
+            if (lines.size() > MAX_SHOWN) {
+                lines.removeLast();
+            }
+        }
+        lastSequence = entries.get(entries.size() - 1).getSequence();
+        
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        logText.setText(text);
+    }
+    
+    /**
+     * One line per record: time, verdict, tab, URL, then the deciding rule if any
+     */
+    private String format(BlockedAdsRequestLog.Entry entry) {
+        StringBuilder line = new StringBuilder()
+            .append(timeFormat.format(new Date(entry.getTimeMillis()))).append(' ')
+            .append(entry.getVerdict()).append(" #").append(entry.getTab()).append(' ')
+            .append(entry.getUrl());
+        if (entry.getRule() != null) {
+            line.append("\n    ").append(entry.getRule());
+        }
+        return line.toString();
+    }
+}
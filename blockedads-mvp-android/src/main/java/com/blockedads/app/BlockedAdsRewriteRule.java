@@ -0,0 +1,142 @@
+package com.blockedads.app;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * URL Rewrite Rule
+ * A $urlskip or $removeparam rule as BlockedAdsUrlRewriter applies it: the navigations it
+ * applies to and the query parameter it takes. $urlskip only supports the ?name step, and
+ * $removeparam a name or a /regex/ matched against name=value (no ~inverted rules).
+ */
+final class BlockedAdsRewriteRule {
+    
+    final BlockedAdsFilterRule filter; // null: every URL
+    final boolean exception;
+    final boolean skip; // $urlskip; otherwise $removeparam
+    final String name; // Parameter name, or null
+    final Pattern regex; // Matched against name=value when name is null; both null: every parameter
+    
+    private BlockedAdsRewriteRule(BlockedAdsFilterRule filter, boolean exception, boolean skip, String name, Pattern regex) {
+        this.filter = filter;
+        this.exception = exception;
+        this.skip = skip;
+        this.name = name;
+        this.regex = regex;
+    }
+    
+    /**
+     * Check if a network filter line is a $removeparam or $urlskip rule
+     */
+    static boolean isRewriteRule(String rule) {
+        return rewriteOption(rule) >= 0;
+    }
+    
+    // Index of the removeparam or urlskip option name, or -1
+    private static int rewriteOption(String rule) {
+        for (String option : new String[] {"removeparam", "urlskip"}) {
+            for (int at = rule.indexOf(option); at > 0; at = rule.indexOf(option, at + 1)) {
+                char before = rule.charAt(at - 1);
+                int end = at + option.length();
+                if ((before == '$' || before == ',') && (end == rule.length() || rule.charAt(end) == '=' || rule.charAt(end) == ',')) {
+                    return at;
+                }
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Parse a rule as written in the lists; returns null if it is malformed or unsupported
+     */
+    static BlockedAdsRewriteRule parse(String line) {
+        String rule = line.trim();
+        int option = rewriteOption(rule);
+        int dollar = option < 0 ? -1 : rule.lastIndexOf('$', option);
+        if (dollar < 0) {
+            return null;
+        }
+        boolean exception = rule.startsWith("@@");
+        String body = rule.substring(exception ? 2 : 0, dollar);
+        
+        // Commas inside a value are escaped as \, like in uBlock Origin
+        String rewrite = null;
+        StringBuilder others = new StringBuilder();
+        for (String part : rule.substring(dollar + 1).split("(?<!\\\\),")) {
+            if (part.startsWith("removeparam") || part.startsWith("urlskip")) {
+                if (rewrite != null) {
+                    return null;
+                }
+                rewrite = part.replace("\\,", ",");
+            } else if (!part.isEmpty()) {
+                others.append(others.length() == 0 ? "" : ",").append(part);
+            }
+        }
+        
+        BlockedAdsFilterRule filter = null;
+        if (!(body.isEmpty() || body.equals("*")) || others.length() > 0) {
+            filter = documentFilter(body.isEmpty() ? "*" : body, others.toString());
+            if (filter == null) {
+                return null;
+            }
+        }
+        
+        int equals = rewrite.indexOf('=');
+        String value = equals < 0 ? "" : rewrite.substring(equals + 1);
+        if (rewrite.startsWith("urlskip")) {
+            // Only the ?name step: the destination is a query parameter
+            if (value.length() < 2 || value.charAt(0) != '?' || value.indexOf(' ') >= 0) {
+                return null;
+            }
+            return new BlockedAdsRewriteRule(filter, exception, true, value.substring(1), null);
+        }
+        
+        String name = null;
+        Pattern regex = null;
+        if (value.length() > 2 && value.charAt(0) == '/' && value.lastIndexOf('/') > 0) {
+            int close = value.lastIndexOf('/');
+            String flags = value.substring(close + 1);
+            if (!flags.isEmpty() && !flags.equals("i")) {
+                return null;
+            }
+            try {
+                regex = Pattern.compile(value.substring(1, close), flags.isEmpty() ? 0 : Pattern.CASE_INSENSITIVE);
+            } catch (PatternSyntaxException e) {
+                return null;
+            }
+        } else if (!value.isEmpty()) {
+            if (value.charAt(0) == '~') {
+                return null; // Inverted rules (remove all but one) are not supported
+            }
+            name = value;
+        }
+        return new BlockedAdsRewriteRule(filter, exception, false, name, regex);
+    }
+    
+    /**
+     * Parse the URL part of a rule so it matches navigations: without type options it applies
+     * to documents, with them only if they include documents
+     */
+    private static BlockedAdsFilterRule documentFilter(String body, String options) {
+        BlockedAdsFilterRule filter = BlockedAdsFilterRule.parse(options.isEmpty() ? body : body + "$" + options);
+        if (filter != null && filter.typeMask == BlockedAdsFilterRule.DEFAULT_TYPES) {
+            filter = BlockedAdsFilterRule.parse(body + "$" + (options.isEmpty() ? "" : options + ",") + "document");
+        }
+        if (filter == null || filter.isException()
+                || (filter.typeMask & BlockedAdsRequestContext.TYPE_DOCUMENT) == 0) {
+            return null;
+        }
+        return filter;
+    }
+    
+    boolean appliesTo(BlockedAdsRequestContext context) {
+        return filter == null || filter.matches(context);
+    }
+    
+    boolean matchesParameter(String url, int start, int nameEnd, int end) {
+        if (name != null) {
+            return nameEnd - start == name.length() && url.regionMatches(start, name, 0, name.length());
+        }
+        return regex == null || regex.matcher(url).region(start, end).find();
+    }
+}
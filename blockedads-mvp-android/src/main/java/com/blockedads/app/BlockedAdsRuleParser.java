@@ -0,0 +1,113 @@
+package com.blockedads.app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming Filter List Parser
+ * Splits UTF-8 list text into lines at the byte level and hands each rule line to a sink,
+ * so a list is never held in memory as text. Comment (!), header ([) and blank lines are
+ * skipped before any String is created. '\n' never occurs inside a multi-byte UTF-8
+ * sequence, so decoding line by line is safe across buffer boundaries.
+ */
+public final class BlockedAdsRuleParser {
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    /**
+     * Receives each rule line in list order
+     */
+    public interface RuleSink {
+        void onRule(String line);
+    }
+    
+    private BlockedAdsRuleParser() {
+    }
+    
+    /**
+     * Parse a list from a stream, reading it in fixed-size blocks
+     */
+    public static void parse(InputStream in, RuleSink sink) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length = 0;
+        int read;
+        while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            int consumed = parseLines(buffer, 0, length, sink, false);
+            
+            // Keep the partial last line; grow only for lines longer than the buffer
+            length -= consumed;
+            if (consumed > 0) {
+                System.arraycopy(buffer, consumed, buffer, 0, length);
+            } else if (length == buffer.length) {
+                byte[] larger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, larger, 0, length);
+                buffer = larger;
+            }
+        }
+        parseLines(buffer, 0, length, sink, true);
+    }
+    
+    /**
+     * Parse a list from a buffer (e.g. a memory-mapped file) without copying it
+     */
+    public static void parse(ByteBuffer list, RuleSink sink) {
+        if (list.hasArray()) {
+            int start = list.arrayOffset() + list.position();
+            parseLines(list.array(), start, start + list.remaining(), sink, true);
+            return;
+        }
+        
+        byte[] line = new byte[256];
+        int length = 0;
+        while (list.hasRemaining()) {
+            byte b = list.get();
+            if (b == '\n') {
+                emitLine(line, 0, length, sink);
+                length = 0;
+                continue;
+            }
+            if (length == line.length) {
+                byte[] larger = new byte[line.length * 2];
+                System.arraycopy(line, 0, larger, 0, length);
+                line = larger;
+            }
+            line[length++] = b;
+        }
+        emitLine(line, 0, length, sink);
+    }
+    
+    /**
+     * Emit every complete line in [from, to); returns bytes consumed relative to from
+     */
+    private static int parseLines(byte[] bytes, int from, int to, RuleSink sink, boolean endOfInput) {
+        int lineStart = from;
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '\n') {
+                emitLine(bytes, lineStart, i, sink);
+                lineStart = i + 1;
+            }
+        }
+        if (endOfInput && lineStart < to) {
+            emitLine(bytes, lineStart, to, sink);
+            lineStart = to;
+        }
+        return lineStart - from;
+    }
+    
+    private static void emitLine(byte[] bytes, int start, int end, RuleSink sink) {
+        // Trim ASCII whitespace (including the \r of CRLF lists) without decoding
+        while (start < end && bytes[start] <= ' ' && bytes[start] >= 0) {
+            start++;
+        }
+        while (end > start && bytes[end - 1] <= ' ' && bytes[end - 1] >= 0) {
+            end--;
+        }
+        if (start == end || bytes[start] == '!' || bytes[start] == '[') {
+            return;
+        }
+        sink.onRule(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+    }
+}
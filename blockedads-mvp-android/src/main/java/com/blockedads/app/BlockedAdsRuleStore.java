@@ -0,0 +1,295 @@
+package com.blockedads.app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Compact Network Rule Store
+ * Rules live in parallel primitive arrays with their options packed into one int; hosts,
+ * patterns and $domain= labels are stored once each in a shared byte[] string pool.
+ * ABP patterns are matched directly against the URL, so only /regex/ rules hold a Pattern;
+ * those BlockedAdsRegexSet supports are also matched together in one pass of its DFA.
+ */
+final class BlockedAdsRuleStore implements BlockedAdsRegexSet.Candidates {
+    
+    // Option bits: request types in bits 0-10, the party mask in bits 11-12, then the
+    // BlockedAdsPatternMatcher flags
+    static final int PARTY_SHIFT = 11;
+    static final int FLAG_REGEX = 1 << 18;
+    static final int FLAG_REGEX_SET = 1 << 19; // The regex is matched by regexSet, not its Pattern
+    
+    private final byte[] pool;
+    private final int[] options;
+    private final int[] patterns; // Pool offset of the pattern, or index into regexes for FLAG_REGEX
+    private final int[] domainStart; // Rule i owns domains[domainStart[i] .. domainStart[i + 1])
+    private final int[] domains; // Pool offsets of $domain= labels; ~offset for ~excluded labels
+    private final Pattern[] regexes;
+    private final BlockedAdsRegexSet regexSet;
+    private final BlockedAdsFilterRule[] fallbackRules; // Rules with non-ASCII hosts or patterns
+    
+    // Rules are sorted by anchor host: host h owns rules [hostRuleStart[h] .. hostRuleStart[h + 1]),
+    // and generic rules follow the last host
+    private final int[] hostTable; // Open addressing over host indexes + 1, 0 marks a free slot
+    private final int[] hostNames;
+    private final int[] hostRuleStart;
+    private final int documentRuleCount;
+    
+    private BlockedAdsRuleStore(BlockedAdsRuleStoreBuilder builder, int[] hostTable, int[] hostRuleStart) {
+        this.pool = Arrays.copyOf(builder.pool, builder.poolSize);
+        this.options = Arrays.copyOf(builder.options, builder.ruleCount);
+        this.patterns = Arrays.copyOf(builder.patterns, builder.ruleCount);
+        this.domainStart = Arrays.copyOf(builder.domainStart, builder.ruleCount + 1);
+        this.domains = Arrays.copyOf(builder.domains, builder.domainCount);
+        this.regexes = builder.regexes.toArray(new Pattern[0]);
+        builder.regexSet.compile();
+        this.regexSet = builder.regexSet;
+        this.fallbackRules = builder.fallbackRules.toArray(new BlockedAdsFilterRule[0]);
+        this.hostTable = hostTable;
+        this.hostNames = Arrays.copyOf(builder.hostNames, builder.hostCount);
+        this.hostRuleStart = hostRuleStart;
+        int documentRules = builder.documentRuleCount;
+        for (BlockedAdsFilterRule rule : fallbackRules) {
+            if ((rule.typeMask & BlockedAdsRequestContext.TYPE_DOCUMENT) != 0) {
+                documentRules++;
+            }
+        }
+        this.documentRuleCount = documentRules;
+    }
+    
+    /**
+     * Build a store from parsed rules; rules with an anchor host are indexed by it
+     */
+    static BlockedAdsRuleStore build(List<BlockedAdsFilterRule> rules) {
+        Map<String, List<BlockedAdsFilterRule>> byHost = new LinkedHashMap<>();
+        List<BlockedAdsFilterRule> generic = new ArrayList<>();
+        for (BlockedAdsFilterRule rule : rules) {
+            String host = rule.getAnchorHost();
+            if (host == null || !BlockedAdsRuleStoreBuilder.isPoolable(host)) {
+                generic.add(rule);
+                continue;
+            }
+            List<BlockedAdsFilterRule> hostRules = byHost.get(host);
+            if (hostRules == null) {
+                hostRules = new ArrayList<>(1);
+                byHost.put(host, hostRules);
+            }
+            hostRules.add(rule);
+        }
+        
+        BlockedAdsRuleStoreBuilder builder = new BlockedAdsRuleStoreBuilder(rules.size(), byHost.size());
+        int[] hostTable = new int[Math.max(2, Integer.highestOneBit(Math.max(1, byHost.size())) << 2)];
+        int[] hostRuleStart = new int[byHost.size() + 1];
+        for (Map.Entry<String, List<BlockedAdsFilterRule>> entry : byHost.entrySet()) {
+            int host = builder.addHost(entry.getKey());
+            int slot = hash(entry.getKey(), 0) & (hostTable.length - 1);
+            while (hostTable[slot] != 0) {
+                slot = (slot + 1) & (hostTable.length - 1);
+            }
+            hostTable[slot] = host + 1;
+            hostRuleStart[host] = builder.ruleCount;
+            for (BlockedAdsFilterRule rule : entry.getValue()) {
+                builder.addRule(rule);
+            }
+        }
+        hostRuleStart[byHost.size()] = builder.ruleCount;
+        for (BlockedAdsFilterRule rule : generic) {
+            builder.addRule(rule);
+        }
+        return new BlockedAdsRuleStore(builder, hostTable, hostRuleStart);
+    }
+    
+    int getRuleCount() {
+        return options.length + fallbackRules.length;
+    }
+    
+    boolean hasDocumentRules() {
+        return documentRuleCount > 0;
+    }
+    
+    /**
+     * Approximate heap footprint of the store's arrays (Pattern objects of /regex/ rules excluded)
+     */
+    long getHeapBytes() {
+        long bytes = 0;
+        for (int[] array : new int[][] {options, patterns, domainStart, domains, hostTable, hostNames, hostRuleStart}) {
+            bytes += 16 + 4L * array.length;
+        }
+        return bytes + 16 + pool.length + 16 + 4L * regexes.length + 16 + 4L * fallbackRules.length;
+    }
+    
+    /**
+     * Release caches rebuilt on demand; returns the approximate bytes released
+     */
+    long trimCaches() {
+        return regexSet.trimCache();
+    }
+    
+    /**
+     * Check if any rule matches: rules for the host and its parent domains, then generic rules
+     */
+    boolean matches(BlockedAdsRequestContext context) {
+        return match(context) >= 0;
+    }
+    
+    /**
+     * Get the id of the first matching rule, or -1; see describe()
+     */
+    int match(BlockedAdsRequestContext context) {
+        String host = context.getHost();
+        int rule;
+        for (int from = 0; from >= 0 && from < host.length(); from = nextLabel(host, from)) {
+            int index = findHost(host, from);
+            if (index >= 0 && (rule = matchRange(hostRuleStart[index], hostRuleStart[index + 1], context)) >= 0) {
+                return rule;
+            }
+        }
+        if ((rule = matchRange(hostRuleStart[hostNames.length], options.length, context)) >= 0) {
+            return rule;
+        }
+        if (!regexSet.isEmpty() && (rule = regexSet.match(context, this)) >= 0) {
+            return rule;
+        }
+        for (int i = 0; i < fallbackRules.length; i++) {
+            if (fallbackRules[i].matches(context)) {
+                return options.length + i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Get the text of a rule by id: its pattern as written, without the $options
+     */
+    String describe(int rule) {
+        if (rule < 0 || rule >= getRuleCount()) {
+            return null;
+        }
+        if (rule >= options.length) {
+            return fallbackRules[rule - options.length].getSource();
+        }
+        int opts = options[rule];
+        if ((opts & FLAG_REGEX) != 0) {
+            return "/" + regexes[patterns[rule]].pattern() + "/";
+        }
+        int pattern = patterns[rule];
+        StringBuilder text = new StringBuilder(length(pattern) + 3);
+        if ((opts & BlockedAdsPatternMatcher.FLAG_HOST_ANCHOR) != 0) {
+            text.append("||");
+        } else if ((opts & BlockedAdsPatternMatcher.FLAG_START_ANCHOR) != 0) {
+            text.append('|');
+        }
+        for (int i = 0; i < length(pattern); i++) {
+            text.append((char) pool[pattern + 2 + i]);
+        }
+        if ((opts & BlockedAdsPatternMatcher.FLAG_END_ANCHOR) != 0) {
+            text.append('|');
+        }
+        return text.toString();
+    }
+    
+    private int matchRange(int from, int to, BlockedAdsRequestContext context) {
+        for (int rule = from; rule < to; rule++) {
+            if (matchesRule(rule, context)) {
+                return rule;
+            }
+        }
+        return -1;
+    }
+    
+    private boolean matchesRule(int rule, BlockedAdsRequestContext context) {
+        int opts = options[rule];
+        if ((opts & FLAG_REGEX_SET) != 0 || !accept(rule, context)) {
+            return false;
+        }
+        if ((opts & FLAG_REGEX) != 0) {
+            return regexes[patterns[rule]].matcher(context.getUrl()).find();
+        }
+        int pattern = patterns[rule];
+        return BlockedAdsPatternMatcher.matches(pool, pattern + 2, pattern + 2 + length(pattern), opts, context.getUrl());
+    }
+    
+    /**
+     * Check a rule's type, party and $domain= options (the regex set calls this for its matches)
+     */
+    @Override
+    public boolean accept(int rule, BlockedAdsRequestContext context) {
+        int opts = options[rule];
+        if ((opts & context.getType()) == 0) {
+            return false;
+        }
+        int party = (opts >>> PARTY_SHIFT) & BlockedAdsFilterRule.PARTY_ANY;
+        if (party != BlockedAdsFilterRule.PARTY_ANY
+                && (party == BlockedAdsFilterRule.PARTY_THIRD) != context.isThirdParty()) {
+            return false;
+        }
+        return domainStart[rule] == domainStart[rule + 1] || matchesDomain(rule, context.getDocumentHost());
+    }
+    
+    private boolean matchesDomain(int rule, String documentHost) {
+        boolean hasInclude = false;
+        boolean included = false;
+        for (int i = domainStart[rule]; i < domainStart[rule + 1]; i++) {
+            int domain = domains[i];
+            if (domain < 0) {
+                if (documentHost != null && isSubdomainOf(documentHost, ~domain)) {
+                    return false;
+                }
+            } else {
+                hasInclude = true;
+                included |= documentHost != null && isSubdomainOf(documentHost, domain);
+            }
+        }
+        return !hasInclude || included;
+    }
+    
+    private int findHost(String host, int from) {
+        int mask = hostTable.length - 1;
+        for (int slot = hash(host, from) & mask; hostTable[slot] != 0; slot = (slot + 1) & mask) {
+            int index = hostTable[slot] - 1;
+            if (poolEquals(hostNames[index], host, from)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+    
+    private boolean poolEquals(int ref, String value, int from) {
+        int length = length(ref);
+        if (value.length() - from != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (pool[ref + 2 + i] != value.charAt(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private boolean isSubdomainOf(String host, int ref) {
+        int length = length(ref);
+        int from = host.length() - length;
+        return from >= 0 && poolEquals(ref, host, from) && (from == 0 || host.charAt(from - 1) == '.');
+    }
+    
+    private int length(int ref) {
+        return ((pool[ref] & 0xFF) << 8) | (pool[ref + 1] & 0xFF);
+    }
+    
+    private static int nextLabel(String host, int from) {
+        int dot = host.indexOf('.', from);
+        return dot >= 0 ? dot + 1 : -1;
+    }
+    
+    private static int hash(String value, int from) {
+        int h = 0;
+        for (int i = from; i < value.length(); i++) {
+            h = 31 * h + value.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,155 @@
+package com.blockedads.app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Compact Network Rule Store Builder
+ * Appends rules to growing arrays for BlockedAdsRuleStore; the pool interns each distinct
+ * string once, and rules it cannot pool (non-ASCII or overlong strings) are kept as parsed.
+ */
+final class BlockedAdsRuleStoreBuilder {
+    
+    // Pool entries are a 2-byte length followed by the ASCII bytes
+    private static final int MAX_POOL_STRING = 0xFFFF;
+    
+    final Map<String, Integer> interned = new HashMap<>();
+    byte[] pool = new byte[1024];
+    int poolSize;
+    final int[] options;
+    final int[] patterns;
+    final int[] domainStart;
+    int[] domains = new int[16];
+    int domainCount;
+    final List<Pattern> regexes = new ArrayList<>();
+    final BlockedAdsRegexSet regexSet = new BlockedAdsRegexSet();
+    final List<BlockedAdsFilterRule> fallbackRules = new ArrayList<>();
+    final int[] hostNames;
+    int hostCount;
+    int ruleCount;
+    int documentRuleCount;
+    
+    BlockedAdsRuleStoreBuilder(int ruleCapacity, int hostCapacity) {
+        options = new int[ruleCapacity];
+        patterns = new int[ruleCapacity];
+        domainStart = new int[ruleCapacity + 1];
+        hostNames = new int[hostCapacity];
+    }
+    
+    int addHost(String host) {
+        hostNames[hostCount] = intern(host);
+        return hostCount++;
+    }
+    
+    void addRule(BlockedAdsFilterRule rule) {
+        if (!isPoolable(rule)) {
+            fallbackRules.add(rule);
+            return;
+        }
+        
+        String body = rule.body;
+        int opts = rule.typeMask | (rule.partyMask << BlockedAdsRuleStore.PARTY_SHIFT);
+        if (rule.matchCase) {
+            opts |= BlockedAdsPatternMatcher.FLAG_MATCH_CASE;
+        }
+        
+        int start = 0;
+        int end = body.length();
+        if (body.startsWith("||")) {
+            opts |= BlockedAdsPatternMatcher.FLAG_HOST_ANCHOR;
+            start = 2;
+        } else if (body.startsWith("|")) {
+            opts |= BlockedAdsPatternMatcher.FLAG_START_ANCHOR;
+            start = 1;
+        }
+        if (end > start && body.charAt(end - 1) == '|') {
+            opts |= BlockedAdsPatternMatcher.FLAG_END_ANCHOR;
+            end--;
+        }
+        
+        if (rule.regex) {
+            opts = (opts & ~BlockedAdsPatternMatcher.ANCHOR_FLAGS) | BlockedAdsRuleStore.FLAG_REGEX;
+            patterns[ruleCount] = regexes.size();
+            Pattern pattern = rule.pattern();
+            regexes.add(pattern);
+            if (regexSet.add(ruleCount, pattern.pattern(), rule.matchCase, pattern, rule.typeMask)) {
+                opts |= BlockedAdsRuleStore.FLAG_REGEX_SET;
+            }
+        } else {
+            patterns[ruleCount] = intern(body.substring(start, end));
+        }
+        options[ruleCount] = opts;
+        if ((opts & BlockedAdsRequestContext.TYPE_DOCUMENT) != 0) {
+            documentRuleCount++;
+        }
+        
+        if (rule.includeDomains != null) {
+            for (String domain : rule.includeDomains) {
+                addDomain(intern(domain));
+            }
+        }
+        if (rule.excludeDomains != null) {
+            for (String domain : rule.excludeDomains) {
+                addDomain(~intern(domain));
+            }
+        }
+        domainStart[++ruleCount] = domainCount;
+    }
+    
+    private void addDomain(int ref) {
+        if (domainCount == domains.length) {
+            domains = Arrays.copyOf(domains, domainCount * 2);
+        }
+        domains[domainCount++] = ref;
+    }
+    
+    private int intern(String value) {
+        Integer existing = interned.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        int ref = poolSize;
+        if (poolSize + 2 + value.length() > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + 2 + value.length()));
+        }
+        pool[poolSize++] = (byte) (value.length() >>> 8);
+        pool[poolSize++] = (byte) value.length();
+        for (int i = 0; i < value.length(); i++) {
+            pool[poolSize++] = (byte) value.charAt(i);
+        }
+        interned.put(value, ref);
+        return ref;
+    }
+    
+    private static boolean isPoolable(BlockedAdsFilterRule rule) {
+        if (!rule.regex && !isPoolable(rule.body)) {
+            return false;
+        }
+        for (String[] labels : new String[][] {rule.includeDomains, rule.excludeDomains}) {
+            if (labels != null) {
+                for (String label : labels) {
+                    if (!isPoolable(label)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+    
+    static boolean isPoolable(String value) {
+        if (value.length() > MAX_POOL_STRING) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 128) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,49 @@
+package com.blockedads.app;
+
+import android.content.Context;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import androidx.webkit.ServiceWorkerClientCompat;
+import androidx.webkit.ServiceWorkerControllerCompat;
+import androidx.webkit.WebViewFeature;
+
+/**
+ * Service Worker Request Filter
+ * Requests made by service workers skip every WebViewClient, so sites that route ad and
+ * analytics fetches through a worker would bypass the engine. One process-wide client
+ * runs them through a BlockedAdsRequestInterceptor like frame requests: the same engine,
+ * surrogates, shared stats and request log (under the interceptor's own tab id).
+ * Installed when the first WebView is set up, since the controller starts WebView.
+ */
+public final class BlockedAdsServiceWorkerFilter extends ServiceWorkerClientCompat {
+    
+    private static boolean installed; // Main thread only
+    
+    private final BlockedAdsRequestInterceptor requestInterceptor;
+    
+    BlockedAdsServiceWorkerFilter(BlockedAdsRequestInterceptor requestInterceptor) {
+        this.requestInterceptor = requestInterceptor;
+    }
+    
+    /**
+     * Route service worker requests through the filter engine, once per process
+     * Does nothing on WebView versions without service worker interception
+     */
+    public static void install(Context context) {
+        if (installed) {
+            return;
+        }
+        installed = true;
+        if (!WebViewFeature.isFeatureSupported(WebViewFeature.SERVICE_WORKER_BASIC_USAGE)
+                || !WebViewFeature.isFeatureSupported(WebViewFeature.SERVICE_WORKER_SHOULD_INTERCEPT_REQUEST)) {
+            return;
+        }
+        ServiceWorkerControllerCompat.getInstance().setServiceWorkerClient(
+            new BlockedAdsServiceWorkerFilter(new BlockedAdsRequestInterceptor(BlockedAdsStats.shared(context))));
+    }
+    
+    @Override
+    public WebResourceResponse shouldInterceptRequest(WebResourceRequest request) {
+        return requestInterceptor.interceptServiceWorker(request);
+    }
+}
@@ -0,0 +1,224 @@
+package com.blockedads.app;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Per-Site Allowlist
+ * Sites the user paused blocking on, persisted one host per line. Readers see an immutable
+ * snapshot through a volatile field, so checking a page host only takes a lock until the
+ * file has been read.
+ */
+public final class BlockedAdsSiteAllowlist {
+    
+    private static final String TAG = "BlockedAdsSiteAllowlist";
+    static final String FILE_NAME = "blockedads-allowlist.txt";
+    
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor();
+    
+    // null until the file is read; the first accessor to run reads it
+    private static volatile Set<String> hosts;
+    private static File file;
+    
+    private BlockedAdsSiteAllowlist() {
+    }
+    
+    /**
+     * Point the allowlist at app storage; cheap, the file is read on first use
+     */
+    public static void init(Context context) {
+        init(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+    }
+    
+    static synchronized void init(File source) {
+        if (!source.equals(file)) {
+            file = source;
+            hosts = null;
+        }
+    }
+    
+    /**
+     * Read the allowlist ahead of the first page check
+     */
+    public static void preload() {
+        snapshot();
+    }
+    
+    /**
+     * Replace the allowlist with the contents of a file and persist later changes to it
+     */
+    static synchronized void load(File source) {
+        file = source;
+        hosts = read(source);
+    }
+    
+    // The current hosts, reading the file first if needed; add() and remove() go through
+    // here too, so a change is never made to a set the file later replaces
+    private static Set<String> snapshot() {
+        Set<String> snapshot = hosts;
+        return snapshot != null ? snapshot : loadIfNeeded();
+    }
+    
+    private static synchronized Set<String> loadIfNeeded() {
+        if (hosts == null) {
+            hosts = file != null ? read(file) : Collections.<String>emptySet();
+        }
+        return hosts;
+    }
+    
+    private static Set<String> read(File source) {
+        Set<String> loaded = new HashSet<>();
+        if (source.exists()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(source), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String host = normalize(line);
+                    if (host != null) {
+                        loaded.add(host);
+                    }
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to read allowlist", e);
+            }
+        }
+        return Collections.unmodifiableSet(loaded);
+    }
+    
+    /**
+     * Check if blocking is paused for a page host or one of its parent domains
+     * Returns immediately when no site is paused
+     */
+    public static boolean isAllowed(String host) {
+        Set<String> snapshot = snapshot();
+        if (host == null || snapshot.isEmpty()) {
+            return false;
+        }
+        String domain = host;
+        while (!snapshot.contains(domain)) {
+            int dot = domain.indexOf('.');
+            if (dot < 0 || dot == domain.length() - 1) {
+                return false;
+            }
+            domain = domain.substring(dot + 1);
+        }
+        return true;
+    }
+    
+    /**
+     * Pause blocking on a site and its subdomains
+     */
+    public static synchronized void add(String host) {
+        String normalized = normalize(host);
+        Set<String> current = snapshot();
+        if (normalized == null || current.contains(normalized)) {
+            return;
+        }
+        Set<String> updated = new HashSet<>(current);
+        updated.add(normalized);
+        publish(updated);
+    }
+    
+    /**
+     * Resume blocking on a site; removes any paused entry covering the host
+     */
+    public static synchronized void remove(String host) {
+        String normalized = normalize(host);
+        if (normalized == null) {
+            return;
+        }
+        Set<String> current = snapshot();
+        Set<String> updated = new HashSet<>(current);
+        for (String paused : current) {
+            if (BlockedAdsFilterRule.isSubdomainOf(normalized, paused)) {
+                updated.remove(paused);
+            }
+        }
+        if (updated.size() != current.size()) {
+            publish(updated);
+        }
+    }
+    
+    /**
+     * Get the paused hosts
+     */
+    public static Set<String> getHosts() {
+        return snapshot();
+    }
+    
+    private static void publish(Set<String> updated) {
+        final Set<String> snapshot = Collections.unmodifiableSet(updated);
+        hosts = snapshot;
+        
+        final File target = file;
+        if (target == null) {
+            return;
+        }
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                save(target, snapshot);
+            }
+        });
+    }
+    
+    /**
+     * Wait for queued writes to reach the file
+     */
+    static void awaitWrites() throws InterruptedException, ExecutionException {
+        writer.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+    }
+    
+    /**
+     * Write to a temporary file and rename it, so a crash never leaves a truncated list
+     */
+    static void save(File target, Set<String> snapshot) {
+        File temp = new File(target.getPath() + ".tmp");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            for (String host : snapshot) {
+                out.write(host);
+                out.write('\n');
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write allowlist", e);
+            return;
+        }
+        if (!temp.renameTo(target)) {
+            Log.w(TAG, "Failed to replace allowlist file");
+        }
+    }
+    
+    /**
+     * Lowercase the host and drop a leading www. so pausing covers the whole site
+     */
+    private static String normalize(String host) {
+        if (host == null) {
+            return null;
+        }
+        String normalized = host.trim().toLowerCase(Locale.ROOT);
+        if (normalized.startsWith("www.")) {
+            normalized = normalized.substring(4);
+        }
+        return normalized.isEmpty() ? null : normalized;
+    }
+}
@@ -2,90 +2,170 @@ package com.blockedads.app;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
 
 /**
  * BlockedAds Statistics Manager
  * Based on uBlock Origin statistics tracking
+ * All instances share one BlockedAdsStatsJournal, so counters from every activity and
+ * WebView client add up instead of overwriting each other
  */
 public class BlockedAdsStats {
     
-    private static final String PREFS_NAME = "BlockedAdsStats";
+    private static final String TAG = "BlockedAdsStats";
+    static final String JOURNAL_FILE_NAME = "blockedads-stats.journal";
+    private static final double BYTES_PER_MB = 1000 * 1000;
+    
+    // Counters stored by earlier versions, imported once into the journal
+    private static final String LEGACY_PREFS_NAME = "BlockedAdsStats";
     private static final String KEY_ADS_BLOCKED = "ads_blocked";
     private static final String KEY_DATA_SAVED = "data_saved";
     private static final String KEY_YOUTUBE_SESSIONS = "youtube_sessions";
     private static final String KEY_START_TIME = "start_time";
     
-    private SharedPreferences prefs;
-    private Context context;
+    private static BlockedAdsStatsJournal sharedJournal;
+    private static BlockedAdsStats shared;
+    
+    private final BlockedAdsStatsJournal journal;
     
+    /**
+     * Stats backed by the app's journal; a null context keeps the counters in memory only
+     */
     public BlockedAdsStats(Context context) {
-        this.context = context;
-        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (context != null) {
+            journal = sharedJournal(context.getApplicationContext());
+        } else {
+            journal = BlockedAdsStatsJournal.inMemory();
+            journal.add(BlockedAdsStatsJournal.FIELD_START_TIME, System.currentTimeMillis());
+        }
+    }
+    
+    /**
+     * Get the process-wide stats that frame and service worker clients count in
+     */
+    public static synchronized BlockedAdsStats shared(Context context) {
+        if (shared == null) {
+            shared = new BlockedAdsStats(context.getApplicationContext());
+        }
+        return shared;
+    }
+    
+    /**
+     * Open the journal (and import old counters) ahead of the first activity
+     */
+    public static void preload(Context context) {
+        sharedJournal(context.getApplicationContext());
+    }
+    
+    /**
+     * Open the journal once per process, importing the old SharedPreferences counters into a new one
+     */
+    private static synchronized BlockedAdsStatsJournal sharedJournal(Context context) {
+        if (sharedJournal == null) {
+            BlockedAdsStatsJournal journal;
+            try {
+                journal = BlockedAdsStatsJournal.open(new File(context.getFilesDir(), JOURNAL_FILE_NAME));
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to open stats journal, counting in memory", e);
+                journal = BlockedAdsStatsJournal.inMemory();
+            }
+            if (journal.isFresh()) {
+                importLegacyStats(context, journal);
+            }
+            sharedJournal = journal;
+        }
+        return sharedJournal;
+    }
+    
+    /**
+     * Copy the preference counters into the journal, then drop them
+     * data_saved was written both as double bits (putLong) and as putFloat, so accept either
+     */
+    private static void importLegacyStats(Context context, BlockedAdsStatsJournal journal) {
+        SharedPreferences prefs = context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE);
+        Map<String, ?> legacy = prefs.getAll();
         
-        // Initialize start time if not set
-        if (!prefs.contains(KEY_START_TIME)) {
-            prefs.edit().putLong(KEY_START_TIME, System.currentTimeMillis()).apply();
+        long[] values = new long[BlockedAdsStatsJournal.FIELD_COUNT];
+        values[BlockedAdsStatsJournal.FIELD_ADS_BLOCKED] = legacyLong(legacy.get(KEY_ADS_BLOCKED));
+        values[BlockedAdsStatsJournal.FIELD_YOUTUBE_SESSIONS] = legacyLong(legacy.get(KEY_YOUTUBE_SESSIONS));
+        values[BlockedAdsStatsJournal.FIELD_START_TIME] = legacy.get(KEY_START_TIME) instanceof Long
+            ? (Long) legacy.get(KEY_START_TIME) : System.currentTimeMillis();
+        
+        Object dataSaved = legacy.get(KEY_DATA_SAVED);
+        double mb = dataSaved instanceof Long ? Double.longBitsToDouble((Long) dataSaved)
+            : dataSaved instanceof Float ? (Float) dataSaved : 0;
+        if (mb > 0 && !Double.isInfinite(mb)) {
+            values[BlockedAdsStatsJournal.FIELD_BYTES_SAVED] = Math.round(mb * BYTES_PER_MB);
         }
+        
+        journal.replace(values);
+        if (!legacy.isEmpty()) {
+            prefs.edit().clear().apply();
+        }
+    }
+    
+    private static long legacyLong(Object value) {
+        return value instanceof Integer ? (Integer) value : 0;
     }
     
     /**
      * Get total ads blocked
      */
     public int getAdsBlocked() {
-        return prefs.getInt(KEY_ADS_BLOCKED, 0);
+        return (int) journal.get(BlockedAdsStatsJournal.FIELD_ADS_BLOCKED);
     }
     
     /**
      * Increment ads blocked counter
      */
     public void incrementAdsBlocked() {
-        int current = getAdsBlocked();
-        prefs.edit().putInt(KEY_ADS_BLOCKED, current + 1).apply();
+        journal.add(BlockedAdsStatsJournal.FIELD_ADS_BLOCKED, 1);
     }
     
     /**
      * Add to ads blocked counter
      */
     public void addAdsBlocked(int count) {
-        int current = getAdsBlocked();
-        prefs.edit().putInt(KEY_ADS_BLOCKED, current + count).apply();
+        journal.add(BlockedAdsStatsJournal.FIELD_ADS_BLOCKED, count);
     }
     
     /**
      * Get total data saved in MB
      */
     public double getDataSaved() {
-        return Double.longBitsToDouble(prefs.getLong(KEY_DATA_SAVED, 0));
+        return journal.get(BlockedAdsStatsJournal.FIELD_BYTES_SAVED) / BYTES_PER_MB;
     }
     
     /**
      * Add to data saved counter
+     * Stored as whole bytes so repeated small additions do not drift
      */
     public void addDataSaved(double mb) {
-        double current = getDataSaved();
-        prefs.edit().putLong(KEY_DATA_SAVED, Double.doubleToLongBits(current + mb)).apply();
+        journal.add(BlockedAdsStatsJournal.FIELD_BYTES_SAVED, Math.round(mb * BYTES_PER_MB));
     }
     
     /**
      * Get YouTube sessions count
      */
     public int getYouTubeSessions() {
-        return prefs.getInt(KEY_YOUTUBE_SESSIONS, 0);
+        return (int) journal.get(BlockedAdsStatsJournal.FIELD_YOUTUBE_SESSIONS);
     }
     
     /**
      * Increment YouTube sessions counter
      */
     public void incrementYouTubeSessions() {
-        int current = getYouTubeSessions();
-        prefs.edit().putInt(KEY_YOUTUBE_SESSIONS, current + 1).apply();
+        journal.add(BlockedAdsStatsJournal.FIELD_YOUTUBE_SESSIONS, 1);
     }
     
     /**
      * Get start time
      */
     public long getStartTime() {
-        return prefs.getLong(KEY_START_TIME, System.currentTimeMillis());
+        return journal.get(BlockedAdsStatsJournal.FIELD_START_TIME);
     }
     
     /**
@@ -99,12 +179,9 @@ public class BlockedAdsStats {
      * Reset all statistics
      */
     public void resetStats() {
-        prefs.edit()
-            .putInt(KEY_ADS_BLOCKED, 0)
-            .putLong(KEY_DATA_SAVED, 0)
-            .putInt(KEY_YOUTUBE_SESSIONS, 0)
-            .putLong(KEY_START_TIME, System.currentTimeMillis())
-            .apply();
+        long[] values = new long[BlockedAdsStatsJournal.FIELD_COUNT];
+        values[BlockedAdsStatsJournal.FIELD_START_TIME] = System.currentTimeMillis();
+        journal.replace(values);
     }
     
     /**
@@ -0,0 +1,165 @@
+package com.blockedads.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Stats Journal
+ * A small memory-mapped file of checksummed counter snapshots. Every update appends one
+ * 44-byte record to a fixed ring of slots; opening picks the valid record with the highest
+ * sequence number, so a torn write only loses that update. Writes go straight into the page
+ * cache and survive a process crash without an fsync or a preferences XML rewrite.
+ */
+final class BlockedAdsStatsJournal {
+    
+    static final int FIELD_ADS_BLOCKED = 0;
+    static final int FIELD_BYTES_SAVED = 1;
+    static final int FIELD_YOUTUBE_SESSIONS = 2;
+    static final int FIELD_START_TIME = 3;
+    static final int FIELD_COUNT = 4;
+    
+    static final int FILE_SIZE = 4096;
+    private static final int MAGIC = 0x42415354; // "BAST"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int PAYLOAD_SIZE = 8 + FIELD_COUNT * 8; // Sequence, then the counters
+    static final int RECORD_SIZE = PAYLOAD_SIZE + 4; // Payload, then its CRC32
+    static final int SLOT_COUNT = (FILE_SIZE - HEADER_SIZE) / RECORD_SIZE;
+    
+    private final ByteBuffer buffer; // null: in memory only
+    private final long[] values = new long[FIELD_COUNT];
+    private final byte[] scratch = new byte[PAYLOAD_SIZE];
+    private final CRC32 crc = new CRC32();
+    private final boolean fresh;
+    private long sequence;
+    private int lastSlot = -1;
+    
+    private BlockedAdsStatsJournal(ByteBuffer buffer, boolean fresh) {
+        this.buffer = buffer;
+        this.fresh = fresh;
+    }
+    
+    /**
+     * Map a journal file, creating and formatting it if it is missing or unreadable
+     */
+    static BlockedAdsStatsJournal open(File file) throws IOException {
+        ByteBuffer mapped;
+        // The mapping stays valid after the channel is closed
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+        }
+        
+        boolean formatted = mapped.getInt(0) == MAGIC && mapped.getInt(4) == VERSION;
+        if (!formatted) {
+            for (int i = 0; i < FILE_SIZE; i += 8) {
+                mapped.putLong(i, 0);
+            }
+            mapped.putInt(0, MAGIC);
+            mapped.putInt(4, VERSION);
+        }
+        
+        BlockedAdsStatsJournal journal = new BlockedAdsStatsJournal(mapped, !formatted);
+        if (formatted) {
+            journal.recover();
+        }
+        return journal;
+    }
+    
+    /**
+     * A journal that keeps its counters in memory only
+     */
+    static BlockedAdsStatsJournal inMemory() {
+        return new BlockedAdsStatsJournal(null, true);
+    }
+    
+    /**
+     * Check if the journal was created (or reformatted) by this open
+     */
+    boolean isFresh() {
+        return fresh;
+    }
+    
+    synchronized long get(int field) {
+        return values[field];
+    }
+    
+    synchronized void add(int field, long delta) {
+        values[field] += delta;
+        append();
+    }
+    
+    /**
+     * Replace every counter with one record
+     */
+    synchronized void replace(long[] snapshot) {
+        System.arraycopy(snapshot, 0, values, 0, FIELD_COUNT);
+        append();
+    }
+    
+    /**
+     * Offset of the newest record in the file, or -1 if nothing was written
+     */
+    synchronized int getLastRecordOffset() {
+        return lastSlot < 0 ? -1 : slotOffset(lastSlot);
+    }
+    
+    /**
+     * Load the counters from the valid record with the highest sequence number
+     */
+    private void recover() {
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            int offset = slotOffset(slot);
+            long recordSequence = buffer.getLong(offset);
+            if (recordSequence <= sequence) {
+                continue;
+            }
+            for (int i = 0; i < PAYLOAD_SIZE; i++) {
+                scratch[i] = buffer.get(offset + i);
+            }
+            crc.reset();
+            crc.update(scratch, 0, PAYLOAD_SIZE);
+            if ((int) crc.getValue() != buffer.getInt(offset + PAYLOAD_SIZE)) {
+                continue; // Torn or corrupted write
+            }
+            sequence = recordSequence;
+            lastSlot = slot;
+            for (int field = 0; field < FIELD_COUNT; field++) {
+                values[field] = buffer.getLong(offset + 8 + field * 8);
+            }
+        }
+    }
+    
+    /**
+     * Write the counters to the slot after the newest record, overwriting the oldest one
+     * once the ring is full, so the file never grows and never needs a separate compaction
+     */
+    private void append() {
+        if (buffer == null) {
+            return;
+        }
+        sequence++;
+        lastSlot = (lastSlot + 1) % SLOT_COUNT;
+        
+        ByteBuffer payload = ByteBuffer.wrap(scratch);
+        payload.putLong(sequence);
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            payload.putLong(values[field]);
+        }
+        crc.reset();
+        crc.update(scratch, 0, PAYLOAD_SIZE);
+        
+        int offset = slotOffset(lastSlot);
+        for (int i = 0; i < PAYLOAD_SIZE; i++) {
+            buffer.put(offset + i, scratch[i]);
+        }
+        buffer.putInt(offset + PAYLOAD_SIZE, (int) crc.getValue());
+    }
+    
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+}
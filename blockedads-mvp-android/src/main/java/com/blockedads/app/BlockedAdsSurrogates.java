@@ -0,0 +1,160 @@
+package com.blockedads.app;
+
+import android.content.Context;
+import android.util.Log;
+import android.webkit.WebResourceResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Surrogate Responses for blocked requests
+ * Based on uBlock Origin's redirect resources: blocked scripts get a neutered stand-in with
+ * the right MIME type, and other types get a cheap empty response, so pages don't throw,
+ * retry or wait for timeouts. All bodies are preloaded into memory.
+ */
+public class BlockedAdsSurrogates {
+    
+    private static final String TAG = "BlockedAdsSurrogates";
+    private static final String ASSET_DIR = "surrogates";
+    private static final String NOOP_SCRIPT = "noop.js";
+    
+    /**
+     * Host, path prefix and surrogate script for well-known ad and analytics libraries
+     */
+    private static final String[][] SURROGATE_RULES = {
+        {"google-analytics.com", "/analytics.js", "google-analytics_analytics.js"},
+        {"google-analytics.com", "/ga.js", "google-analytics_analytics.js"},
+        {"googletagmanager.com", "/gtm.js", "googletagmanager_gtm.js"},
+        {"googletagmanager.com", "/gtag/js", "googletagmanager_gtm.js"},
+        {"googletagservices.com", "/tag/js/gpt.js", "googletagservices_gpt.js"},
+        {"securepubads.g.doubleclick.net", "/tag/js/gpt.js", "googletagservices_gpt.js"},
+        {"googlesyndication.com", "/pagead/js/adsbygoogle.js", "googlesyndication_adsbygoogle.js"}
+    };
+    
+    // Transparent 1x1 GIF
+    private static final byte[] TRANSPARENT_GIF =
+        Base64.getDecoder().decode("R0lGODlhAQABAIAAAAAAAP///yH5BAEAAAAALAAAAAABAAEAAAIBRAA7");
+    private static final byte[] EMPTY = new byte[0];
+    
+    private static volatile Map<String, byte[]> scripts = Collections.emptyMap();
+    
+    private BlockedAdsSurrogates() {
+    }
+    
+    /**
+     * Load all surrogate scripts from assets into memory (once per process, or after release())
+     */
+    public static synchronized void preload(Context context) {
+        if (!scripts.isEmpty()) {
+            return;
+        }
+        
+        Map<String, byte[]> loaded = new HashMap<>();
+        try {
+            String[] names = context.getAssets().list(ASSET_DIR);
+            if (names != null) {
+                for (String name : names) {
+                    try (InputStream in = context.getAssets().open(ASSET_DIR + "/" + name)) {
+                        loaded.put(name, readFully(in));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to load surrogate scripts", e);
+        }
+        scripts = Collections.unmodifiableMap(loaded);
+    }
+    
+    /**
+     * Drop the loaded scripts under memory pressure; blocked scripts get empty bodies until the
+     * next preload(). Returns the bytes released
+     */
+    static synchronized long release() {
+        long bytes = 0;
+        for (byte[] script : scripts.values()) {
+            bytes += 16 + script.length;
+        }
+        scripts = Collections.emptyMap();
+        return bytes;
+    }
+    
+    /**
+     * Build the response that replaces a blocked request
+     */
+    public static WebResourceResponse responseFor(BlockedAdsRequestContext context) {
+        String surrogate = surrogateFor(context.getHost(), context.getUrl());
+        if (surrogate != null) {
+            return script(surrogate);
+        }
+        
+        switch (context.getType()) {
+            case BlockedAdsRequestContext.TYPE_SCRIPT:
+                return script(NOOP_SCRIPT);
+            case BlockedAdsRequestContext.TYPE_IMAGE:
+                return ok("image/gif", TRANSPARENT_GIF);
+            case BlockedAdsRequestContext.TYPE_STYLESHEET:
+                return ok("text/css", EMPTY);
+            case BlockedAdsRequestContext.TYPE_SUBDOCUMENT:
+                return ok("text/html", EMPTY);
+            default:
+                return noContent();
+        }
+    }
+    
+    /**
+     * Find the surrogate script for a blocked URL, or null if there is none
+     */
+    static String surrogateFor(String host, String url) {
+        if (host == null) {
+            return null;
+        }
+        int pathStart = url.indexOf('/', url.indexOf("://") + 3);
+        if (pathStart < 0) {
+            return null;
+        }
+        
+        for (String[] rule : SURROGATE_RULES) {
+            if (BlockedAdsFilterRule.isSubdomainOf(host, rule[0])
+                    && url.startsWith(rule[1], pathStart)) {
+                return rule[2];
+            }
+        }
+        return null;
+    }
+    
+    private static WebResourceResponse script(String name) {
+        byte[] body = scripts.get(name);
+        return ok("application/javascript", body != null ? body : EMPTY);
+    }
+    
+    private static WebResourceResponse ok(String mimeType, byte[] body) {
+        return new WebResourceResponse(mimeType, "utf-8", new ByteArrayInputStream(body));
+    }
+    
+    private static WebResourceResponse noContent() {
+        return new WebResourceResponse(
+            "text/plain",
+            "utf-8",
+            204,
+            "No Content",
+            Collections.<String, String>emptyMap(),
+            new ByteArrayInputStream(EMPTY)
+        );
+    }
+    
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,118 @@
+package com.blockedads.app;
+
+import android.content.Context;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Page Load Telemetry
+ * Keeps the metrics of the last CAPACITY navigations in a ring buffer on the device and
+ * exports them as JSON, so sites and filter versions can be compared without a profiler
+ */
+public final class BlockedAdsTelemetry {
+    
+    static final int CAPACITY = 256;
+    static final String EXPORT_FILE_NAME = "blockedads-telemetry.json";
+    
+    private static final BlockedAdsPageMetrics[] pages = new BlockedAdsPageMetrics[CAPACITY];
+    private static int next;
+    private static int size;
+    
+    private BlockedAdsTelemetry() {
+    }
+    
+    /**
+     * Store a finished navigation, overwriting the oldest once the buffer is full
+     */
+    public static synchronized void record(BlockedAdsPageMetrics metrics) {
+        pages[next] = metrics;
+        next = (next + 1) % CAPACITY;
+        if (size < CAPACITY) {
+            size++;
+        }
+    }
+    
+    /**
+     * Get the recorded navigations, oldest first
+     */
+    public static synchronized List<BlockedAdsPageMetrics> snapshot() {
+        List<BlockedAdsPageMetrics> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(pages[(next - size + i + CAPACITY) % CAPACITY]);
+        }
+        return result;
+    }
+    
+    public static synchronized void clear() {
+        Arrays.fill(pages, null);
+        next = 0;
+        size = 0;
+    }
+    
+    /**
+     * Export the recorded navigations as a JSON document
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"pages\":[");
+        List<BlockedAdsPageMetrics> recorded = snapshot();
+        for (int i = 0; i < recorded.size(); i++) {
+            BlockedAdsPageMetrics page = recorded.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"host\":");
+            appendString(json, page.getHost());
+            json.append(",\"startedAt\":").append(page.getStartedAtMillis())
+                .append(",\"loadMillis\":").append(page.getLoadMillis())
+                .append(",\"requests\":").append(page.getRequests())
+                .append(",\"blocked\":").append(page.getBlocked())
+                .append(",\"allowed\":").append(page.getAllowed())
+                .append(",\"bytesAvoided\":").append(page.getBytesAvoided())
+                .append(",\"interceptMicros\":").append(page.getInterceptMicros())
+                .append(",\"blockingEnabled\":").append(page.isBlockingEnabled())
+                .append(",\"filterState\":");
+            appendString(json, page.getFilterState());
+            json.append(",\"ruleCount\":").append(page.getRuleCount()).append('}');
+        }
+        return json.append("]}").toString();
+    }
+    
+    /**
+     * Write the JSON export to app storage (pull with adb run-as) and return the file
+     */
+    public static File export(Context context) throws IOException {
+        File file = new File(context.getFilesDir(), EXPORT_FILE_NAME);
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write(toJson());
+        }
+        return file;
+    }
+    
+    private static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
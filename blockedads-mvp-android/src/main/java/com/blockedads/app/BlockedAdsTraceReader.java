@@ -0,0 +1,213 @@
+package com.blockedads.app;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Request Trace Reader for the replay harness
+ * Reads a HAR capture or a newline-delimited URL trace into request contexts with their
+ * recorded offsets. Plain JVM only: HAR JSON is parsed by BlockedAdsJsonParser rather
+ * than with org.json.
+ *
+ * URL trace lines: [+offsetMillis] url [pageUrl [type]], with # comments
+ */
+final class BlockedAdsTraceReader {
+    
+    /**
+     * One recorded request
+     */
+    static final class Entry {
+        final BlockedAdsRequestContext context;
+        final long offsetMillis;
+        
+        Entry(BlockedAdsRequestContext context, long offsetMillis) {
+            this.context = context;
+            this.offsetMillis = offsetMillis;
+        }
+    }
+    
+    private BlockedAdsTraceReader() {
+    }
+    
+    /**
+     * Read a trace file; .har files are parsed as HAR, anything else as a URL trace
+     */
+    static List<Entry> read(File file) throws IOException {
+        try (Reader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            return file.getName().endsWith(".har") ? readHar(reader) : readUrlTrace(reader);
+        }
+    }
+    
+    static List<Entry> readUrlTrace(Reader source) throws IOException {
+        BufferedReader reader = source instanceof BufferedReader ? (BufferedReader) source : new BufferedReader(source);
+        List<Entry> entries = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            int field = 0;
+            long offset = entries.isEmpty() ? 0 : entries.get(entries.size() - 1).offsetMillis;
+            if (fields[0].startsWith("+")) {
+                offset = Long.parseLong(fields[field++].substring(1));
+            }
+            if (field >= fields.length) {
+                continue;
+            }
+            String url = fields[field++];
+            String pageUrl = field < fields.length ? fields[field++] : null;
+            String type = field < fields.length ? fields[field] : null;
+            entries.add(new Entry(context(url, pageUrl, type), offset));
+        }
+        return entries;
+    }
+    
+    /**
+     * Read HAR entries; the page of each request is the first document its pageref loaded
+     * Offsets count from the earliest startedDateTime; entries without a parsable one get 0
+     */
+    @SuppressWarnings("unchecked")
+    static List<Entry> readHar(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+        for (int read; (read = reader.read(buffer)) > 0; ) {
+            text.append(buffer, 0, read);
+        }
+        Object log = new BlockedAdsJsonParser(text).object().get("log");
+        if (!(log instanceof Map) || !(((Map<String, Object>) log).get("entries") instanceof List)) {
+            throw new IOException("Not a HAR file: missing log.entries");
+        }
+        
+        Map<String, String> pageUrls = new HashMap<>();
+        List<BlockedAdsRequestContext> contexts = new ArrayList<>();
+        List<Long> starts = new ArrayList<>();
+        long firstStart = Long.MAX_VALUE;
+        for (Object item : (List<Object>) ((Map<String, Object>) log).get("entries")) {
+            if (!(item instanceof Map) || !(((Map<String, Object>) item).get("request") instanceof Map)) {
+                continue;
+            }
+            Map<String, Object> entry = (Map<String, Object>) item;
+            Map<String, Object> request = (Map<String, Object>) entry.get("request");
+            String url = string(request, "url");
+            if (url == null) {
+                continue;
+            }
+            String type = string(entry, "_resourceType");
+            String pageRef = string(entry, "pageref");
+            if (pageRef != null && "document".equals(type) && !pageUrls.containsKey(pageRef)) {
+                pageUrls.put(pageRef, url);
+            }
+            String pageUrl = pageRef != null ? pageUrls.get(pageRef) : header(request, "Referer");
+            
+            long start = parseTime(string(entry, "startedDateTime"));
+            if (start >= 0) {
+                firstStart = Math.min(firstStart, start);
+            }
+            contexts.add(context(url, pageUrl, type));
+            starts.add(start);
+        }
+        
+        List<Entry> entries = new ArrayList<>(contexts.size());
+        for (int i = 0; i < contexts.size(); i++) {
+            long start = starts.get(i);
+            entries.add(new Entry(contexts.get(i), start < 0 ? 0 : start - firstStart));
+        }
+        return entries;
+    }
+    
+    private static BlockedAdsRequestContext context(String url, String pageUrl, String type) {
+        int typeBit = type != null ? typeFromName(type) : BlockedAdsRequestContext.typeFromExtension(url);
+        boolean mainFrame = typeBit == BlockedAdsRequestContext.TYPE_DOCUMENT && (pageUrl == null || pageUrl.equals(url));
+        if (typeBit == BlockedAdsRequestContext.TYPE_DOCUMENT && !mainFrame) {
+            typeBit = BlockedAdsRequestContext.TYPE_SUBDOCUMENT; // A document loaded by another page is a frame
+        }
+        String documentHost = BlockedAdsRequestContext.extractHost(mainFrame ? url : pageUrl);
+        return new BlockedAdsRequestContext(url, documentHost, typeBit, mainFrame);
+    }
+    
+    // HAR _resourceType and uBlock-style names
+    private static int typeFromName(String type) {
+        switch (type.toLowerCase(Locale.ROOT)) {
+            case "document":
+                return BlockedAdsRequestContext.TYPE_DOCUMENT;
+            case "subdocument":
+            case "frame":
+                return BlockedAdsRequestContext.TYPE_SUBDOCUMENT;
+            case "script":
+                return BlockedAdsRequestContext.TYPE_SCRIPT;
+            case "stylesheet":
+            case "css":
+                return BlockedAdsRequestContext.TYPE_STYLESHEET;
+            case "image":
+                return BlockedAdsRequestContext.TYPE_IMAGE;
+            case "media":
+                return BlockedAdsRequestContext.TYPE_MEDIA;
+            case "font":
+                return BlockedAdsRequestContext.TYPE_FONT;
+            case "xhr":
+            case "fetch":
+            case "xmlhttprequest":
+                return BlockedAdsRequestContext.TYPE_XHR;
+            case "ping":
+            case "beacon":
+                return BlockedAdsRequestContext.TYPE_PING;
+            default:
+                return BlockedAdsRequestContext.TYPE_OTHER;
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static String header(Map<String, Object> request, String name) {
+        Object headers = request.get("headers");
+        if (headers instanceof List) {
+            for (Object item : (List<Object>) headers) {
+                if (item instanceof Map && name.equalsIgnoreCase(string((Map<String, Object>) item, "name"))) {
+                    return string((Map<String, Object>) item, "value");
+                }
+            }
+        }
+        return null;
+    }
+    
+    // A string member, or null if it is missing or of another type
+    private static String string(Map<String, Object> object, String key) {
+        Object value = object.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+    
+    /**
+     * Parse a HAR time in epoch milliseconds, or -1 if it is missing or unparsable
+     */
+    private static long parseTime(String time) {
+        if (time == null) {
+            return -1;
+        }
+        // 2024-01-01T12:00:00.123Z or with an offset; fraction digits beyond millis are dropped
+        String normalized = time.replaceFirst("(\\.\\d{3})\\d*", "$1").replaceFirst("Z$", "+0000")
+            .replaceFirst("([+-]\\d\\d):(\\d\\d)$", "$1$2");
+        String pattern = normalized.contains(".") ? "yyyy-MM-dd'T'HH:mm:ss.SSSZ" : "yyyy-MM-dd'T'HH:mm:ssZ";
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.ROOT);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return format.parse(normalized).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
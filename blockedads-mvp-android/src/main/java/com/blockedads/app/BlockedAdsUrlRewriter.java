@@ -0,0 +1,200 @@
+package com.blockedads.app;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Navigation URL Rewriter
+ * Applied to top-level navigations before they load: $urlskip rules unwrap click-tracker
+ * redirectors (google.com/url?q=, l.facebook.com/l.php?u=, ...) to the destination they
+ * carry, so the tracker is never contacted, and $removeparam rules strip tracking query
+ * parameters (utm_*, fbclid, gclid). URLs without a query are returned at once; otherwise
+ * parameters are scanned in place and a new URL is built only if one is dropped.
+ */
+public final class BlockedAdsUrlRewriter {
+    
+    private static final int MAX_SKIPS = 4; // Redirectors wrapping redirectors
+    
+    private final List<BlockedAdsRewriteRule> skipRules = new ArrayList<>();
+    private final List<BlockedAdsRewriteRule> genericRemoveRules = new ArrayList<>(); // Apply to every URL
+    private final List<BlockedAdsRewriteRule> removeRules = new ArrayList<>(); // Apply to URLs their filter matches
+    
+    /**
+     * Index rewrite rules as written in the lists; malformed ones are skipped
+     */
+    BlockedAdsUrlRewriter(List<String> rules) {
+        for (String rule : rules) {
+            add(rule);
+        }
+    }
+    
+    private void add(String line) {
+        BlockedAdsRewriteRule rule = BlockedAdsRewriteRule.parse(line);
+        if (rule == null) {
+            return;
+        }
+        (rule.skip ? skipRules : rule.filter == null ? genericRemoveRules : removeRules).add(rule);
+    }
+    
+    /**
+     * Rewrite a navigation URL: follow redirector rules to the final destination, then drop
+     * tracking parameters. Returns the same instance if nothing changed
+     */
+    String rewrite(String url) {
+        if (url.indexOf('?') < 0) {
+            return url;
+        }
+        String result = url;
+        for (int hop = 0; hop < MAX_SKIPS; hop++) {
+            String destination = skip(result);
+            if (destination == null) {
+                break;
+            }
+            result = destination;
+        }
+        return removeParameters(result);
+    }
+    
+    // The destination a redirector rule extracts from the URL, or null
+    private String skip(String url) {
+        if (skipRules.isEmpty() || queryStart(url) < 0) {
+            return null;
+        }
+        BlockedAdsRequestContext context = documentContext(url);
+        String destination = null;
+        for (BlockedAdsRewriteRule rule : skipRules) {
+            if (!rule.appliesTo(context)) {
+                continue;
+            }
+            if (rule.exception) {
+                return null;
+            }
+            if (destination == null) {
+                destination = parameter(url, rule.name);
+            }
+        }
+        return destination;
+    }
+    
+    private String removeParameters(String url) {
+        int query = queryStart(url);
+        if (query < 0 || (genericRemoveRules.isEmpty() && removeRules.isEmpty())) {
+            return url;
+        }
+        List<BlockedAdsRewriteRule> applicable = null;
+        if (!removeRules.isEmpty()) {
+            BlockedAdsRequestContext context = documentContext(url);
+            for (BlockedAdsRewriteRule rule : removeRules) {
+                if (rule.appliesTo(context)) {
+                    if (applicable == null) {
+                        applicable = new ArrayList<>(2);
+                    }
+                    applicable.add(rule);
+                }
+            }
+        }
+        
+        int end = queryEnd(url);
+        StringBuilder rewritten = null;
+        int kept = 0;
+        for (int start = query + 1; start <= end; ) {
+            int next = url.indexOf('&', start);
+            if (next < 0 || next > end) {
+                next = end;
+            }
+            int equals = url.indexOf('=', start);
+            int nameEnd = equals >= 0 && equals < next ? equals : next;
+            boolean remove = next > start && shouldRemove(url, start, nameEnd, next, applicable);
+            if (remove && rewritten == null) {
+                // The first removal: copy what was kept so far, then keep appending
+                rewritten = new StringBuilder(url.length()).append(url, 0, query);
+                if (kept > 0) {
+                    rewritten.append('?').append(url, query + 1, start - 1);
+                }
+            } else if (!remove && rewritten != null && next > start) {
+                rewritten.append(kept == 0 ? '?' : '&').append(url, start, next);
+            }
+            if (!remove && next > start) {
+                kept++;
+            }
+            start = next + 1;
+        }
+        if (rewritten == null) {
+            return url;
+        }
+        return rewritten.append(url, end, url.length()).toString();
+    }
+    
+    // A parameter is removed if a rule matches it and no exception rule does
+    private boolean shouldRemove(String url, int start, int nameEnd, int end, List<BlockedAdsRewriteRule> applicable) {
+        boolean matched = false;
+        for (BlockedAdsRewriteRule rule : genericRemoveRules) {
+            if (rule.matchesParameter(url, start, nameEnd, end)) {
+                if (rule.exception) {
+                    return false;
+                }
+                matched = true;
+            }
+        }
+        if (applicable != null) {
+            for (BlockedAdsRewriteRule rule : applicable) {
+                if (rule.matchesParameter(url, start, nameEnd, end)) {
+                    if (rule.exception) {
+                        return false;
+                    }
+                    matched = true;
+                }
+            }
+        }
+        return matched;
+    }
+    
+    /**
+     * Get a decoded query parameter if it is an http(s) URL; redirectors must not lead to
+     * javascript: or intent: URLs
+     */
+    static String parameter(String url, String name) {
+        int query = queryStart(url);
+        if (query < 0) {
+            return null;
+        }
+        int end = queryEnd(url);
+        for (int start = query + 1; start < end; ) {
+            int next = url.indexOf('&', start);
+            if (next < 0 || next > end) {
+                next = end;
+            }
+            if (next - start > name.length() && url.charAt(start + name.length()) == '='
+                    && url.regionMatches(start, name, 0, name.length())) {
+                String value;
+                try {
+                    value = URLDecoder.decode(url.substring(start + name.length() + 1, next), "UTF-8");
+                } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                    return null;
+                }
+                boolean web = value.regionMatches(true, 0, "https://", 0, 8) || value.regionMatches(true, 0, "http://", 0, 7);
+                return web ? value : null;
+            }
+            start = next + 1;
+        }
+        return null;
+    }
+    
+    private static int queryStart(String url) {
+        int query = url.indexOf('?');
+        int hash = url.indexOf('#');
+        return query < 0 || (hash >= 0 && hash < query) ? -1 : query;
+    }
+    
+    private static int queryEnd(String url) {
+        int hash = url.indexOf('#');
+        return hash < 0 ? url.length() : hash;
+    }
+    
+    private static BlockedAdsRequestContext documentContext(String url) {
+        String host = BlockedAdsRequestContext.extractHost(url);
+        return new BlockedAdsRequestContext(url, host, BlockedAdsRequestContext.TYPE_DOCUMENT, true);
+    }
+}
@@ -21,6 +21,7 @@ public class BlockedAdsWebViewActivity extends AppCompatActivity {
     private Button backBtn;
     private Button forwardBtn;
     private Button refreshBtn;
+    private Button pauseSiteBtn;
     private TextView statsText;
     private BlockedAdsWebViewClient webViewClient;
     private BlockedAdsStats stats;
@@ -31,8 +32,8 @@ public class BlockedAdsWebViewActivity extends AppCompatActivity {
         setContentView(R.layout.activity_webview);
         
         initializeViews();
-        initializeWebView();
         initializeStats();
+        initializeWebView();
         setupEventListeners();
         updateStatsDisplay();
     }
@@ -47,6 +48,7 @@ public class BlockedAdsWebViewActivity extends AppCompatActivity {
         backBtn = findViewById(R.id.backBtn);
         forwardBtn = findViewById(R.id.forwardBtn);
         refreshBtn = findViewById(R.id.refreshBtn);
+        pauseSiteBtn = findViewById(R.id.pauseSiteBtn);
         statsText = findViewById(R.id.statsText);
     }
     
@@ -59,8 +61,12 @@ public class BlockedAdsWebViewActivity extends AppCompatActivity {
         webView.getSettings().setLoadWithOverviewMode(true);
         webView.getSettings().setUseWideViewPort(true);
         
-        webViewClient = new BlockedAdsWebViewClient();
+        BlockedAdsSurrogates.preload(this);
+        BlockedAdsProceduralRuntime.preload(this);
+        BlockedAdsServiceWorkerFilter.install(this);
+        webViewClient = new BlockedAdsWebViewClient(stats);
         webView.setWebViewClient(webViewClient);
+        BlockedAdsBlockingState.attach(webView);
         
         // Load default page
         webView.loadUrl("https://www.google.com");
@@ -70,7 +76,7 @@ public class BlockedAdsWebViewActivity extends AppCompatActivity {
      * Initialize statistics tracking
      */
     private void initializeStats() {
-        stats = new BlockedAdsStats(this);
+        stats = BlockedAdsStats.shared(this);
     }
     
     /**
@@ -109,16 +115,47 @@ public class BlockedAdsWebViewActivity extends AppCompatActivity {
             }
         });
         
+        pauseSiteBtn.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                togglePauseOnSite();
+            }
+        });
+        
         // Update URL when page loads
         webViewClient.setOnPageFinishedListener(new BlockedAdsWebViewClient.OnPageFinishedListener() {
             @Override
             public void onPageFinished(String url) {
                 urlInput.setText(url);
                 updateStatsDisplay();
+                updatePauseButton();
             }
         });
     }
     
+    /**
+     * Pause or resume blocking on the current site, then reload it
+     */
+    private void togglePauseOnSite() {
+        String host = BlockedAdsRequestContext.extractHost(webView.getUrl());
+        if (host == null) {
+            return;
+        }
+        
+        if (BlockedAdsSiteAllowlist.isAllowed(host)) {
+            BlockedAdsSiteAllowlist.remove(host);
+        } else {
+            BlockedAdsSiteAllowlist.add(host);
+        }
+        updatePauseButton();
+        webView.reload();
+    }
+    
+    private void updatePauseButton() {
+        boolean paused = BlockedAdsSiteAllowlist.isAllowed(BlockedAdsRequestContext.extractHost(webView.getUrl()));
+        pauseSiteBtn.setText(paused ? R.string.resume_site : R.string.pause_site);
+    }
+    
     /**
      * Navigate to URL entered in input field
      */
@@ -152,6 +189,18 @@ public class BlockedAdsWebViewActivity extends AppCompatActivity {
         statsText.setText(statsDisplay);
     }
     
+    @Override
+    protected void onResume() {
+        super.onResume();
+        webView.onResume(); // Paused by BlockedAdsMemoryTrimmer while in the background
+    }
+    
+    @Override
+    protected void onDestroy() {
+        BlockedAdsBlockingState.detach(webView);
+        super.onDestroy();
+    }
+    
     @Override
     public void onBackPressed() {
         if (webView.canGoBack()) {
@@ -1,13 +1,10 @@
 package com.blockedads.app;
 
+import android.graphics.Bitmap;
 import android.webkit.WebResourceRequest;
 import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
-import java.io.ByteArrayInputStream;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.regex.Pattern;
 
 /**
  * Custom WebViewClient with Ad Blocking functionality
@@ -16,16 +13,20 @@ import java.util.regex.Pattern;
 public class BlockedAdsWebViewClient extends WebViewClient {
     
     private OnPageFinishedListener pageFinishedListener;
-    private BlockedAdsFilterEngine filterEngine;
-    private BlockedAdsStats stats;
+    private BlockedAdsRequestInterceptor requestInterceptor;
+    private final BlockedAdsStats stats;
+    private final BlockedAdsNavigationPolicy navigationPolicy = new BlockedAdsNavigationPolicy();
     
     public interface OnPageFinishedListener {
         void onPageFinished(String url);
     }
     
-    public BlockedAdsWebViewClient() {
-        filterEngine = new BlockedAdsFilterEngine();
-        stats = new BlockedAdsStats(null);
+    /**
+     * Client counting blocked requests in the given stats, normally the hosting activity's
+     */
+    public BlockedAdsWebViewClient(BlockedAdsStats stats) {
+        this.stats = stats;
+        requestInterceptor = new BlockedAdsRequestInterceptor(stats);
     }
     
     /**
@@ -37,27 +38,53 @@ public class BlockedAdsWebViewClient extends WebViewClient {
     
     @Override
     public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
-        String url = request.getUrl().toString();
-        
-        // Check if URL should be blocked
-        if (filterEngine.shouldBlockUrl(url)) {
-            stats.incrementAdsBlocked();
-            stats.addDataSaved(0.05); // Estimate 50KB per blocked ad
-            
-            // Return empty response to block the request
-            return new WebResourceResponse(
-                "text/plain",
-                "utf-8",
-                new ByteArrayInputStream("".getBytes())
-            );
+        WebResourceResponse blocked = requestInterceptor.intercept(request);
+        if (blocked != null) {
+            return blocked;
         }
         
         return super.shouldInterceptRequest(view, request);
     }
     
+    @Override
+    public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
+        String url = request.getUrl().toString();
+        switch (navigationPolicy.decide(url, request.isForMainFrame(), request.isRedirect())) {
+            case BLOCK:
+                stats.incrementAdsBlocked();
+                return true;
+            case OPEN_EXTERNALLY:
+                BlockedAdsNavigationPolicy.openExternally(view.getContext(), url);
+                return true;
+            case REWRITE:
+                view.loadUrl(navigationPolicy.getRewrittenUrl());
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    @Override
+    public void onPageStarted(WebView view, String url, Bitmap favicon) {
+        super.onPageStarted(view, url, favicon);
+        requestInterceptor.onPageStarted(url);
+    }
+    
+    @Override
+    public void onPageCommitVisible(WebView view, String url) {
+        super.onPageCommitVisible(view, url);
+        
+        // Hide elements matched by the lists' cosmetic filters
+        String script = requestInterceptor.getCosmeticScript();
+        if (script != null) {
+            view.evaluateJavascript(script + BlockedAdsBlockingState.stateScript(), null);
+        }
+    }
+    
     @Override
     public void onPageFinished(WebView view, String url) {
         super.onPageFinished(view, url);
+        requestInterceptor.onPageFinished(url);
         
         // Inject ad blocking CSS
         injectAdBlockingCSS(view);
@@ -72,7 +99,8 @@ public class BlockedAdsWebViewClient extends WebViewClient {
      */
     private void injectAdBlockingCSS(WebView view) {
         String css = 
-            "var style = document.createElement('style');" +
+            "var style = document.getElementById('blockedads-style') || document.createElement('style');" +
+            "style.id = 'blockedads-style';" +
             "style.innerHTML = '" +
             ".ad, .advertisement, .ad-banner, .ad-container, .ad-wrapper, " +
             ".adsense, .google-ad, .sponsored, .promo, .banner-ad, " +
@@ -81,113 +109,7 @@ public class BlockedAdsWebViewClient extends WebViewClient {
             "{ display: none !important; }';" +
             "document.head.appendChild(style);";
         
-        view.evaluateJavascript(css, null);
-    }
-}
-
-/**
- * Simple Filter Engine for Ad Blocking
- */
-class BlockedAdsFilterEngine {
-    
-    private Set<Pattern> blockedPatterns;
-    
-    public BlockedAdsFilterEngine() {
-        blockedPatterns = new HashSet<>();
-        loadBasicRules();
-    }
-    
-    /**
-     * Load basic ad blocking rules
-     */
-    private void loadBasicRules() {
-        String[] rules = {
-            ".*googleadservices\\.com.*",
-            ".*googlesyndication\\.com.*",
-            ".*doubleclick\\.net.*",
-            ".*googletagmanager\\.com.*",
-            ".*googletagservices\\.com.*",
-            ".*google-analytics\\.com.*",
-            ".*facebook\\.com/tr.*",
-            ".*facebook\\.net.*",
-            ".*connect\\.facebook\\.net.*",
-            ".*fbcdn\\.net.*",
-            ".*amazon-adsystem\\.com.*",
-            ".*adsystem\\.amazon\\.com.*",
-            ".*aaxads\\.com.*",
-            ".*ads\\.yahoo\\.com.*",
-            ".*adsystem\\.yahoo\\.com.*",
-            ".*ads-twitter\\.com.*",
-            ".*twitter\\.com/i/adsct.*",
-            ".*ads-api\\.twitter\\.com.*"
-        };
-        
-        for (String rule : rules) {
-            blockedPatterns.add(Pattern.compile(rule, Pattern.CASE_INSENSITIVE));
-        }
-    }
-    
-    /**
-     * Check if URL should be blocked
-     */
-    public boolean shouldBlockUrl(String url) {
-        for (Pattern pattern : blockedPatterns) {
-            if (pattern.matcher(url).matches()) {
-                return true;
-            }
-        }
-        return false;
-    }
-}
-
-/**
- * Simple Statistics Tracker
- */
-class BlockedAdsStats {
-    
-    private static final String PREFS_NAME = "BlockedAdsStats";
-    private static final String KEY_ADS_BLOCKED = "ads_blocked";
-    private static final String KEY_DATA_SAVED = "data_saved";
-    
-    private android.content.SharedPreferences prefs;
-    
-    public BlockedAdsStats(android.content.Context context) {
-        if (context != null) {
-            prefs = context.getSharedPreferences(PREFS_NAME, android.content.Context.MODE_PRIVATE);
-        }
-    }
-    
-    /**
-     * Get number of ads blocked
-     */
-    public int getAdsBlocked() {
-        return prefs != null ? prefs.getInt(KEY_ADS_BLOCKED, 0) : 0;
-    }
-    
-    /**
-     * Get data saved in MB
-     */
-    public double getDataSaved() {
-        return prefs != null ? prefs.getFloat(KEY_DATA_SAVED, 0.0f) : 0.0;
-    }
-    
-    /**
-     * Increment ads blocked counter
-     */
-    public void incrementAdsBlocked() {
-        if (prefs != null) {
-            int current = getAdsBlocked();
-            prefs.edit().putInt(KEY_ADS_BLOCKED, current + 1).apply();
-        }
-    }
-    
-    /**
-     * Add to data saved counter
-     */
-    public void addDataSaved(double mb) {
-        if (prefs != null) {
-            double current = getDataSaved();
-            prefs.edit().putFloat(KEY_DATA_SAVED, (float)(current + mb)).apply();
-        }
+        // The stylesheet is always injected and switched by the blocking state, so it can follow toggles live
+        view.evaluateJavascript(css + BlockedAdsBlockingState.stateScript(), null);
     }
 }
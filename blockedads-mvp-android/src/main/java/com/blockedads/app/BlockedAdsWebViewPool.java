@@ -0,0 +1,110 @@
+package com.blockedads.app;
+
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+
+/**
+ * Warm WebView Pool
+ * Keeps one pre-initialized WebView (settings applied, blocking client attached, YouTube
+ * origins preconnected) so the YouTube browser doesn't pay WebView startup when it opens.
+ * Main thread only.
+ */
+public final class BlockedAdsWebViewPool {
+    
+    // Preconnect page: Chromium shares its socket pool across WebViews in the process
+    private static final String PRECONNECT_PAGE =
+        "<html><head>" +
+        "<link rel=\"preconnect\" href=\"https://m.youtube.com\">" +
+        "<link rel=\"preconnect\" href=\"https://i.ytimg.com\">" +
+        "<link rel=\"dns-prefetch\" href=\"https://yt3.ggpht.com\">" +
+        "</head><body></body></html>";
+    
+    private static WebView warmWebView;
+    
+    private BlockedAdsWebViewPool() {
+    }
+    
+    /**
+     * Create the warm WebView once the main thread is idle, so app startup isn't delayed
+     */
+    public static void schedulePrewarm(final Context context) {
+        final Context appContext = context.getApplicationContext();
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                prewarm(appContext);
+                return false;
+            }
+        });
+    }
+    
+    /**
+     * Create the warm WebView now if the pool is empty
+     */
+    public static void prewarm(Context context) {
+        if (warmWebView != null) {
+            return;
+        }
+        
+        WebView webView = new WebView(new MutableContextWrapper(context.getApplicationContext()));
+        configure(webView);
+        webView.setWebViewClient(new BlockedAdsWebViewClient(BlockedAdsStats.shared(context)));
+        webView.loadDataWithBaseURL(null, PRECONNECT_PAGE, "text/html", "utf-8", null);
+        warmWebView = webView;
+    }
+    
+    /**
+     * Check if the next obtain() will return a warm WebView
+     */
+    public static boolean hasWarmWebView() {
+        return warmWebView != null;
+    }
+    
+    /**
+     * Destroy the warm WebView under memory pressure; the next obtain() creates a cold one
+     */
+    public static boolean release() {
+        WebView webView = warmWebView;
+        if (webView == null) {
+            return false;
+        }
+        warmWebView = null;
+        webView.destroy();
+        return true;
+    }
+    
+    /**
+     * Take the warm WebView (or create a cold one) bound to the given activity
+     */
+    public static WebView obtain(Context activityContext) {
+        WebView webView = warmWebView;
+        warmWebView = null;
+        
+        if (webView == null) {
+            webView = new WebView(new MutableContextWrapper(activityContext));
+            configure(webView);
+            return webView;
+        }
+        
+        ((MutableContextWrapper) webView.getContext()).setBaseContext(activityContext);
+        return webView;
+    }
+    
+    /**
+     * Apply the browser WebView settings
+     */
+    public static void configure(WebView webView) {
+        BlockedAdsServiceWorkerFilter.install(webView.getContext());
+        WebSettings settings = webView.getSettings();
+        settings.setJavaScriptEnabled(true);
+        settings.setDomStorageEnabled(true);
+        settings.setLoadWithOverviewMode(true);
+        settings.setUseWideViewPort(true);
+        settings.setBuiltInZoomControls(true);
+        settings.setDisplayZoomControls(false);
+    }
+}
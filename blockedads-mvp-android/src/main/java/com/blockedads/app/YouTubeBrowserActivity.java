@@ -1,11 +1,18 @@
 package com.blockedads.app;
 
+import android.graphics.Bitmap;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.View;
+import android.view.ViewGroup;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.FrameLayout;
 import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
 
@@ -16,12 +23,21 @@ import androidx.appcompat.app.AppCompatActivity;
  */
 public class YouTubeBrowserActivity extends AppCompatActivity {
     
+    public static final String EXTRA_LAUNCH_TIME = "com.blockedads.app.LAUNCH_TIME";
+    private static final String TAG = "YouTubeBrowser";
+    
     private WebView webView;
     private EditText urlInput;
     private Button backBtn, forwardBtn, refreshBtn, goBtn;
     private TextView statsText;
     private YouTubeAdBlocker adBlocker;
     private BlockedAdsStats stats;
+    private int elementsHidden; // By procedural cosmetic filters this session; UI thread only
+    private BlockedAdsRequestInterceptor requestInterceptor;
+    private BlockedAdsNavigationPolicy navigationPolicy;
+    private boolean warmStart;
+    private boolean firstPaintRecorded;
+    private boolean clearHistoryOnLoad;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -38,7 +54,7 @@ public class YouTubeBrowserActivity extends AppCompatActivity {
      * Initialize UI views
      */
     private void initializeViews() {
-        webView = findViewById(R.id.webView);
+        attachWebView();
         urlInput = findViewById(R.id.urlInput);
         backBtn = findViewById(R.id.backBtn);
         forwardBtn = findViewById(R.id.forwardBtn);
@@ -46,23 +62,37 @@ public class YouTubeBrowserActivity extends AppCompatActivity {
         goBtn = findViewById(R.id.goBtn);
         statsText = findViewById(R.id.statsText);
         
-        stats = new BlockedAdsStats(this);
+        stats = BlockedAdsStats.shared(this);
         adBlocker = new YouTubeAdBlocker();
+        requestInterceptor = new BlockedAdsRequestInterceptor(stats);
+        navigationPolicy = new BlockedAdsNavigationPolicy();
+    }
+    
+    /**
+     * Take the pooled WebView (warm if the app prewarmed one) and put it in the layout
+     */
+    private void attachWebView() {
+        warmStart = BlockedAdsWebViewPool.hasWarmWebView();
+        webView = BlockedAdsWebViewPool.obtain(this);
+        
+        FrameLayout container = findViewById(R.id.webViewContainer);
+        container.addView(webView, new FrameLayout.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
     }
     
     /**
      * Setup WebView with ad blocking
+     * Settings are applied by BlockedAdsWebViewPool
      */
     private void setupWebView() {
-        webView.getSettings().setJavaScriptEnabled(true);
-        webView.getSettings().setDomStorageEnabled(true);
-        webView.getSettings().setLoadWithOverviewMode(true);
-        webView.getSettings().setUseWideViewPort(true);
-        webView.getSettings().setBuiltInZoomControls(true);
-        webView.getSettings().setDisplayZoomControls(false);
+        // The warm WebView's preconnect page must not stay in back history
+        clearHistoryOnLoad = warmStart;
         
         // Set custom WebViewClient with ad blocking
+        BlockedAdsSurrogates.preload(this);
+        BlockedAdsProceduralRuntime.preload(this);
         webView.setWebViewClient(new YouTubeWebViewClient());
+        BlockedAdsBlockingState.attach(webView);
         
         // Add JavaScript interface for ad blocking
         webView.addJavascriptInterface(adBlocker, "AdBlocker");
@@ -124,8 +154,8 @@ public class YouTubeBrowserActivity extends AppCompatActivity {
         double dataSaved = stats.getDataSaved();
         
         String statsDisplay = String.format(
-            "🛡️ %d ads blocked | 📊 %.1f MB saved",
-            adsBlocked, dataSaved
+            "🛡️ %d ads blocked | 📊 %.1f MB saved | 🙈 %d hidden",
+            adsBlocked, dataSaved, elementsHidden
         );
         
         statsText.setText(statsDisplay);
@@ -136,9 +166,45 @@ public class YouTubeBrowserActivity extends AppCompatActivity {
      */
     private class YouTubeWebViewClient extends WebViewClient {
         
+        @Override
+        public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+            // Block ad endpoints at the network level so ad media is never fetched
+            WebResourceResponse blocked = requestInterceptor.intercept(request);
+            if (blocked != null) {
+                return blocked;
+            }
+            
+            return super.shouldInterceptRequest(view, request);
+        }
+        
+        @Override
+        public void onPageStarted(WebView view, String url, Bitmap favicon) {
+            super.onPageStarted(view, url, favicon);
+            requestInterceptor.onPageStarted(url);
+        }
+        
+        @Override
+        public void onPageCommitVisible(WebView view, String url) {
+            super.onPageCommitVisible(view, url);
+            
+            // As early as the document can take it, so ad containers are hidden before they settle
+            injectCosmeticFilters(view);
+            
+            if (!firstPaintRecorded) {
+                firstPaintRecorded = true;
+                recordTimeToFirstPaint();
+            }
+        }
+        
         @Override
         public void onPageFinished(WebView view, String url) {
             super.onPageFinished(view, url);
+            requestInterceptor.onPageFinished(url);
+            
+            if (clearHistoryOnLoad && !url.startsWith("about:")) {
+                clearHistoryOnLoad = false;
+                view.clearHistory();
+            }
             
             // Inject ad blocking JavaScript
             injectAdBlockingScript(view);
@@ -151,32 +217,71 @@ public class YouTubeBrowserActivity extends AppCompatActivity {
         }
         
         @Override
-        public boolean shouldOverrideUrlLoading(WebView view, String url) {
-            // Handle YouTube URLs
-            if (url.contains("youtube.com") || url.contains("youtu.be")) {
-                view.loadUrl(url);
-                return true;
+        public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
+            String url = request.getUrl().toString();
+            
+            // Returning false lets the WebView continue its own navigation without a reload
+            switch (navigationPolicy.decide(url, request.isForMainFrame(), request.isRedirect())) {
+                case BLOCK:
+                    stats.incrementAdsBlocked();
+                    updateStatsDisplay();
+                    return true;
+                case OPEN_EXTERNALLY:
+                    BlockedAdsNavigationPolicy.openExternally(YouTubeBrowserActivity.this, url);
+                    return true;
+                case REWRITE:
+                    // Straight to the destination: the tracker or tracking parameters are never sent
+                    view.loadUrl(navigationPolicy.getRewrittenUrl());
+                    return true;
+                default:
+                    return false;
             }
-            return false;
+        }
+    }
+    
+    /**
+     * Log time from the launch tap to the first visible YouTube content
+     */
+    private void recordTimeToFirstPaint() {
+        long launchTime = getIntent().getLongExtra(EXTRA_LAUNCH_TIME, 0);
+        if (launchTime > 0) {
+            long elapsed = SystemClock.elapsedRealtime() - launchTime;
+            Log.i(TAG, "Time to first paint: " + elapsed + " ms (" + (warmStart ? "warm" : "cold") + " WebView, blocking "
+                + (BlockedAdsBlockingState.isEnabled() ? "on" : "off") + ")");
+        }
+    }
+    
+    /**
+     * Inject the page's cosmetic filters; YouTube's ad containers are among the built-in rules
+     */
+    private void injectCosmeticFilters(WebView webView) {
+        String script = requestInterceptor.getCosmeticScript();
+        if (script != null) {
+            webView.evaluateJavascript(script + BlockedAdsBlockingState.stateScript(), null);
         }
     }
     
     /**
      * Inject ad blocking JavaScript
+     * The script stays installed while blocking is off and resumes when it is turned back on
      */
     private void injectAdBlockingScript(WebView webView) {
         String script = 
-            "javascript:(function() {" +
-            "  // YouTube Ad Blocker Script" +
+            BlockedAdsBlockingState.stateScript() +
+            "(function() {" +
+            "  /* YouTube Ad Blocker Script */" +
             "  function blockYouTubeAds() {" +
-            "    // Block pre-roll ads" +
+            "    if (window.__blockedAdsEnabled === false) {" +
+            "      return;" +
+            "    }" +
+            "    /* Block pre-roll ads */" +
             "    const skipButton = document.querySelector('.ytp-ad-skip-button');" +
             "    if (skipButton && !skipButton.disabled) {" +
             "      skipButton.click();" +
             "      AdBlocker.recordBlockedAd('pre-roll');" +
             "    }" +
             "    " +
-            "    // Block ad countdown" +
+            "    /* Block ad countdown */" +
             "    const adText = document.querySelector('.ytp-ad-text');" +
             "    if (adText) {" +
             "      const video = document.querySelector('video');" +
@@ -185,32 +290,12 @@ public class YouTubeBrowserActivity extends AppCompatActivity {
             "        AdBlocker.recordBlockedAd('countdown');" +
             "      }" +
             "    }" +
-            "    " +
-            "    // Hide banner ads" +
-            "    const adSelectors = [" +
-            "      '.ytd-promoted-sparkles-web-renderer'," +
-            "      '.ytd-ad-slot-renderer'," +
-            "      '.ytd-promoted-video-renderer'," +
-            "      '.ytd-video-masthead-ad-v3-renderer'," +
-            "      '.ytd-compact-promoted-video-renderer'" +
-            "    ];" +
-            "    " +
-            "    adSelectors.forEach(selector => {" +
-            "      const elements = document.querySelectorAll(selector);" +
-            "      elements.forEach(element => {" +
-            "        if (!element.hasAttribute('data-blockedads-hidden')) {" +
-            "          element.style.display = 'none';" +
-            "          element.setAttribute('data-blockedads-hidden', 'true');" +
-            "          AdBlocker.recordBlockedAd('banner');" +
-            "        }" +
-            "      });" +
-            "    });" +
             "  }" +
             "  " +
-            "  // Run immediately" +
+            "  /* Run immediately */" +
             "  blockYouTubeAds();" +
             "  " +
-            "  // Run on mutations" +
+            "  /* Run on mutations */" +
             "  const observer = new MutationObserver(blockYouTubeAds);" +
             "  observer.observe(document.body, { childList: true, subtree: true });" +
             "})();";
@@ -232,6 +317,17 @@ public class YouTubeBrowserActivity extends AppCompatActivity {
             });
         }
         
+        /**
+         * Count elements hidden by procedural filters: no request was blocked, so no data saved
+         */
+        @android.webkit.JavascriptInterface
+        public void recordHiddenElements(int count) {
+            runOnUiThread(() -> {
+                elementsHidden += count;
+                updateStatsDisplay();
+            });
+        }
+        
         @android.webkit.JavascriptInterface
         public void recordYouTubeSession() {
             runOnUiThread(() -> {
@@ -253,6 +349,21 @@ public class YouTubeBrowserActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
+        webView.onResume(); // Paused by BlockedAdsMemoryTrimmer while in the background
         updateStatsDisplay();
     }
+    
+    @Override
+    protected void onDestroy() {
+        BlockedAdsBlockingState.detach(webView);
+        ViewGroup parent = (ViewGroup) webView.getParent();
+        if (parent != null) {
+            parent.removeView(webView);
+        }
+        webView.destroy();
+        
+        // Refill the pool for the next time the browser opens
+        BlockedAdsWebViewPool.schedulePrewarm(this);
+        super.onDestroy();
+    }
 }
@@ -1,7 +1,8 @@
 module.exports = {
   testEnvironment: 'node',
   testMatch: [
-    '**/tests/blockedads-simple-tests.js'
+    '**/tests/blockedads-simple-tests.js',
+    '**/tests/blockedads-procedural-tests.js'
   ],
   testPathIgnorePatterns: [
     '/node_modules/',
@@ -8,6 +8,7 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 import android.content.Context;
+import android.net.Uri;
 import android.webkit.WebResourceRequest;
 import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
@@ -39,8 +40,8 @@ public class BlockedAdsAndroidTests {
     public void setUp() {
         MockitoAnnotations.initMocks(this);
         context = RuntimeEnvironment.getApplication();
-        webViewClient = new BlockedAdsWebViewClient();
         stats = new BlockedAdsStats(context);
+        webViewClient = new BlockedAdsWebViewClient(stats);
         adBlocker = new YouTubeBrowserActivity.YouTubeAdBlocker();
     }
     
@@ -182,7 +183,7 @@ public class BlockedAdsAndroidTests {
         WebResourceResponse response = webViewClient.shouldInterceptRequest(mockWebView, mockRequest);
         
         assertNotNull("Google Analytics should be blocked", response);
-        assertEquals("Should block Google Analytics", "text/plain", response.getMimeType());
+        assertEquals("Should serve the analytics.js surrogate", "application/javascript", response.getMimeType());
     }
     
     @Test
@@ -272,6 +273,30 @@ public class BlockedAdsAndroidTests {
         }
     }
     
+    @Test
+    public void testPageadRuleOnlyMatchesThePathSegment() {
+        BlockedAdsFilterEngine filterEngine = new BlockedAdsFilterEngine();
+        
+        assertTrue(filterEngine.shouldBlockUrl("https://www.youtube.com/pagead/viewthroughconversion/123"));
+        assertFalse("pagead inside a file name should be allowed",
+                    filterEngine.shouldBlockUrl("https://news.example.com/js/homepageaddons.js"));
+        assertFalse("pagead inside a file name should be allowed",
+                    filterEngine.shouldBlockUrl("https://cdn.example.com/img/frontpageadvert-header.png"));
+    }
+    
+    @Test
+    public void testFullyQualifiedHostsAreBlocked() {
+        BlockedAdsFilterEngine filterEngine = new BlockedAdsFilterEngine();
+        
+        assertTrue(filterEngine.shouldBlockUrl("https://securepubads.g.doubleclick.net./tag/js/gpt.js"));
+        assertTrue(filterEngine.shouldBlockUrl("https://www.google-analytics.com./analytics.js"));
+        assertEquals("ads.example.com", BlockedAdsRequestContext.extractHost("https://ads.example.com.:443/x"));
+        
+        BlockedAdsRequestContext context = new BlockedAdsRequestContext(
+            "https://cdn.example.org/a.js", "news.example.org.", BlockedAdsRequestContext.TYPE_SCRIPT, false);
+        assertEquals("news.example.org", context.getDocumentHost());
+    }
+    
     @Test
     public void testPerformanceWithManyRequests() {
         BlockedAdsFilterEngine filterEngine = new BlockedAdsFilterEngine();
@@ -403,4 +428,1280 @@ public class BlockedAdsAndroidTests {
             assertTrue("Should block uBlock Origin domain: " + domain, filterEngine.shouldBlockUrl(url));
         }
     }
+    
+    @Test
+    public void testYouTubeAdEndpointsBlocked() {
+        BlockedAdsFilterEngine filterEngine = BlockedAdsFilterEngine.getShared();
+        
+        String[] youtubeAdEndpoints = {
+            "https://www.youtube.com/pagead/viewthroughconversion/123",
+            "https://www.youtube.com/ptracking?ptk=youtube",
+            "https://m.youtube.com/api/stats/ads?ver=2",
+            "https://www.youtube.com/get_midroll_info?ei=abc",
+            "https://static.doubleclick.net/instream/ad_status.js"
+        };
+        
+        for (String url : youtubeAdEndpoints) {
+            assertTrue("Should block YouTube ad endpoint: " + url, filterEngine.shouldBlockUrl(url));
+        }
+        
+        assertFalse("Should not block YouTube playback stats", 
+                   filterEngine.shouldBlockUrl("https://m.youtube.com/api/stats/playback?ns=yt"));
+        assertFalse("Should not block YouTube player API", 
+                   filterEngine.shouldBlockUrl("https://m.youtube.com/youtubei/v1/player?key=abc"));
+    }
+    
+    @Test
+    public void testNavigationPolicyDecisions() {
+        BlockedAdsNavigationPolicy policy = new BlockedAdsNavigationPolicy(BlockedAdsFilterEngine.getShared());
+        
+        assertEquals("YouTube navigations should continue without a reload", BlockedAdsNavigationPolicy.Decision.ALLOW,
+                    policy.decide("https://m.youtube.com/watch?v=test", true));
+        assertEquals("Ad click-throughs should be blocked", BlockedAdsNavigationPolicy.Decision.BLOCK,
+                    policy.decide("https://www.googleadservices.com/pagead/aclk?sa=L", true));
+        assertEquals("Sub-frame navigations are left to request interception", BlockedAdsNavigationPolicy.Decision.ALLOW,
+                    policy.decide("https://doubleclick.net/ads", false));
+        assertEquals("App links should open externally", BlockedAdsNavigationPolicy.Decision.OPEN_EXTERNALLY,
+                    policy.decide("intent://watch?v=test#Intent;scheme=vnd.youtube;end", true));
+        assertEquals("Internal schemes should stay in the WebView", BlockedAdsNavigationPolicy.Decision.ALLOW,
+                    policy.decide("about:blank", true));
+    }
+    
+    @Test
+    public void testRequestTypeAwareFiltering() {
+        BlockedAdsFilterRule scriptRule = BlockedAdsFilterRule.parse("||ads.example^$script,third-party");
+        
+        assertTrue("Third-party scripts should match", scriptRule.matches(
+            new BlockedAdsRequestContext("https://cdn.ads.example/tag.js", "news.com", BlockedAdsRequestContext.TYPE_SCRIPT, false)));
+        assertFalse("First-party scripts should not match", scriptRule.matches(
+            new BlockedAdsRequestContext("https://cdn.ads.example/tag.js", "ads.example", BlockedAdsRequestContext.TYPE_SCRIPT, false)));
+        assertFalse("Images should not match a $script rule", scriptRule.matches(
+            new BlockedAdsRequestContext("https://cdn.ads.example/banner.png", "news.com", BlockedAdsRequestContext.TYPE_IMAGE, false)));
+        
+        assertEquals("Script type should be inferred from the extension", BlockedAdsRequestContext.TYPE_SCRIPT,
+                    BlockedAdsRequestContext.typeFromExtension("https://example.com/app.js?v=1"));
+    }
+    
+    @Test
+    public void testMainFrameNavigationsNotBlocked() throws Exception {
+        when(mockRequest.getUrl()).thenReturn(Uri.parse("https://doubleclick.net/"));
+        when(mockRequest.isForMainFrame()).thenReturn(true);
+        
+        WebResourceResponse response = webViewClient.shouldInterceptRequest(mockWebView, mockRequest);
+        
+        assertNull("Main-frame loads are left to the navigation policy", response);
+    }
+    
+    @Test
+    public void testBlockedResponsesMatchResourceType() throws Exception {
+        BlockedAdsSurrogates.preload(context);
+        
+        when(mockRequest.getUrl()).thenReturn(Uri.parse("https://doubleclick.net/pixel.gif"));
+        WebResourceResponse image = webViewClient.shouldInterceptRequest(mockWebView, mockRequest);
+        assertEquals("Blocked images should get a 1x1 GIF", "image/gif", image.getMimeType());
+        
+        when(mockRequest.getUrl()).thenReturn(Uri.parse("https://www.googletagmanager.com/gtm.js?id=GTM-1"));
+        WebResourceResponse script = webViewClient.shouldInterceptRequest(mockWebView, mockRequest);
+        assertEquals("Blocked scripts should get a script surrogate", "application/javascript", script.getMimeType());
+        assertTrue("gtm.js surrogate should not be empty", script.getData().available() > 0);
+        
+        when(mockRequest.getUrl()).thenReturn(Uri.parse("https://doubleclick.net/ads"));
+        WebResourceResponse other = webViewClient.shouldInterceptRequest(mockWebView, mockRequest);
+        assertEquals("Other blocked requests should get 204 No Content", 204, other.getStatusCode());
+    }
+    
+    @Test
+    public void testFilterListEngineExtendsBootstrapRules() {
+        java.util.List<String> listLines = java.util.Arrays.asList(
+            "! Microsoft Ads",
+            "||ads1.msn.com^",
+            "##.advertisement"
+        );
+        
+        BlockedAdsFilterEngine bootstrap = new BlockedAdsFilterEngine();
+        BlockedAdsFilterEngine fullEngine = new BlockedAdsFilterEngine(listLines);
+        
+        assertFalse("Bootstrap rules should not include list rules", bootstrap.shouldBlockUrl("https://ads1.msn.com/ad.js"));
+        assertTrue("List rules should be compiled", fullEngine.shouldBlockUrl("https://ads1.msn.com/ad.js"));
+        assertTrue("Built-in rules should stay active", fullEngine.shouldBlockUrl("https://doubleclick.net/ads"));
+    }
+    
+    @Test
+    public void testParallelCompileMatchesSequential() {
+        java.util.List<String> lines = new java.util.ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            switch (i % 5) {
+                case 0: lines.add("||ads" + i + ".example.com^"); break;
+                case 1: lines.add("/banner" + i + "/*$image"); break;
+                case 2: lines.add("@@||cdn" + i + ".example.com^"); break;
+                case 3: lines.add("example" + i + ".com##.ad-slot"); break;
+                default: lines.add("! comment " + i); break;
+            }
+        }
+        lines.add("||ads0.example.com^"); // Duplicate is dropped
+        
+        BlockedAdsCompiledFilters sequential = BlockedAdsListCompiler.compile(lines);
+        BlockedAdsCompiledFilters parallel = BlockedAdsListCompiler.compile(lines, new java.util.concurrent.ForkJoinPool(4));
+        
+        assertArrayEquals("Parallel output should be byte-identical", sequential.serialize(), parallel.serialize());
+        assertEquals("Domain rules should be classified and deduplicated", 2000, parallel.getDomainRules().size());
+        assertEquals("Generic rules should be classified", 2000, parallel.getGenericRules().size());
+        assertEquals("Exception rules should be classified", 2000, parallel.getExceptionRules().size());
+        assertEquals("Cosmetic rules should be classified", 2000, parallel.getCosmeticRules().size());
+    }
+    
+    @Test
+    public void testStreamingParserSkipsCommentsWithoutAllocating() throws Exception {
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            list.append("! Comment line ").append(i).append("\r\n");
+        }
+        list.append("||ads.example.com^\r\n[Adblock Plus 2.0]\n\n  ||tracker.example.net^$third-party");
+        byte[] bytes = list.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        
+        final java.util.List<String> rules = new java.util.ArrayList<>();
+        BlockedAdsRuleParser.RuleSink sink = new BlockedAdsRuleParser.RuleSink() {
+            @Override
+            public void onRule(String line) {
+                rules.add(line);
+            }
+        };
+        
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        BlockedAdsRuleParser.parse(new java.io.ByteArrayInputStream(bytes), sink);
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        
+        assertEquals("Only rule lines should reach the sink",
+            java.util.Arrays.asList("||ads.example.com^", "||tracker.example.net^$third-party"), rules);
+        assertTrue("Comment lines should not allocate (allocated " + allocated + " bytes for " + bytes.length + ")",
+            allocated < 256 * 1024);
+        
+        rules.clear();
+        BlockedAdsRuleParser.parse(java.nio.ByteBuffer.wrap(bytes), sink);
+        assertEquals("ByteBuffer parsing should match stream parsing", 2, rules.size());
+    }
+    
+    @Test
+    public void testStreamingParserPeakHeapOn5MbList() throws Exception {
+        final java.io.File listFile = java.io.File.createTempFile("blockedads-list", ".txt");
+        listFile.deleteOnExit();
+        try (java.io.Writer writer = new java.io.OutputStreamWriter(new java.io.FileOutputStream(listFile), "UTF-8")) {
+            for (int i = 0; listFile.length() < 5 * 1024 * 1024; i++) {
+                writer.write(i % 4 == 0 ? "! Comment " + i + "\n" : "||ad" + i + ".example" + (i % 97) + ".com^$third-party\n");
+                if (i % 10000 == 0) {
+                    writer.flush();
+                }
+            }
+        }
+        
+        final java.util.concurrent.atomic.AtomicInteger streamed = new java.util.concurrent.atomic.AtomicInteger();
+        long streamingPeak = measurePeakHeap(new java.util.concurrent.Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                try (java.io.InputStream in = new java.io.FileInputStream(listFile)) {
+                    BlockedAdsRuleParser.parse(in, new BlockedAdsRuleParser.RuleSink() {
+                        @Override
+                        public void onRule(String line) {
+                            streamed.incrementAndGet();
+                        }
+                    });
+                }
+                return null;
+            }
+        });
+        long materializedPeak = measurePeakHeap(new java.util.concurrent.Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return java.nio.file.Files.readAllLines(listFile.toPath());
+            }
+        });
+        
+        System.out.println(String.format("5 MB list: streaming peak %.1f MB, readAllLines peak %.1f MB, %d rules",
+            streamingPeak / 1e6, materializedPeak / 1e6, streamed.get()));
+        assertTrue("Rules should be streamed", streamed.get() > 100000);
+        assertTrue("Streaming should keep far less of the list alive than readAllLines ("
+            + streamingPeak + " vs " + materializedPeak + " bytes)", streamingPeak < materializedPeak / 4);
+    }
+    
+    /**
+     * Peak heap kept alive while work runs and by its result, over the heap before it
+     * Samples follow a full collection, so short-lived garbage does not count
+     */
+    private static long measurePeakHeap(java.util.concurrent.Callable<Object> work) throws Exception {
+        final long baseline = liveHeap();
+        final java.util.concurrent.atomic.AtomicLong peak = new java.util.concurrent.atomic.AtomicLong(baseline);
+        final java.util.concurrent.atomic.AtomicBoolean running = new java.util.concurrent.atomic.AtomicBoolean(true);
+        Thread sampler = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    peak.accumulateAndGet(liveHeap(), Math::max);
+                }
+            }
+        });
+        sampler.start();
+        java.util.concurrent.atomic.AtomicReference<Object> result = new java.util.concurrent.atomic.AtomicReference<>(work.call());
+        peak.accumulateAndGet(liveHeap(), Math::max);
+        result.set(null);
+        running.set(false);
+        sampler.join();
+        return peak.get() - baseline;
+    }
+    
+    // Heap still in use after a full collection
+    private static long liveHeap() {
+        System.gc();
+        long used = 0;
+        for (java.lang.management.MemoryPoolMXBean pool : java.lang.management.ManagementFactory.getMemoryPoolMXBeans()) {
+            java.lang.management.MemoryUsage usage = pool.getCollectionUsage();
+            if (pool.getType() == java.lang.management.MemoryType.HEAP && usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return used;
+    }
+    
+    @Test
+    public void testCompactRuleStoreBytesPerRule() {
+        // Baseline before the list exists and inputs dropped after, so the delta is what the engine retains
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long baseline = runtime.totalMemory() - runtime.freeMemory();
+        
+        java.util.List<String> lines = new java.util.ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            switch (i % 4) {
+                case 0:
+                    lines.add("||ads" + i + ".example" + (i % 500) + ".com^");
+                    break;
+                case 1:
+                    lines.add("||tracker" + i + ".net^$script,third-party");
+                    break;
+                case 2:
+                    lines.add("||cdn" + (i % 1000) + ".example.org/ads/" + i + "/*^$image,domain=site" + (i % 50) + ".com|~news.site.com");
+                    break;
+                default:
+                    lines.add("/banner" + i + "/*.gif$image");
+                    break;
+            }
+        }
+        
+        BlockedAdsFilterEngine engine = new BlockedAdsFilterEngine(BlockedAdsListCompiler.compile(lines));
+        lines = null;
+        System.gc();
+        long retained = runtime.totalMemory() - runtime.freeMemory() - baseline;
+        
+        int ruleCount = engine.getRuleCount();
+        double bytesPerRule = engine.getRuleHeapBytes() / (double) ruleCount;
+        System.out.println(String.format("%d rules: %.1f bytes/rule in the rule store, %.1f MB heap delta after GC",
+            ruleCount, bytesPerRule, retained / 1e6));
+        assertEquals("All rules should be stored", 100000, ruleCount);
+        assertTrue("Rule store should use a small number of bytes per rule", bytesPerRule < 100);
+        
+        // The compact store still honours anchors, wildcards and options
+        assertTrue(engine.shouldBlock(new BlockedAdsRequestContext("https://x.ads4.example4.com/a.js",
+            "news.com", BlockedAdsRequestContext.TYPE_SCRIPT, false)));
+        assertTrue(engine.shouldBlock(new BlockedAdsRequestContext("https://cdn2.example.org/ads/2/x/y.png",
+            "www.site2.com", BlockedAdsRequestContext.TYPE_IMAGE, false)));
+        assertFalse("$domain rules should not match other sites", engine.shouldBlock(new BlockedAdsRequestContext(
+            "https://cdn2.example.org/ads/2/x/y.png", "news.site.com", BlockedAdsRequestContext.TYPE_IMAGE, false)));
+        assertFalse("$third-party rule should not match first-party requests", engine.shouldBlock(
+            new BlockedAdsRequestContext("https://tracker1.net/t.js", "tracker1.net", BlockedAdsRequestContext.TYPE_SCRIPT, false)));
+        assertTrue(engine.shouldBlock(new BlockedAdsRequestContext("https://img.example.com/banner3/top/ad.GIF",
+            "example.com", BlockedAdsRequestContext.TYPE_IMAGE, false)));
+    }
+    
+    @Test
+    public void testExceptionRulesAndSitePause() throws Exception {
+        BlockedAdsFilterEngine engine = new BlockedAdsFilterEngine(java.util.Arrays.asList(
+            "||ads.example.com^", "@@||ads.example.com/consent/", "@@||shop.example^$document"));
+        assertTrue(engine.shouldBlockUrl("https://ads.example.com/banner.js"));
+        assertFalse("@@ rules should unblock matching requests", engine.shouldBlockUrl("https://ads.example.com/consent/ok.js"));
+        assertTrue("$document exceptions should exempt the whole page", engine.isDocumentAllowed("https://www.shop.example/cart"));
+        assertFalse(engine.isDocumentAllowed("https://news.example/"));
+        
+        java.io.File file = java.io.File.createTempFile("blockedads-allowlist", ".txt");
+        file.delete();
+        BlockedAdsSiteAllowlist.load(file);
+        BlockedAdsRequestInterceptor interceptor = new BlockedAdsRequestInterceptor(new BlockedAdsFilterEngine(), null);
+        when(mockRequest.getUrl()).thenReturn(Uri.parse("https://doubleclick.net/ad.js"));
+        try {
+            BlockedAdsSiteAllowlist.add("www.news.com");
+            assertTrue("Pausing should cover subdomains", BlockedAdsSiteAllowlist.isAllowed("m.news.com"));
+            assertFalse(BlockedAdsSiteAllowlist.isAllowed("othernews.com"));
+            
+            interceptor.onPageStarted("https://m.news.com/article");
+            assertNull("Paused sites should skip blocking", interceptor.intercept(mockRequest));
+            
+            // Round trip through the allowlist file
+            java.io.File copy = new java.io.File(file.getPath() + ".copy");
+            BlockedAdsSiteAllowlist.save(copy, BlockedAdsSiteAllowlist.getHosts());
+            BlockedAdsSiteAllowlist.load(copy);
+            assertTrue("Allowlist should be persisted", BlockedAdsSiteAllowlist.isAllowed("news.com"));
+            copy.delete();
+            
+            BlockedAdsSiteAllowlist.remove("m.news.com");
+            interceptor.onPageStarted("https://m.news.com/article");
+            assertNotNull("Resumed sites should be blocked again", interceptor.intercept(mockRequest));
+            
+            BlockedAdsBlockingState.setEnabled(context, false);
+            assertNull("The global toggle should bypass the engine", interceptor.intercept(mockRequest));
+        } finally {
+            BlockedAdsBlockingState.setEnabled(context, true);
+            BlockedAdsSiteAllowlist.remove("news.com");
+        }
+    }
+    
+    @Test
+    public void testAllowlistChangesBeforeTheFileIsReadAreKept() throws Exception {
+        java.io.File file = java.io.File.createTempFile("blockedads-allowlist", ".txt");
+        BlockedAdsSiteAllowlist.save(file, java.util.Collections.singleton("news.com"));
+        BlockedAdsSiteAllowlist.init(file);
+        try {
+            // Nothing has read the file yet; the change must apply on top of it and be saved
+            BlockedAdsSiteAllowlist.add("shop.example");
+            assertTrue("Hosts from the file should be loaded", BlockedAdsSiteAllowlist.isAllowed("m.news.com"));
+            assertTrue(BlockedAdsSiteAllowlist.isAllowed("shop.example"));
+            
+            BlockedAdsSiteAllowlist.awaitWrites();
+            BlockedAdsSiteAllowlist.load(file);
+            assertEquals(new java.util.HashSet<>(java.util.Arrays.asList("news.com", "shop.example")),
+                BlockedAdsSiteAllowlist.getHosts());
+        } finally {
+            BlockedAdsSiteAllowlist.remove("news.com");
+            BlockedAdsSiteAllowlist.remove("shop.example");
+            file.delete();
+        }
+    }
+    
+    @Test
+    public void testBlockingStateTogglesLiveWebViews() {
+        BlockedAdsBlockingState.attach(mockWebView);
+        BlockedAdsRequestInterceptor interceptor = new BlockedAdsRequestInterceptor(null);
+        interceptor.onPageStarted("https://news.example/");
+        when(mockRequest.getUrl()).thenReturn(Uri.parse("https://doubleclick.net/ad.js"));
+        try {
+            BlockedAdsBlockingState.setEnabled(context, false);
+            assertNull("Requests should load while blocking is off", interceptor.intercept(mockRequest));
+            assertEquals("Navigations should follow the state", BlockedAdsNavigationPolicy.Decision.ALLOW,
+                new BlockedAdsNavigationPolicy().decide("https://doubleclick.net/click", true));
+            verify(mockWebView).evaluateJavascript(contains("__blockedAdsEnabled = false"), any());
+            
+            BlockedAdsBlockingState.load(context);
+            assertFalse("State should be persisted", BlockedAdsBlockingState.isEnabled());
+            
+            BlockedAdsBlockingState.setEnabled(context, true);
+            assertNotNull("The same page should be blocked again without a reload", interceptor.intercept(mockRequest));
+            verify(mockWebView).evaluateJavascript(contains("__blockedAdsEnabled = true"), any());
+        } finally {
+            BlockedAdsBlockingState.setEnabled(context, true);
+            BlockedAdsBlockingState.detach(mockWebView);
+        }
+    }
+    
+    @Test
+    public void testPageLoadTelemetry() {
+        BlockedAdsTelemetry.clear();
+        BlockedAdsRequestInterceptor interceptor = new BlockedAdsRequestInterceptor(new BlockedAdsFilterEngine(), null);
+        
+        interceptor.onPageStarted("https://news.example/article");
+        when(mockRequest.getUrl()).thenReturn(Uri.parse("https://doubleclick.net/ad.js"));
+        assertNotNull(interceptor.intercept(mockRequest));
+        when(mockRequest.getUrl()).thenReturn(Uri.parse("https://news.example/app.js"));
+        assertNull(interceptor.intercept(mockRequest));
+        interceptor.onPageFinished("https://news.example/article");
+        
+        java.util.List<BlockedAdsPageMetrics> pages = BlockedAdsTelemetry.snapshot();
+        assertEquals("One navigation should be recorded", 1, pages.size());
+        BlockedAdsPageMetrics page = pages.get(0);
+        assertEquals("news.example", page.getHost());
+        assertEquals(2, page.getRequests());
+        assertEquals(1, page.getBlocked());
+        assertEquals(1, page.getAllowed());
+        assertTrue("Blocked requests should count avoided bytes", page.getBytesAvoided() > 0);
+        assertTrue("Load time should be measured", page.getLoadMillis() >= 0);
+        
+        String json = BlockedAdsTelemetry.toJson();
+        assertTrue(json, json.startsWith("{\"pages\":[{\"host\":\"news.example\""));
+        assertTrue(json, json.contains("\"requests\":2,\"blocked\":1,\"allowed\":1"));
+        
+        // The ring buffer keeps only the newest navigations
+        for (int i = 0; i < BlockedAdsTelemetry.CAPACITY + 10; i++) {
+            interceptor.onPageStarted("https://site" + i + ".example/");
+            interceptor.onPageFinished("https://site" + i + ".example/");
+        }
+        pages = BlockedAdsTelemetry.snapshot();
+        assertEquals(BlockedAdsTelemetry.CAPACITY, pages.size());
+        assertEquals("site10.example", pages.get(0).getHost());
+        BlockedAdsTelemetry.clear();
+    }
+    
+    @Test
+    public void testRequestsAfterPageFinishedAreNotChargedToTheNextPage() {
+        BlockedAdsTelemetry.clear();
+        BlockedAdsRequestInterceptor interceptor = new BlockedAdsRequestInterceptor(new BlockedAdsFilterEngine(), null);
+        interceptor.onPageStarted("https://first.example/");
+        interceptor.onPageFinished("https://first.example/");
+        
+        // Late XHRs and ad pings of the finished page
+        when(mockRequest.isForMainFrame()).thenReturn(false);
+        when(mockRequest.getUrl()).thenReturn(Uri.parse("https://doubleclick.net/ping"));
+        assertNotNull(interceptor.intercept(mockRequest));
+        when(mockRequest.getUrl()).thenReturn(Uri.parse("https://first.example/api/poll"));
+        assertNull(interceptor.intercept(mockRequest));
+        
+        // The next navigation's main-frame request arrives before onPageStarted
+        when(mockRequest.isForMainFrame()).thenReturn(true);
+        when(mockRequest.getUrl()).thenReturn(Uri.parse("https://second.example/"));
+        assertNull(interceptor.intercept(mockRequest));
+        interceptor.onPageStarted("https://second.example/");
+        interceptor.onPageFinished("https://second.example/");
+        
+        java.util.List<BlockedAdsPageMetrics> pages = BlockedAdsTelemetry.snapshot();
+        assertEquals(2, pages.size());
+        BlockedAdsPageMetrics second = pages.get(1);
+        assertEquals("second.example", second.getHost());
+        assertEquals("Only the main-frame request belongs to the next page", 1, second.getRequests());
+        assertEquals(0, second.getBlocked());
+        BlockedAdsTelemetry.clear();
+    }
+    
+    @Test
+    public void testReplayHarnessReportsVerdictDiffs() throws Exception {
+        java.util.List<BlockedAdsTraceReader.Entry> trace = BlockedAdsTraceReader.readUrlTrace(new java.io.StringReader(
+            "# url [pageUrl [type]]\n"
+            + "https://news.example/ https://news.example/ document\n"
+            + "+5 https://news.example/app.js https://news.example/\n"
+            + "+9 https://doubleclick.net/ad.gif https://news.example/ image\n"
+            + "https://cdn.example.org/banner/ad.png https://news.example/\n"));
+        assertEquals(4, trace.size());
+        assertTrue("Documents loaded as their own page are main frames", trace.get(0).context.isMainFrame());
+        assertEquals(9, trace.get(3).offsetMillis);
+        
+        BlockedAdsFilterEngine baseline = new BlockedAdsFilterEngine();
+        BlockedAdsFilterEngine candidate = new BlockedAdsFilterEngine(java.util.Arrays.asList("||cdn.example.org/banner/"));
+        BlockedAdsReplayHarness.Report baselineReport = BlockedAdsReplayHarness.replay(baseline, trace, 2, false);
+        BlockedAdsReplayHarness.Report candidateReport = BlockedAdsReplayHarness.replay(candidate, trace, 2, true);
+        assertEquals(1, baselineReport.getBlocked());
+        assertEquals(2, candidateReport.getBlocked());
+        assertTrue("Paced replay should follow the recorded offsets", candidateReport.wallNanos >= 9000000);
+        assertTrue(candidateReport.getPercentileNanos(99) >= candidateReport.getPercentileNanos(50));
+        assertEquals(java.util.Collections.singletonList("+ https://cdn.example.org/banner/ad.png"),
+            BlockedAdsReplayHarness.diff(baselineReport, candidateReport, trace));
+        
+        java.util.List<BlockedAdsTraceReader.Entry> har = BlockedAdsTraceReader.readHar(new java.io.StringReader(
+            "{\"log\":{\"entries\":["
+            + "{\"pageref\":\"p1\",\"startedDateTime\":\"2024-05-01T10:00:00.000Z\",\"_resourceType\":\"document\","
+            + "\"request\":{\"url\":\"https://news.example/\",\"headers\":[]}},"
+            + "{\"pageref\":\"p1\",\"startedDateTime\":\"2024-05-01T10:00:00.250+00:00\",\"_resourceType\":\"script\","
+            + "\"request\":{\"url\":\"https://securepubads.g.doubleclick.net/tag/js/gpt.js\",\"headers\":[]}}]}}"));
+        assertEquals(2, har.size());
+        assertEquals(250, har.get(1).offsetMillis);
+        assertEquals("news.example", har.get(1).context.getDocumentHost());
+        assertEquals(BlockedAdsRequestContext.TYPE_SCRIPT, har.get(1).context.getType());
+        assertEquals(1, BlockedAdsReplayHarness.replay(baseline, har, 1, false).getBlocked());
+        
+        // Offsets count from the earliest parsable time; a missing one must not become the base
+        har = BlockedAdsTraceReader.readHar(new java.io.StringReader(
+            "{\"log\":{\"entries\":["
+            + "{\"startedDateTime\":\"soon\",\"request\":{\"url\":\"https://news.example/a.js\"}},"
+            + "{\"startedDateTime\":\"2024-05-01T10:00:01.000Z\",\"request\":{\"url\":\"https://news.example/b.js\"}},"
+            + "{\"startedDateTime\":\"2024-05-01T10:00:00.500Z\",\"request\":{\"url\":\"https://news.example/c.js\"}},"
+            + "{\"request\":{\"url\":42}}, 7, {\"pageref\":1,\"request\":{\"url\":\"https://news.example/d.js\"}}]}}"));
+        assertEquals("Entries without a string URL are skipped", 4, har.size());
+        assertEquals(0, har.get(0).offsetMillis);
+        assertEquals(500, har.get(1).offsetMillis);
+        assertEquals(0, har.get(2).offsetMillis);
+        assertEquals(0, har.get(3).offsetMillis);
+        try {
+            BlockedAdsTraceReader.readHar(new java.io.StringReader("{\"log\":[]}"));
+            fail("A malformed HAR should be reported as an IOException");
+        } catch (java.io.IOException expected) {
+            // Expected
+        }
+    }
+    
+    @Test
+    public void testOptimizedEngineAgreesWithRegexReference() {
+        java.util.Random random = new java.util.Random(20240501L);
+        for (int round = 0; round < 3000; round++) {
+            java.util.List<String> rules = new java.util.ArrayList<>();
+            int ruleCount = 1 + random.nextInt(4);
+            for (int i = 0; i < ruleCount; i++) {
+                rules.add(randomRule(random));
+            }
+            for (int i = 0; i < 40; i++) {
+                BlockedAdsRequestContext context = randomContext(random);
+                if (referenceVerdict(rules, context) != engineVerdict(rules, context)) {
+                    fail("Engine disagrees with the regex reference; minimal case: " + shrink(rules, context));
+                }
+            }
+        }
+    }
+    
+    private static final String[] FUZZ_HOSTS = {"ads.example", "cdn.ads.example", "example", "x-1.tracker.net", "tracker.net"};
+    private static final String[] FUZZ_TOKENS = {"ads", "Ad", "/", ".", "-", "_", "%", "?", "=", "&", ":", "b1", "js", "|", "$"};
+    
+    private static String randomRule(java.util.Random random) {
+        StringBuilder rule = new StringBuilder();
+        if (random.nextInt(4) == 0) {
+            rule.append("@@");
+        }
+        if (random.nextInt(8) == 0) {
+            rule.append('/').append(FUZZ_TOKENS[random.nextInt(3)]).append(random.nextBoolean() ? "[0-9]*" : ".?")
+                .append(FUZZ_TOKENS[random.nextInt(FUZZ_TOKENS.length - 2)]).append('/');
+        } else {
+            switch (random.nextInt(3)) {
+                case 0:
+                    rule.append("||").append(FUZZ_HOSTS[random.nextInt(FUZZ_HOSTS.length)]).append(random.nextBoolean() ? "^" : "/");
+                    break;
+                case 1:
+                    rule.append(random.nextBoolean() ? "|https://" : "|http");
+                    break;
+                default:
+                    break;
+            }
+            int tokens = random.nextInt(5);
+            for (int i = 0; i < tokens; i++) {
+                int pick = random.nextInt(FUZZ_TOKENS.length + 2);
+                rule.append(pick == FUZZ_TOKENS.length ? "*" : pick > FUZZ_TOKENS.length ? "^" : FUZZ_TOKENS[pick]);
+            }
+            if (random.nextInt(6) == 0) {
+                rule.append('|');
+            }
+        }
+        
+        java.util.List<String> options = new java.util.ArrayList<>();
+        String[] choices = {"script", "image", "~image", "third-party", "~third-party", "match-case", "document",
+            "domain=example|~cdn.example", "domain=tracker.net"};
+        for (String option : choices) {
+            if (random.nextInt(10) == 0) {
+                options.add(option);
+            }
+        }
+        if (!options.isEmpty()) {
+            rule.append('$').append(String.join(",", options));
+        }
+        return rule.toString();
+    }
+    
+    private static BlockedAdsRequestContext randomContext(java.util.Random random) {
+        StringBuilder url = new StringBuilder(random.nextInt(6) == 0 ? "HTTP://" : "https://");
+        if (random.nextBoolean()) {
+            url.append(random.nextBoolean() ? "www." : "a.b.");
+        }
+        url.append(FUZZ_HOSTS[random.nextInt(FUZZ_HOSTS.length)]);
+        if (random.nextInt(5) == 0) {
+            url.append(":8080");
+        }
+        url.append('/');
+        int tokens = random.nextInt(6);
+        for (int i = 0; i < tokens; i++) {
+            url.append(FUZZ_TOKENS[random.nextInt(FUZZ_TOKENS.length)]);
+        }
+        
+        String documentHost = random.nextInt(5) == 0 ? null : FUZZ_HOSTS[random.nextInt(FUZZ_HOSTS.length)];
+        int type = 1 << random.nextInt(11);
+        boolean mainFrame = type == BlockedAdsRequestContext.TYPE_DOCUMENT && random.nextBoolean();
+        return new BlockedAdsRequestContext(url.toString(), mainFrame ? null : documentHost, type, mainFrame);
+    }
+    
+    /**
+     * Reference semantics: every rule's regex tried in turn, exceptions override blocks
+     */
+    private static boolean referenceVerdict(java.util.List<String> rules, BlockedAdsRequestContext context) {
+        if (context.getHost() == null) {
+            return false;
+        }
+        boolean blocked = false;
+        for (String line : rules) {
+            BlockedAdsFilterRule rule = BlockedAdsFilterRule.parse(line);
+            if (rule != null && rule.matches(context)) {
+                if (rule.isException()) {
+                    return false;
+                }
+                blocked = true;
+            }
+        }
+        return blocked;
+    }
+    
+    private static boolean engineVerdict(java.util.List<String> rules, BlockedAdsRequestContext context) {
+        BlockedAdsFilterEngine engine = new BlockedAdsFilterEngine(BlockedAdsListCompiler.compile(rules));
+        return engine.shouldBlock(freshContext(context));
+    }
+    
+    private static BlockedAdsRequestContext freshContext(BlockedAdsRequestContext context) {
+        return new BlockedAdsRequestContext(context.getUrl(), context.getDocumentHost(), context.getType(), context.isMainFrame());
+    }
+    
+    /**
+     * Shrink a disagreement by dropping rules, then single characters of the rules and the URL,
+     * for as long as the engines still disagree
+     */
+    private static String shrink(java.util.List<String> rules, BlockedAdsRequestContext context) {
+        java.util.List<String> current = new java.util.ArrayList<>(rules);
+        String url = context.getUrl();
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (int i = 0; i < current.size() && current.size() > 1; i++) {
+                java.util.List<String> candidate = new java.util.ArrayList<>(current);
+                candidate.remove(i);
+                if (disagrees(candidate, url, context)) {
+                    current = candidate;
+                    progress = true;
+                }
+            }
+            for (int r = 0; r < current.size(); r++) {
+                for (int i = 0; i < current.get(r).length(); i++) {
+                    java.util.List<String> candidate = new java.util.ArrayList<>(current);
+                    candidate.set(r, current.get(r).substring(0, i) + current.get(r).substring(i + 1));
+                    if (disagrees(candidate, url, context)) {
+                        current = candidate;
+                        progress = true;
+                    }
+                }
+            }
+            for (int i = url.indexOf("://") + 3; i < url.length(); i++) {
+                String candidate = url.substring(0, i) + url.substring(i + 1);
+                if (disagrees(current, candidate, context)) {
+                    url = candidate;
+                    progress = true;
+                }
+            }
+        }
+        return "rules=" + current + " url=" + url + " page=" + context.getDocumentHost()
+            + " type=" + context.getType() + " mainFrame=" + context.isMainFrame();
+    }
+    
+    private static boolean disagrees(java.util.List<String> rules, String url, BlockedAdsRequestContext template) {
+        BlockedAdsRequestContext context = new BlockedAdsRequestContext(url, template.getDocumentHost(),
+            template.getType(), template.isMainFrame());
+        return referenceVerdict(rules, context) != engineVerdict(rules, context);
+    }
+    
+    @Test
+    public void testStatsJournalRecoversNewestValidRecord() throws Exception {
+        java.io.File file = java.io.File.createTempFile("blockedads-stats", ".journal");
+        assertTrue(file.delete());
+        
+        BlockedAdsStatsJournal journal = BlockedAdsStatsJournal.open(file);
+        assertTrue("A new journal should be marked fresh for the legacy import", journal.isFresh());
+        
+        // Enough updates to wrap the ring of slots several times
+        for (int i = 0; i < BlockedAdsStatsJournal.SLOT_COUNT * 3; i++) {
+            journal.add(BlockedAdsStatsJournal.FIELD_ADS_BLOCKED, 1);
+        }
+        journal.add(BlockedAdsStatsJournal.FIELD_BYTES_SAVED, 50 * 1000);
+        assertEquals("The journal file should not grow", BlockedAdsStatsJournal.FILE_SIZE, file.length());
+        
+        BlockedAdsStatsJournal reopened = BlockedAdsStatsJournal.open(file);
+        assertFalse(reopened.isFresh());
+        assertEquals(BlockedAdsStatsJournal.SLOT_COUNT * 3, reopened.get(BlockedAdsStatsJournal.FIELD_ADS_BLOCKED));
+        assertEquals(50 * 1000, reopened.get(BlockedAdsStatsJournal.FIELD_BYTES_SAVED));
+        
+        // A torn newest record falls back to the snapshot before it
+        try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file, "rw")) {
+            raf.seek(reopened.getLastRecordOffset() + 12);
+            raf.write(0x7f);
+        }
+        BlockedAdsStatsJournal recovered = BlockedAdsStatsJournal.open(file);
+        assertEquals(BlockedAdsStatsJournal.SLOT_COUNT * 3, recovered.get(BlockedAdsStatsJournal.FIELD_ADS_BLOCKED));
+        assertEquals("The torn update should be the only one lost", 0, recovered.get(BlockedAdsStatsJournal.FIELD_BYTES_SAVED));
+        file.delete();
+        
+        // Every BlockedAdsStats shares one journal, and data saved no longer drifts through float storage
+        BlockedAdsStats first = new BlockedAdsStats(context);
+        BlockedAdsStats second = new BlockedAdsStats(context);
+        int blockedBefore = second.getAdsBlocked();
+        double savedBefore = second.getDataSaved();
+        first.incrementAdsBlocked();
+        for (int i = 0; i < 10; i++) {
+            first.addDataSaved(0.05);
+        }
+        assertEquals(blockedBefore + 1, second.getAdsBlocked());
+        assertEquals(savedBefore + 0.5, second.getDataSaved(), 1e-9);
+    }
+    
+    @Test
+    public void testChromeRulesMergeDomainsAndDropRedundantRules() {
+        BlockedAdsChromeRulesCompiler.Ruleset ruleset = BlockedAdsChromeRulesCompiler.compile(java.util.Arrays.asList(
+            "||ads.example.com^",
+            "||tracker.net^",
+            "||ads.example.com^",
+            "||cdn.tracker.net^",
+            "||tracker.net^$third-party",
+            "||metrics.example.org^$third-party",
+            "||stats.example.org^$third-party",
+            "||tracker.net/pixel^$image",
+            "/banner/*/ad.$~image,match-case",
+            "/ad(?=s)/",
+            "/ad|banner",
+            "@@||news.example.com^$document",
+            "##.ad-banner"));
+        String json = ruleset.toJson();
+        
+        assertTrue("Plain host rules should share one requestDomains list",
+            json.contains("\"requestDomains\": [\"ads.example.com\", \"tracker.net\"]"));
+        assertTrue("Host rules with the same options should be merged",
+            json.contains("\"requestDomains\": [\"metrics.example.org\", \"stats.example.org\"],\n      \"domainType\": \"thirdParty\""));
+        assertEquals("Rules a plain host rule already covers should be dropped", 3, ruleset.getRedundant());
+        assertFalse(json.contains("cdn.tracker.net"));
+        assertFalse(json.contains("pixel"));
+        
+        assertTrue(json.contains("\"urlFilter\": \"/banner/*/ad.\",\n      \"isUrlFilterCaseSensitive\": true,\n"
+            + "      \"excludedResourceTypes\": [\"main_frame\", \"image\"]"));
+        assertTrue("$document exceptions should allow the whole page",
+            json.contains("\"type\": \"allowAllRequests\""));
+        assertTrue("Allow rules should come first", json.indexOf("allowAllRequests") < json.indexOf("\"block\""));
+        assertEquals("Lookahead regexes and mid-pattern | are not expressible", 2, ruleset.getUnsupported());
+        assertEquals(4, ruleset.getRuleCount());
+        assertEquals(4, json.split("\"id\"").length - 1);
+    }
+    
+    @Test
+    public void testPublicSuffixIndexFindsRegistrableDomains() {
+        BlockedAdsPublicSuffixes.use(BlockedAdsPublicSuffixCompiler.compile(java.util.Arrays.asList(
+            "com", "uk", "co.uk", "io", "github.io", "ck", "*.ck", "!www.ck", "рф")));
+        try {
+            assertEquals("example.com", BlockedAdsPublicSuffixes.registrableDomain("ads.cdn.example.com"));
+            assertEquals("bbc.co.uk", BlockedAdsPublicSuffixes.registrableDomain("news.bbc.co.uk"));
+            assertEquals("user.github.io", BlockedAdsPublicSuffixes.registrableDomain("cdn.user.github.io"));
+            assertEquals("Wildcard rules make every label under them a suffix",
+                "foo.bar.ck", BlockedAdsPublicSuffixes.registrableDomain("a.foo.bar.ck"));
+            assertEquals("Exception rules override wildcards", "www.ck", BlockedAdsPublicSuffixes.registrableDomain("www.ck"));
+            assertEquals("Internationalized rules match punycode hosts",
+                "shop.xn--p1ai", BlockedAdsPublicSuffixes.registrableDomain("www.shop.xn--p1ai"));
+            assertEquals("Hosts under unlisted TLDs use the last two labels",
+                "example.test", BlockedAdsPublicSuffixes.registrableDomain("a.example.test"));
+            assertEquals("192.168.1.10", BlockedAdsPublicSuffixes.registrableDomain("192.168.1.10"));
+            assertNull(BlockedAdsPublicSuffixes.registrableDomain("co.uk"));
+            assertNull(BlockedAdsPublicSuffixes.registrableDomain("github.io"));
+            assertEquals("A root dot is ignored", "example.com", BlockedAdsPublicSuffixes.registrableDomain("example.com."));
+            assertNull(BlockedAdsPublicSuffixes.registrableDomain("com."));
+            assertNull("Empty labels have no registrable domain", BlockedAdsPublicSuffixes.registrableDomain(".com"));
+            assertNull(BlockedAdsPublicSuffixes.registrableDomain("a..com"));
+            assertFalse(BlockedAdsPublicSuffixes.isSameSite("tracker.com.", "news.com."));
+            assertTrue(BlockedAdsPublicSuffixes.isSameSite("ads.news.com.", "news.com"));
+            
+            // $third-party follows registrable domains, not the last two labels
+            assertFalse(new BlockedAdsRequestContext("https://static.bbc.co.uk/a.js", "www.bbc.co.uk",
+                BlockedAdsRequestContext.TYPE_SCRIPT, false).isThirdParty());
+            assertTrue(new BlockedAdsRequestContext("https://evil.co.uk/a.js", "www.bbc.co.uk",
+                BlockedAdsRequestContext.TYPE_SCRIPT, false).isThirdParty());
+            assertTrue("Sites on a shared hosting suffix are separate sites", new BlockedAdsRequestContext(
+                "https://tracker.github.io/t.js", "user.github.io", BlockedAdsRequestContext.TYPE_SCRIPT, false).isThirdParty());
+        } finally {
+            BlockedAdsPublicSuffixes.use(null);
+        }
+    }
+    
+    @Test
+    public void testRegexSetAgreesWithPatternAndKeepsUnsupportedRulesOut() {
+        String[] regexes = {
+            "^https?://[a-z0-9.-]*\\.doubleclick\\.net/", "/(?:ads|banners?)[-_/]\\d{2,4}x\\d{2,4}\\.", "[?&]utm_[a-z]+=",
+            "track(er|ing)?\\.js$", "/pixel\\.gif\\?[^#]*uid=\\w+", "AdServer", "\\.(?:png|gif)\\?.{1,8}$"
+        };
+        String[] urls = {
+            "https://ad.doubleclick.net/ddm/ad.js", "https://cdn.example.com/banner_300x250.png", "https://example.com/?a=1&utm_source=x",
+            "https://example.com/js/tracking.js", "https://example.com/js/tracking.js?v=2", "https://t.example/pixel.gif?x=1&uid=abc_9",
+            "https://example.com/adserver/x", "https://example.com/ADSERVER/x", "https://example.com/a.gif?123456789",
+            "https://example.com/a.gif?1234", "https://example.com/ünicode/adserver", "https://example.com/"
+        };
+        BlockedAdsRegexSet set = new BlockedAdsRegexSet();
+        java.util.List<java.util.regex.Pattern> patterns = new java.util.ArrayList<>();
+        for (int i = 0; i < regexes.length; i++) {
+            boolean matchCase = regexes[i].equals("AdServer");
+            java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(regexes[i],
+                matchCase ? 0 : java.util.regex.Pattern.CASE_INSENSITIVE);
+            patterns.add(pattern);
+            assertTrue(regexes[i], set.add(i, regexes[i], matchCase, pattern, BlockedAdsRequestContext.TYPE_OTHER));
+        }
+        for (String unsupported : new String[] {"(ad)\\1", "ads(?!\\.example)", "\\bads\\b", "(?i)ads", "ads.{1,1000}x"}) {
+            assertFalse(unsupported, set.add(99, unsupported, false, java.util.regex.Pattern.compile(unsupported),
+                BlockedAdsRequestContext.TYPE_OTHER));
+        }
+        set.compile();
+        
+        for (String url : urls) {
+            BlockedAdsRequestContext context = new BlockedAdsRequestContext(url, "example.com", BlockedAdsRequestContext.TYPE_OTHER, false);
+            for (int i = 0; i < regexes.length; i++) {
+                final int only = i;
+                assertEquals(regexes[i] + " on " + url, patterns.get(i).matcher(context.getUrl()).find(),
+                    set.matches(context, (id, request) -> id == only));
+            }
+        }
+        assertFalse("Requests no admitted rule applies to are not scanned", set.matches(new BlockedAdsRequestContext(
+            "https://example.com/adserver/x", "example.com", BlockedAdsRequestContext.TYPE_SCRIPT, false), (id, request) -> true));
+        
+        // Regex rules behind the engine still honour their options
+        BlockedAdsFilterEngine engine = new BlockedAdsFilterEngine(BlockedAdsListCompiler.compile(java.util.Arrays.asList(
+            "/\\/ads?[0-9]*\\.js/$script,third-party", "@@/\\/ads?1\\.js/$domain=example.com")));
+        assertTrue(engine.shouldBlock(new BlockedAdsRequestContext("https://cdn.tracker.net/ad2.js", "example.com",
+            BlockedAdsRequestContext.TYPE_SCRIPT, false)));
+        assertFalse(engine.shouldBlock(new BlockedAdsRequestContext("https://cdn.tracker.net/ad1.js", "example.com",
+            BlockedAdsRequestContext.TYPE_SCRIPT, false)));
+        assertFalse(engine.shouldBlock(new BlockedAdsRequestContext("https://cdn.tracker.net/ad2.js", "example.com",
+            BlockedAdsRequestContext.TYPE_IMAGE, false)));
+        assertFalse(engine.shouldBlock(new BlockedAdsRequestContext("https://cdn.example.com/ad2.js", "example.com",
+            BlockedAdsRequestContext.TYPE_SCRIPT, false)));
+    }
+    
+    @Test
+    public void testPlayerResponseStripperRemovesAdMembersWhileStreaming() throws Exception {
+        String response = ")]}'\n{\"responseContext\":{\"visitorData\":\"x\"},\"playerAds\":[{\"text\":\"\\\"}],\"}],"
+            + "\"playabilityStatus\":{\"status\":\"OK\"},\"adPlacements\":[{\"adPlacementRenderer\":{\"config\":{}}}],"
+            + "\"videoDetails\":{\"videoId\":\"abc\",\"adPlacements\":1}}";
+        String expected = ")]}'\n{\"responseContext\":{\"visitorData\":\"x\"},\"playabilityStatus\":{\"status\":\"OK\"},"
+            + "\"videoDetails\":{\"videoId\":\"abc\",\"adPlacements\":1}}";
+        
+        // Upstream delivers a byte at a time, so keys and strings are split across chunks
+        java.io.InputStream trickle = new java.io.FilterInputStream(new java.io.ByteArrayInputStream(
+                response.getBytes(java.nio.charset.StandardCharsets.UTF_8))) {
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws java.io.IOException {
+                return super.read(buffer, offset, Math.min(length, 1));
+            }
+        };
+        BlockedAdsJsonKeyStripper stripper = new BlockedAdsJsonKeyStripper(trickle, 2, BlockedAdsPlayerResponses.AD_KEYS);
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        byte[] buffer = new byte[3];
+        int read;
+        while ((read = stripper.read(buffer, 0, buffer.length)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        assertEquals("Only the first two members are stripped; the rest is copied once both are gone",
+            expected, out.toString("UTF-8"));
+        assertEquals(2, stripper.getStrippedCount());
+        
+        // A stripped member first or last in its object leaves no stray comma
+        assertEquals("{\"a\":1}", strip("{\"adPlacements\":[],\"a\":1}"));
+        assertEquals("{\"a\":1}", strip("{\"a\":1,\"playerAds\":{\"b\":[1,2]}}"));
+        assertEquals("{}", strip("{\"playerAds\":null}"));
+        assertEquals("Long keys stream through", "{\"aVeryLongKeyNameIndeed\":[\"adPlacements\"]}",
+            strip("{\"aVeryLongKeyNameIndeed\":[\"adPlacements\"]}"));
+        assertEquals("Not JSON", "<html>{adPlacements}</html>", strip("<html>{adPlacements}</html>"));
+        
+        assertTrue(BlockedAdsPlayerResponses.isPlayerRequest("GET", "https://m.youtube.com/youtubei/v1/player?key=k"));
+        assertTrue(BlockedAdsPlayerResponses.isPlayerRequest("GET", "https://m.youtube.com/watch?v=abc&pbj=1"));
+        assertFalse(BlockedAdsPlayerResponses.isPlayerRequest("POST", "https://m.youtube.com/youtubei/v1/player?key=k"));
+        assertFalse(BlockedAdsPlayerResponses.isPlayerRequest("GET", "https://m.youtube.com/watch?v=abc"));
+        assertFalse(BlockedAdsPlayerResponses.isPlayerRequest("GET", "https://youtube.com.evil.example/youtubei/v1/player"));
+    }
+    
+    private static String strip(String json) throws java.io.IOException {
+        java.io.InputStream in = new BlockedAdsJsonKeyStripper(new java.io.ByteArrayInputStream(
+            json.getBytes(java.nio.charset.StandardCharsets.UTF_8)), 2, BlockedAdsPlayerResponses.AD_KEYS);
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) >= 0) {
+            out.write(b);
+        }
+        return out.toString("UTF-8");
+    }
+    
+    @Test
+    public void testMemoryTrimmerShedsTiersByPressure() {
+        assertNull(BlockedAdsMemoryTrimmer.tierFor(0));
+        assertEquals(BlockedAdsMemoryTrimmer.Tier.CACHES,
+            BlockedAdsMemoryTrimmer.tierFor(android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE));
+        assertEquals(BlockedAdsMemoryTrimmer.Tier.WEBVIEWS,
+            BlockedAdsMemoryTrimmer.tierFor(android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL));
+        assertEquals(BlockedAdsMemoryTrimmer.Tier.CACHES,
+            BlockedAdsMemoryTrimmer.tierFor(android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+        assertEquals(BlockedAdsMemoryTrimmer.Tier.PAYLOADS,
+            BlockedAdsMemoryTrimmer.tierFor(android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+        assertEquals("Only a process about to be killed drops its engine", BlockedAdsMemoryTrimmer.Tier.ENGINE,
+            BlockedAdsMemoryTrimmer.tierFor(android.content.ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+        
+        // Trimmed regex DFA states are rebuilt with the same verdicts
+        BlockedAdsFilterEngine engine = new BlockedAdsFilterEngine(java.util.Arrays.asList(
+            "/\\/banners?\\/[0-9]+x[0-9]+\\./", "/[?&]ad_?id=/"));
+        BlockedAdsRequestContext banner = new BlockedAdsRequestContext("https://cdn.example.com/banner/300x250.png",
+            "example.com", BlockedAdsRequestContext.TYPE_IMAGE, false);
+        BlockedAdsRequestContext page = new BlockedAdsRequestContext("https://example.com/article?id=1",
+            "example.com", BlockedAdsRequestContext.TYPE_SUBDOCUMENT, false);
+        assertTrue(engine.shouldBlock(banner));
+        assertFalse(engine.shouldBlock(page));
+        assertTrue(engine.trimCaches() > 0);
+        assertEquals(0, engine.trimCaches());
+        assertTrue(engine.shouldBlock(banner));
+        assertFalse(engine.shouldBlock(page));
+        
+        BlockedAdsSurrogates.preload(context);
+        long released = BlockedAdsSurrogates.release();
+        BlockedAdsSurrogates.preload(context);
+        assertTrue("Surrogate scripts are counted when released", released > 0);
+    }
+    
+    @Test
+    public void testListUpdaterFetchesConditionallyAndStoresOnlyChangedContent() throws Exception {
+        StringBuilder list = new StringBuilder("[Adblock Plus 2.0]\n! Title: Test\n");
+        for (int i = 0; i < BlockedAdsListStorage.MIN_RULES; i++) {
+            list.append("||ads").append(i).append(".example^\n");
+        }
+        final String[] content = {list.toString()};
+        final String[] etag = {"\"v1\""};
+        final java.util.List<String> validators = java.util.Collections.synchronizedList(new java.util.ArrayList<String>());
+        com.sun.net.httpserver.HttpServer server = com.sun.net.httpserver.HttpServer.create(
+                new java.net.InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            validators.add(ifNoneMatch);
+            if (etag[0].equals(ifNoneMatch)) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            java.io.ByteArrayOutputStream gzipped = new java.io.ByteArrayOutputStream();
+            try (java.util.zip.GZIPOutputStream out = new java.util.zip.GZIPOutputStream(gzipped)) {
+                out.write(content[0].getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().set("ETag", etag[0]);
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, gzipped.size());
+            exchange.getResponseBody().write(gzipped.toByteArray());
+            exchange.close();
+        });
+        server.start();
+        java.io.File directory = java.nio.file.Files.createTempDirectory("filter-lists").toFile();
+        java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(2);
+        try {
+            java.util.Map<String, String> subscriptions = new java.util.LinkedHashMap<>();
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            subscriptions.put("easylist.txt", base + "/easylist.txt");
+            subscriptions.put("easyprivacy.txt", base + "/easyprivacy.txt");
+            BlockedAdsListUpdater updater = new BlockedAdsListUpdater(directory, subscriptions);
+            
+            java.util.List<BlockedAdsListUpdater.Result> results = updater.update(executor);
+            assertEquals(2, results.size());
+            for (BlockedAdsListUpdater.Result result : results) {
+                assertEquals(BlockedAdsListUpdater.Status.UPDATED, result.getStatus());
+                assertTrue(result.getBytesDownloaded() > 0);
+            }
+            assertTrue(BlockedAdsListStorage.isSuperseded(directory, "blockedads-easylist.txt"));
+            
+            // Same ETag: a 304 with no body, so nothing to recompile
+            results = updater.update(executor);
+            for (BlockedAdsListUpdater.Result result : results) {
+                assertEquals(BlockedAdsListUpdater.Status.UNCHANGED, result.getStatus());
+                assertEquals(0, result.getBytesDownloaded());
+            }
+            assertFalse(BlockedAdsListUpdater.hasUpdates(results));
+            assertTrue("Stored validators are sent back", validators.contains("\"v1\""));
+            
+            // A new ETag over the same content is still unchanged, by hash
+            etag[0] = "\"v2\"";
+            assertFalse(BlockedAdsListUpdater.hasUpdates(updater.update(executor)));
+            
+            // An error page or a short list never replaces the stored list
+            String valid = content[0];
+            content[0] = "<html><body>Sign in to the network</body></html>\n";
+            etag[0] = "\"portal\"";
+            results = updater.update(executor);
+            assertEquals(BlockedAdsListUpdater.Status.FAILED, results.get(0).getStatus());
+            assertFalse(updater.isComplete(results));
+            content[0] = "[Adblock Plus 2.0]\n||ads.example^\n";
+            assertFalse(BlockedAdsListUpdater.hasUpdates(updater.update(executor)));
+            assertTrue(BlockedAdsListStorage.isSuperseded(directory, "blockedads-easylist.txt"));
+            
+            content[0] = valid + "||tracker.example^\n";
+            etag[0] = "\"v3\"";
+            results = updater.update(executor);
+            assertTrue(BlockedAdsListUpdater.hasUpdates(results));
+            assertTrue(updater.isComplete(results));
+            try (java.io.InputStream in = BlockedAdsListStorage.open(new java.io.File(directory, "easylist.txt.gz"))) {
+                java.io.ByteArrayOutputStream stored = new java.io.ByteArrayOutputStream();
+                byte[] buffer = new byte[256];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    stored.write(buffer, 0, read);
+                }
+                assertEquals("Stored compressed, read back decompressed", content[0], stored.toString("UTF-8"));
+            }
+        } finally {
+            executor.shutdown();
+            server.stop(0);
+        }
+    }
+    
+    @Test
+    public void testRequestLogRecordsDecisionsAndSnapshotsOnlyWhileOpen() {
+        BlockedAdsFilterEngine engine = new BlockedAdsFilterEngine(java.util.Arrays.asList(
+            "||ads.example^", "@@||ads.example/allowed^", "/banner\\d+/"));
+        BlockedAdsRequestContext blocked = new BlockedAdsRequestContext(
+            "https://ads.example/ad.js", "page.test", BlockedAdsRequestContext.TYPE_SCRIPT, false);
+        BlockedAdsRequestContext excepted = new BlockedAdsRequestContext(
+            "https://ads.example/allowed/1.js", "page.test", BlockedAdsRequestContext.TYPE_SCRIPT, false);
+        BlockedAdsRequestContext regex = new BlockedAdsRequestContext(
+            "https://cdn.test/banner42.png", "page.test", BlockedAdsRequestContext.TYPE_IMAGE, false);
+        BlockedAdsRequestContext allowed = new BlockedAdsRequestContext(
+            "https://cdn.test/logo.png", "page.test", BlockedAdsRequestContext.TYPE_IMAGE, false);
+        
+        int rule = engine.matchRule(blocked);
+        assertEquals(BlockedAdsRequestLog.Verdict.BLOCKED, BlockedAdsRequestLog.verdictFor(rule));
+        assertEquals("||ads.example^", engine.describeRule(rule));
+        rule = engine.matchRule(excepted);
+        assertEquals(BlockedAdsRequestLog.Verdict.EXCEPTED, BlockedAdsRequestLog.verdictFor(rule));
+        assertEquals("@@||ads.example/allowed^", engine.describeRule(rule));
+        assertFalse(engine.shouldBlock(excepted));
+        assertEquals("/banner\\d+/", engine.describeRule(engine.matchRule(regex)));
+        assertEquals(BlockedAdsFilterEngine.NO_RULE, engine.matchRule(allowed));
+        
+        BlockedAdsFilterEngine previous = BlockedAdsFilterEngine.getShared();
+        BlockedAdsFilterEngine.setShared(engine);
+        try {
+            assertNull("Closed by default", BlockedAdsRequestLog.current());
+            BlockedAdsRequestLog log = BlockedAdsRequestLog.open();
+            assertSame(log, BlockedAdsRequestLog.current());
+            for (BlockedAdsRequestContext context : new BlockedAdsRequestContext[] {blocked, excepted, regex, allowed}) {
+                rule = engine.matchRule(context);
+                log.record(context.getUrl(), BlockedAdsRequestLog.verdictFor(rule), rule, engine, 7);
+            }
+            java.util.List<BlockedAdsRequestLog.Entry> entries = log.snapshot(-1);
+            assertEquals(4, entries.size());
+            assertEquals("https://ads.example/ad.js", entries.get(0).getUrl());
+            assertEquals("||ads.example^", entries.get(0).getRule());
+            assertEquals(BlockedAdsRequestLog.Verdict.EXCEPTED, entries.get(1).getVerdict());
+            assertEquals(7, entries.get(2).getTab());
+            assertNull(entries.get(3).getRule());
+            assertEquals("Polling returns only newer records", 1, log.snapshot(entries.get(2).getSequence()).size());
+            BlockedAdsFilterEngine.setShared(new BlockedAdsFilterEngine(java.util.Arrays.asList("||other.example^")));
+            assertEquals("A reload keeps the text of logged rules", "||ads.example^", log.snapshot(-1).get(0).getRule());
+            
+            // The ring keeps the latest CAPACITY records, oldest first
+            for (int i = 0; i < BlockedAdsRequestLog.CAPACITY + 10; i++) {
+                log.record("https://cdn.test/" + i, BlockedAdsRequestLog.Verdict.ALLOWED, BlockedAdsFilterEngine.NO_RULE, null, 1);
+            }
+            entries = log.snapshot(-1);
+            assertEquals(BlockedAdsRequestLog.CAPACITY, entries.size());
+            assertEquals("https://cdn.test/10", entries.get(0).getUrl());
+            assertEquals("https://cdn.test/" + (BlockedAdsRequestLog.CAPACITY + 9), entries.get(entries.size() - 1).getUrl());
+        } finally {
+            BlockedAdsRequestLog.close();
+            BlockedAdsFilterEngine.setShared(previous);
+        }
+        assertNull(BlockedAdsRequestLog.current());
+    }
+    
+    @Test
+    public void testCosmeticFiltersSplitPlainAndProceduralSelectorsPerHost() {
+        BlockedAdsCosmeticFilters filters = new BlockedAdsCosmeticFilters(java.util.Arrays.asList(
+            "##.ad-banner",
+            "##.sponsored",
+            "example.com,~shop.example.com##.promo",
+            "example.com#?#div.card:has-text(Sponsored)",
+            "news.example.com##article:has(> .ad-label):upward(1)",
+            "news.example.com#@#.sponsored",
+            "example.com#$#.x { color: red }",
+            "example.com##.bad{}"));
+        
+        assertEquals(java.util.Arrays.asList(".ad-banner", ".sponsored", ".promo"),
+            filters.selectorsFor("www.example.com", false));
+        assertEquals(java.util.Arrays.asList("div.card:has-text(Sponsored)"),
+            filters.selectorsFor("www.example.com", true));
+        assertEquals("Excluded subdomain", java.util.Arrays.asList(".ad-banner", ".sponsored"),
+            filters.selectorsFor("shop.example.com", false));
+        assertEquals("#@# exception", java.util.Arrays.asList(".ad-banner", ".promo"),
+            filters.selectorsFor("news.example.com", false));
+        assertEquals(java.util.Arrays.asList("article:has(> .ad-label):upward(1)", "div.card:has-text(Sponsored)"),
+            filters.selectorsFor("news.example.com", true));
+        assertEquals(java.util.Arrays.asList(".ad-banner", ".sponsored"), filters.selectorsFor("other.org", false));
+        assertTrue(filters.selectorsFor("other.org", true).isEmpty());
+        
+        // Plain selectors become one stylesheet rule each; procedural ones never reach the CSS
+        String script = filters.scriptFor("www.example.com");
+        assertTrue(script.contains(".promo{display:none!important}"));
+        assertFalse(script.contains("div.card:has-text(Sponsored){"));
+        assertTrue(script.contains(BlockedAdsCosmeticFilters.STYLE_ID));
+        assertTrue("Generic selectors are shared by every page", script.contains(".ad-banner{display:none!important}"));
+        assertFalse("#@# exceptions also apply to the prebuilt generic stylesheet",
+            filters.scriptFor("news.example.com").contains(".sponsored{"));
+        assertTrue(filters.scriptFor("other.org").contains(".sponsored{"));
+        assertNull(new BlockedAdsCosmeticFilters(java.util.Collections.<String>emptyList()).scriptFor("example.com"));
+        assertEquals("\"a\\\"b\\u003c/style\\u000a\"", BlockedAdsCosmeticFilters.jsString("a\"b</style\n"));
+        
+        assertTrue("YouTube ad containers are built-in cosmetic rules",
+            new BlockedAdsFilterEngine().getCosmeticScript("m.youtube.com").contains(".ytd-ad-slot-renderer"));
+    }
+    
+    @Test
+    public void testCosmeticScriptIsBuiltWhenTheMainFrameIsIntercepted() {
+        BlockedAdsFilterEngine engine = new BlockedAdsFilterEngine(java.util.Arrays.asList("##.ad-banner", "news.example##.promo"));
+        BlockedAdsRequestInterceptor interceptor = new BlockedAdsRequestInterceptor(engine, null);
+        when(mockRequest.isForMainFrame()).thenReturn(true);
+        when(mockRequest.getUrl()).thenReturn(Uri.parse("https://news.example/article"));
+        assertNull(interceptor.intercept(mockRequest));
+        interceptor.onPageStarted("https://news.example/article");
+        
+        String script = interceptor.getCosmeticScript();
+        assertTrue(script.contains(".promo{"));
+        assertSame("The UI thread should get the script built on the IO thread", script, interceptor.getCosmeticScript());
+        
+        interceptor.onPageStarted("https://other.example/");
+        assertFalse("Another host's script is built on demand", interceptor.getCosmeticScript().contains(".promo{"));
+        interceptor.onPageFinished("https://other.example/");
+    }
+    
+    @Test
+    public void testNavigationRewriteSkipsRedirectorsAndStripsTrackingParameters() {
+        BlockedAdsFilterEngine engine = new BlockedAdsFilterEngine(java.util.Arrays.asList(
+            "||shop.example^$removeparam=ref",
+            "@@||news.example^$removeparam=utm_source",
+            "$removeparam=/^mc_[a-z]+=/"));
+        
+        String plain = "https://example.com/page?id=7#top";
+        assertSame("Untouched URLs should be returned as is", plain, engine.rewriteNavigation(plain));
+        assertEquals("Redirectors should jump straight to the destination, without its tracking parameters",
+            "https://example.com/article?id=7",
+            engine.rewriteNavigation("https://www.google.com/url?sa=t&q=https%3A%2F%2Fexample.com%2Farticle%3Fid%3D7%26utm_source%3Dgoogle&usg=x"));
+        assertEquals("Nested redirectors should be unwrapped in one step", "https://example.com/",
+            engine.rewriteNavigation("https://l.facebook.com/l.php?u=https%3A%2F%2Fwww.google.com%2Furl%3Fq%3Dhttps%253A%252F%252Fexample.com%252F&h=1"));
+        assertEquals("Redirectors must not lead to other schemes",
+            "https://www.google.com/url?q=javascript%3Aalert(1)",
+            engine.rewriteNavigation("https://www.google.com/url?q=javascript%3Aalert(1)"));
+        assertEquals("Tracking parameters should be removed, keeping order and fragment",
+            "https://example.com/a?id=1&page=2#comments",
+            engine.rewriteNavigation("https://example.com/a?utm_source=x&id=1&fbclid=abc&mc_cid=9&page=2&gclid=z#comments"));
+        assertEquals("A query of only tracking parameters should be dropped", "https://example.com/a",
+            engine.rewriteNavigation("https://example.com/a?utm_medium=social&utm_campaign=launch"));
+        assertEquals("Site rules should only apply to their site", "https://shop.example/item?id=3",
+            engine.rewriteNavigation("https://shop.example/item?ref=mail&id=3"));
+        assertEquals("Other sites keep the parameter", "https://other.example/item?ref=mail",
+            engine.rewriteNavigation("https://other.example/item?ref=mail"));
+        assertEquals("Exception rules should keep the parameter they name", "https://news.example/?utm_source=rss",
+            engine.rewriteNavigation("https://news.example/?utm_source=rss&utm_medium=feed"));
+        
+        BlockedAdsNavigationPolicy policy = new BlockedAdsNavigationPolicy(engine);
+        String tracked = "https://example.com/a?id=1&utm_source=x";
+        assertEquals("Tracked navigations should be rewritten", BlockedAdsNavigationPolicy.Decision.REWRITE,
+            policy.decide(tracked, true, false));
+        assertEquals("https://example.com/a?id=1", policy.getRewrittenUrl());
+        assertEquals("A site redirecting back to the parameter should not loop", BlockedAdsNavigationPolicy.Decision.ALLOW,
+            policy.decide(tracked, true, true));
+        assertEquals("Clean navigations should continue", BlockedAdsNavigationPolicy.Decision.ALLOW,
+            policy.decide("https://example.com/a?id=1", true, false));
+        assertEquals("Redirector destinations should still be filtered", BlockedAdsNavigationPolicy.Decision.BLOCK,
+            policy.decide("https://www.google.com/url?q=https%3A%2F%2Fdoubleclick.net%2Fclick", true, false));
+    }
+    
+    @Test
+    public void testServiceWorkerRequestsAreFilteredLoggedAndCounted() {
+        BlockedAdsStats workerStats = new BlockedAdsStats(null);
+        BlockedAdsServiceWorkerFilter filter = new BlockedAdsServiceWorkerFilter(
+            new BlockedAdsRequestInterceptor(new BlockedAdsFilterEngine(), workerStats));
+        java.util.Map<String, String> headers = new java.util.HashMap<>();
+        headers.put("Referer", "https://m.news.com/sw.js");
+        when(mockRequest.getRequestHeaders()).thenReturn(headers);
+        
+        BlockedAdsTelemetry.clear();
+        BlockedAdsRequestLog log = BlockedAdsRequestLog.open();
+        long first = log.getSequence();
+        try {
+            when(mockRequest.getUrl()).thenReturn(Uri.parse("https://doubleclick.net/ad.js"));
+            assertNotNull("Worker ad fetches should be blocked", filter.shouldInterceptRequest(mockRequest));
+            assertEquals("Worker blocks should count in the stats", 1, workerStats.getAdsBlocked());
+            when(mockRequest.getUrl()).thenReturn(Uri.parse("https://m.news.com/feed.json"));
+            assertNull(filter.shouldInterceptRequest(mockRequest));
+            
+            BlockedAdsSiteAllowlist.add("news.com");
+            when(mockRequest.getUrl()).thenReturn(Uri.parse("https://doubleclick.net/ad.js"));
+            assertNull("A paused site's worker should not be filtered", filter.shouldInterceptRequest(mockRequest));
+            
+            java.util.List<BlockedAdsRequestLog.Entry> entries = log.snapshot(first - 1);
+            assertEquals(3, entries.size());
+            assertEquals(BlockedAdsRequestLog.Verdict.BLOCKED, entries.get(0).getVerdict());
+            assertEquals(BlockedAdsRequestLog.Verdict.ALLOWED, entries.get(1).getVerdict());
+            assertEquals(BlockedAdsRequestLog.Verdict.UNFILTERED, entries.get(2).getVerdict());
+            assertEquals("Worker requests share one tab", entries.get(0).getTab(), entries.get(2).getTab());
+            assertTrue("Worker requests belong to no page", BlockedAdsTelemetry.snapshot().isEmpty());
+        } finally {
+            BlockedAdsSiteAllowlist.remove("news.com");
+            BlockedAdsRequestLog.close();
+        }
+    }
+    
+    @Test
+    public void testRegexSetAnchorsAlternativesAndFoldsEscapedRangesLikePattern() {
+        String[] regexes = {
+            "^https://a\\.example/|tracker", "beacon|\\.gif$", "^ads\\.|^https://b\\.|pixel$", "[\\x41-\\x5a]{3}\\d",
+            "/[\\x61-\\x7a]+_\\d/", "[\\x30-\\x39]{4}$|^http://"
+        };
+        String[] urls = {
+            "https://a.example/x", "https://b.example/tracker.js", "https://c.example/beacon?x=1", "https://c.example/x.gif",
+            "https://c.example/x.gif?v=1", "https://b.example/", "https://c.example/pixel", "https://c.example/pixel.png",
+            "https://c.example/ABC1", "https://c.example/abc1", "https://c.example/ab-1", "https://c.example/Z_1/",
+            "https://c.example/-_1/", "http://c.example/", "https://c.example/2024", "https://c.example/20x4"
+        };
+        BlockedAdsRegexSet set = new BlockedAdsRegexSet();
+        java.util.List<java.util.regex.Pattern> patterns = new java.util.ArrayList<>();
+        for (int i = 0; i < regexes.length; i++) {
+            java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(regexes[i], java.util.regex.Pattern.CASE_INSENSITIVE);
+            patterns.add(pattern);
+            assertTrue(regexes[i], set.add(i, regexes[i], false, pattern, BlockedAdsRequestContext.TYPE_OTHER));
+        }
+        for (String unsupported : new String[] {"(^ads|x)", "a$b", "(ads$)"}) {
+            assertFalse("Anchors inside groups stay on Pattern: " + unsupported, set.add(99, unsupported, false,
+                java.util.regex.Pattern.compile(unsupported), BlockedAdsRequestContext.TYPE_OTHER));
+        }
+        set.compile();
+        
+        for (String url : urls) {
+            BlockedAdsRequestContext context = new BlockedAdsRequestContext(url, "example.com", BlockedAdsRequestContext.TYPE_OTHER, false);
+            for (int i = 0; i < regexes.length; i++) {
+                final int only = i;
+                assertEquals(regexes[i] + " on " + url, patterns.get(i).matcher(url).find(),
+                    set.matches(context, (id, request) -> id == only));
+            }
+        }
+        
+        // An @@ rule with an unanchored alternative must still except what Pattern matches
+        BlockedAdsFilterEngine engine = new BlockedAdsFilterEngine(BlockedAdsListCompiler.compile(java.util.Arrays.asList(
+            "||ads.example^", "@@/^https:\\/\\/cdn\\.|\\/consent\\//")));
+        assertFalse(engine.shouldBlockUrl("https://ads.example/consent/ok.js"));
+        assertTrue(engine.shouldBlockUrl("https://ads.example/banner.js"));
+    }
+    
+    @Test
+    public void testChromeRulesBlockNavigationsToAdHostsAndKeepLiteralRegexesOutOfTheRegexBudget() {
+        BlockedAdsChromeRulesCompiler.Ruleset ruleset = BlockedAdsChromeRulesCompiler.compile(java.util.Arrays.asList(
+            "||ads.example.com^", "||tracker.net/pixel^", "||cdn.example.org^$script", "@@||ads.example.com/ok^",
+            "/adframe/", "/ad[0-9]+\\.js/"));
+        String json = ruleset.toJson();
+        
+        assertTrue("Host-anchored block rules should cover top-level navigations", json.contains(
+            "\"requestDomains\": [\"ads.example.com\"],\n      \"resourceTypes\": [\"main_frame\", "));
+        assertTrue(json.contains("\"urlFilter\": \"||tracker.net/pixel^\",\n      \"resourceTypes\": [\"main_frame\", "));
+        assertTrue("Explicit types are kept", json.contains(
+            "\"requestDomains\": [\"cdn.example.org\"],\n      \"resourceTypes\": [\"script\"]"));
+        assertTrue("Allow rules keep the default types", json.contains("\"urlFilter\": \"||ads.example.com/ok^\"\n"));
+        assertTrue("Literal regexes should become urlFilter substrings", json.contains("\"urlFilter\": \"adframe\"\n"));
+        assertTrue(json.contains("\"regexFilter\": \"ad[0-9]+\\\\.js\""));
+        assertEquals(1, json.split("regexFilter").length - 1);
+    }
+    
+    @Test
+    public void testFrameAndServiceWorkerClientsShareOneStats() {
+        BlockedAdsStats shared = BlockedAdsStats.shared(context);
+        assertSame("Every client should count in the same stats", shared, BlockedAdsStats.shared(context.getApplicationContext()));
+        int before = shared.getAdsBlocked();
+        
+        when(mockRequest.getUrl()).thenReturn(Uri.parse("https://doubleclick.net/ad.js"));
+        new BlockedAdsWebViewClient(shared).shouldInterceptRequest(mockWebView, mockRequest);
+        new BlockedAdsServiceWorkerFilter(new BlockedAdsRequestInterceptor(shared)).shouldInterceptRequest(mockRequest);
+        assertEquals(before + 2, shared.getAdsBlocked());
+    }
+    
+    @Test
+    public void testBlockedNavigationsAreCounted() {
+        int before = stats.getAdsBlocked();
+        when(mockRequest.getUrl()).thenReturn(Uri.parse("https://doubleclick.net/click"));
+        when(mockRequest.isForMainFrame()).thenReturn(true);
+        
+        assertTrue("Ad click-throughs should not load", webViewClient.shouldOverrideUrlLoading(mockWebView, mockRequest));
+        assertEquals("Blocked navigations should count like blocked requests", before + 1, stats.getAdsBlocked());
+    }
 }
\ No newline at end of file
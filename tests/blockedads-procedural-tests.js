@@ -0,0 +1,327 @@
+/**
+ * BlockedAds Procedural Cosmetic Filter Runtime Tests
+ * Runs blockedads-procedural.js against a minimal DOM: operators, incremental evaluation
+ * of added subtrees, the per-frame budget, pausing and hide reporting
+ */
+
+const fs = require('fs');
+const path = require('path');
+
+const runtimeCode = fs.readFileSync(
+  path.join(__dirname, '../blockedads-mvp-android/src/main/assets/blockedads-procedural.js'), 'utf8');
+
+// Minimal DOM: compound selectors (tag, .class, #id, *), ' ' and '>' combinators, :scope
+const queried = [];
+let frames = [];
+let clock = 0;
+let observer = null;
+
+class FakeElement {
+  constructor(tag, classes, text) {
+    this.tagName = tag;
+    this.classes = classes ? classes.split(' ') : [];
+    this.id = '';
+    this.children = [];
+    this.parentElement = null;
+    this.text = text || '';
+    this.attributes = {};
+    this.css = {};
+    this.nodeType = 1;
+    this.style = { props: {}, setProperty(name, value) { this.props[name] = value; } };
+  }
+  
+  append(...children) {
+    for (const child of children) {
+      child.parentElement = this;
+      this.children.push(child);
+    }
+    return this;
+  }
+  
+  get textContent() {
+    return this.text + this.children.map((child) => child.textContent).join('');
+  }
+  
+  get isConnected() {
+    let node = this;
+    while (node.parentElement) {
+      node = node.parentElement;
+    }
+    return node === document.documentElement;
+  }
+  
+  hasAttribute(name) {
+    return name in this.attributes;
+  }
+  
+  setAttribute(name, value) {
+    this.attributes[name] = value;
+  }
+  
+  descendants() {
+    const found = [];
+    const walk = (node) => node.children.forEach((child) => { found.push(child); walk(child); });
+    walk(this);
+    return found;
+  }
+  
+  querySelectorAll(selector) {
+    queried.push(this);
+    const steps = parseSelector(selector);
+    return this.descendants().filter((node) => matchesSteps(node, steps, this, steps.length - 1));
+  }
+  
+  querySelector(selector) {
+    return this.querySelectorAll(selector)[0] || null;
+  }
+  
+  matches(selector) {
+    const steps = parseSelector(selector);
+    return matchesSteps(this, steps, null, steps.length - 1);
+  }
+  
+  closest(selector) {
+    for (let node = this; node; node = node.parentElement) {
+      if (node.matches(selector)) {
+        return node;
+      }
+    }
+    return null;
+  }
+}
+
+function parseSelector(selector) {
+  const steps = [];
+  let combinator = ' ';
+  for (const token of selector.trim().replace(/\s*>\s*/g, ' > ').split(/\s+/)) {
+    if (token === '>') {
+      combinator = '>';
+      continue;
+    }
+    if (!/^(:scope|\*|[a-z-]*)([.#][\w-]+)*$/.test(token)) {
+      throw new SyntaxError(selector);
+    }
+    steps.push({ combinator, token });
+    combinator = ' ';
+  }
+  if (steps.length === 0) {
+    throw new SyntaxError(selector);
+  }
+  return steps;
+}
+
+function matchesCompound(node, token, scope) {
+  if (token === ':scope') {
+    return node === scope;
+  }
+  const parts = /^(\*|[a-z-]*)((?:[.#][\w-]+)*)$/.exec(token);
+  if (parts[1] && parts[1] !== '*' && node.tagName !== parts[1]) {
+    return false;
+  }
+  return (parts[2].match(/[.#][\w-]+/g) || []).every((part) =>
+    part[0] === '.' ? node.classes.includes(part.slice(1)) : node.id === part.slice(1));
+}
+
+function matchesSteps(node, steps, scope, index) {
+  if (!node || !matchesCompound(node, steps[index].token, scope)) {
+    return false;
+  }
+  if (index === 0) {
+    return true;
+  }
+  if (steps[index].combinator === '>') {
+    return matchesSteps(node.parentElement, steps, scope, index - 1);
+  }
+  for (let ancestor = node.parentElement; ancestor; ancestor = ancestor.parentElement) {
+    if (matchesSteps(ancestor, steps, scope, index - 1)) {
+      return true;
+    }
+  }
+  return false;
+}
+
+const html = new FakeElement('html');
+const body = new FakeElement('body');
+html.append(body);
+
+global.window = global;
+global.document = {
+  documentElement: html,
+  nodeType: 9,
+  querySelectorAll(selector) {
+    queried.push(this);
+    const steps = parseSelector(selector);
+    return [html, ...html.descendants()].filter((node) => matchesSteps(node, steps, null, steps.length - 1));
+  },
+  createDocumentFragment() {
+    return { querySelector(css) { parseSelector(css); return null; } };
+  }
+};
+Object.defineProperty(global, 'performance', { value: { now: () => clock }, configurable: true, writable: true });
+global.requestAnimationFrame = (callback) => frames.push(callback);
+global.getComputedStyle = (node, pseudo) => ({ getPropertyValue: (name) => node.css[(pseudo || '') + name] || '' });
+global.MutationObserver = class {
+  constructor(callback) {
+    observer = callback;
+  }
+  
+  observe() {}
+};
+global.AdBlocker = { recordHiddenElements: jest.fn(), recordBlockedAd: jest.fn() };
+
+eval(runtimeCode);
+
+// Run queued frames until the runtime stops scheduling; returns how many ran
+function flush() {
+  let count = 0;
+  while (frames.length > 0) {
+    const due = frames;
+    frames = [];
+    due.forEach((callback) => callback());
+    count++;
+  }
+  return count;
+}
+
+function add(node) {
+  body.append(node);
+  observer([{ type: 'childList', addedNodes: [node] }]);
+}
+
+function card(classes, label) {
+  return new FakeElement('div', classes).append(new FakeElement('span', 'label', label));
+}
+
+const isHidden = (node) => node.attributes['data-blockedads-hidden'] === 'true';
+
+describe('BlockedAds Procedural Cosmetic Filters', () => {
+  beforeEach(() => {
+    window.__blockedAdsEnabled = true;
+    AdBlocker.recordHiddenElements.mockClear();
+    AdBlocker.recordBlockedAd.mockClear();
+  });
+  
+  describe('Operators', () => {
+    test('should hide elements matched by each operator', () => {
+      const sponsored = card('card', 'Sponsored');
+      const news = card('card', 'News');
+      const item = new FakeElement('div', 'item').append(new FakeElement('span', 'ad'));
+      const nested = new FakeElement('div', 'item').append(new FakeElement('p').append(new FakeElement('span', 'ad')));
+      const middle = new FakeElement('div').append(new FakeElement('b', 'adlabel', 'Ad'));
+      const slot = new FakeElement('section', 'slot').append(middle);
+      const fixed = new FakeElement('div', 'box');
+      fixed.css = { position: 'fixed' };
+      body.append(sponsored, news, item, nested, slot, fixed);
+      
+      window.__blockedAdsProcedural.start([
+        'div.card:has-text(Sponsored)',
+        'div.item:has(> span.ad)',
+        'b.adlabel:has-text(/^Ad$/):upward(2)',
+        'div.box:matches-css(position: /fixed|sticky/)',
+        'div.card:-abp-contains(Sponsored) > span.label'
+      ]);
+      flush();
+      
+      expect(isHidden(sponsored)).toBe(true);
+      expect(isHidden(news)).toBe(false);
+      expect(isHidden(item)).toBe(true);
+      expect(isHidden(nested)).toBe(false);
+      expect(isHidden(slot)).toBe(true);
+      expect(isHidden(middle)).toBe(false);
+      expect(isHidden(fixed)).toBe(true);
+      expect(isHidden(sponsored.children[0])).toBe(true);
+      expect(sponsored.style.props.display).toBe('none');
+    });
+    
+    test('should skip invalid and unsupported selectors', () => {
+      const target = card('broken', 'Sponsored');
+      add(target);
+      expect(() => window.__blockedAdsProcedural.start([
+        'div.broken:has-text(',
+        'div.broken:upward(999)',
+        ':has-text(Sponsored)'
+      ])).not.toThrow();
+      flush();
+      expect(isHidden(target)).toBe(false);
+    });
+  });
+  
+  describe('Incremental Evaluation', () => {
+    test('should evaluate an added subtree without querying the document', () => {
+      window.__blockedAdsProcedural.start(['div.promo:has-text(Sponsored)']);
+      flush();
+      queried.length = 0;
+      
+      const promo = card('promo', 'Sponsored');
+      add(promo);
+      flush();
+      
+      expect(isHidden(promo)).toBe(true);
+      expect(queried).not.toContain(document);
+    });
+    
+    test('should recheck the closest matching ancestor when text changes', () => {
+      const label = new FakeElement('span', 'label', '');
+      const promo = new FakeElement('div', 'promo').append(label);
+      add(promo);
+      flush();
+      expect(isHidden(promo)).toBe(false);
+      
+      label.text = 'Sponsored';
+      observer([{ type: 'characterData', target: { parentElement: label } }]);
+      flush();
+      expect(isHidden(promo)).toBe(true);
+    });
+  });
+  
+  describe('Scheduling', () => {
+    test('should slice a long pass into frames within the budget', () => {
+      const query = document.querySelectorAll;
+      document.querySelectorAll = function(selector) {
+        clock += 3; // Each filter costs most of the 4 ms budget
+        return query.call(this, selector);
+      };
+      try {
+        const selectors = [];
+        for (let i = 0; i < 10; i++) {
+          selectors.push('div.slow' + i + ':has-text(x)');
+        }
+        window.__blockedAdsProcedural.start(selectors);
+        expect(flush()).toBeGreaterThanOrEqual(5);
+      } finally {
+        document.querySelectorAll = query;
+      }
+    });
+    
+    test('should drop work while blocking is off and rescan on resume', () => {
+      window.__blockedAdsProcedural.start(['div.paused:has-text(Sponsored)']);
+      flush();
+      window.__blockedAdsEnabled = false;
+      const paused = card('paused', 'Sponsored');
+      add(paused);
+      flush();
+      expect(isHidden(paused)).toBe(false);
+      
+      window.__blockedAdsEnabled = true;
+      window.__blockedAdsProcedural.resume();
+      flush();
+      expect(isHidden(paused)).toBe(true);
+    });
+  });
+  
+  describe('Statistics Recording', () => {
+    test('should report hides once per slice without counting blocked ads', () => {
+      window.__blockedAdsProcedural.start(['div.counted:has-text(Sponsored)']);
+      flush();
+      AdBlocker.recordHiddenElements.mockClear();
+      
+      body.append(card('counted', 'Sponsored'), card('counted', 'Sponsored'), card('counted', 'Sponsored'));
+      observer([{ type: 'childList', addedNodes: body.children.slice(-3) }]);
+      flush();
+      
+      expect(AdBlocker.recordHiddenElements).toHaveBeenCalledTimes(1);
+      expect(AdBlocker.recordHiddenElements).toHaveBeenCalledWith(3);
+      expect(AdBlocker.recordBlockedAd).not.toHaveBeenCalled();
+    });
+  });
+});